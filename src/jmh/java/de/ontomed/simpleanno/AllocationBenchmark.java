@@ -0,0 +1,76 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocation per entity. An operation is one entity, so with the GC profiler ({@code -prof gc}, enabled by
+ * {@link #main(String[])}) {@code gc.alloc.rate.norm} is the number of bytes allocated per entity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AllocationBenchmark {
+
+    private static final int ENTITIES = 10000;
+
+    @Param({"line", "stax", "mmap"})
+    public String engine;
+
+    @Param({"2", "6", "12"})
+    public int annotationsPerEntity;
+
+    private File folder;
+    private ConversionEngine conversionEngine;
+    private SourceFile input;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = BenchmarkFiles.createTempFolder();
+        File xmlFolder = new File(folder, "xml");
+
+        SyntheticRelease release = new SyntheticRelease(42)
+                .propertySets(1, ENTITIES)
+                .classSets(0, 0)
+                .termLists(0, 0)
+                .annotationsPerEntity(annotationsPerEntity);
+        release.writeTree(xmlFolder);
+
+        input = new DirectorySource(xmlFolder).find(release.paths()[1]);
+        output = new File(folder, "out.owl");
+        conversionEngine = ConversionEngine.forName(engine);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public String convert() throws IOException {
+        return conversionEngine.convert(input, output, PropertyTypes.fixed(TYPE.DATATYPE_PROPERTY));
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(AllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,22 @@
+package de.ontomed.simpleanno;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+class BenchmarkFiles {
+
+    static File createTempFolder() throws IOException {
+        return Files.createTempDirectory("rda2owl-benchmark").toFile();
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
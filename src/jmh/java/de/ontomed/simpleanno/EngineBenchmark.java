@@ -0,0 +1,77 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single file transformation throughput of the conversion engines. Besides operations per second, JMH reports the
+ * {@code bytes} and {@code entities} counters as input bytes per second and entities per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({"line", "stax", "mmap"})
+    public String engine;
+
+    // an element set datatype.xml or a SKOS term list
+    @Param({"Elements", "termList"})
+    public String kind;
+
+    @Param({"1000", "10000"})
+    public int entities;
+
+    @Param({"6"})
+    public int annotationsPerEntity;
+
+    private File folder;
+    private ConversionEngine conversionEngine;
+    private SourceFile input;
+    private File output;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long bytes;
+        public long entities;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = BenchmarkFiles.createTempFolder();
+        File xmlFolder = new File(folder, "xml");
+
+        SyntheticRelease release = new SyntheticRelease(42)
+                .propertySets(1, entities)
+                .classSets(0, 0)
+                .termLists(1, entities)
+                .annotationsPerEntity(annotationsPerEntity);
+        release.writeTree(xmlFolder);
+
+        String path = kind.equals("termList") ? release.paths()[3] : release.paths()[1];
+        input = new DirectorySource(xmlFolder).find(path);
+        output = new File(folder, "out.owl");
+        conversionEngine = ConversionEngine.forName(engine);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public String convert(Counters counters) throws IOException {
+        String ontologyURI = conversionEngine.convert(input, output, PropertyTypes.fixed(TYPE.DATATYPE_PROPERTY));
+        counters.bytes += input.size();
+        counters.entities += entities;
+        return ontologyURI;
+    }
+}
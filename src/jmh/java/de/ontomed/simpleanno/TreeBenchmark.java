@@ -0,0 +1,64 @@
+package de.ontomed.simpleanno;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a whole synthetic release, including the main ontology and the catalog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TreeBenchmark {
+
+    @Param({"line", "mmap"})
+    public String engine;
+
+    @Param({"directory", "zip"})
+    public String source;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private File folder;
+    private File outputFolder;
+    private RdaSource rdaSource;
+    private ConversionEngine conversionEngine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = BenchmarkFiles.createTempFolder();
+
+        SyntheticRelease release = new SyntheticRelease(42);
+        if (source.equals("zip")) {
+            File zipFile = new File(folder, "RDA-0.0.0.zip");
+            release.writeZip(zipFile, "0.0.0");
+            rdaSource = new ZipSource(zipFile, "RDA-Vocabularies-0.0.0/xml/");
+        } else {
+            File xmlFolder = new File(folder, "xml");
+            release.writeTree(xmlFolder);
+            rdaSource = new DirectorySource(xmlFolder);
+        }
+
+        outputFolder = new File(folder, "owl");
+        outputFolder.mkdirs();
+        conversionEngine = ConversionEngine.forName(engine);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rdaSource.close();
+        BenchmarkFiles.delete(folder);
+    }
+
+    @Benchmark
+    public void convert() throws IOException {
+        RDA2OWL.convert(rdaSource, outputFolder, conversionEngine, threads, true);
+    }
+}
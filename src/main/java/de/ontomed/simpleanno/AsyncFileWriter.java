@@ -0,0 +1,250 @@
+package de.ontomed.simpleanno;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes text to a file as UTF-8. The characters are encoded into large byte buffers taken from a pool shared by all
+ * files; full buffers are handed to a single writer thread, which writes them at their position in the file while
+ * the converting thread fills the next buffer. So the conversion of a file does not wait for the disk unless all
+ * buffers of the pool are waiting to be written.
+ * <p>
+ * Write errors are reported by {@link #close()}, which returns once all of the file has been written. An instance is
+ * used by one thread only.
+ */
+class AsyncFileWriter extends Writer {
+
+    static final int BUFFER_SIZE = 128 * 1024;
+    // at most 4 MB of output waiting to be written
+    private static final int MAX_BUFFERS = 32;
+
+    private static final BlockingQueue<byte[]> POOL = new LinkedBlockingQueue<>();
+    private static final AtomicInteger ALLOCATED = new AtomicInteger();
+
+    // a daemon thread, so a conversion that has been abandoned does not keep the JVM alive
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rda2owl-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final FileChannel channel;
+
+    private byte[] buffer;
+    private int size;
+    // the file position of the first byte of the buffer
+    private long position;
+    // the high surrogate of a pair split between two writes
+    private char highSurrogate;
+
+    // the last write submitted, the writer thread runs them in order
+    private Future<?> lastWrite;
+    private volatile IOException error;
+    private boolean closed;
+
+    AsyncFileWriter(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            // ASCII is copied in a tight loop, everything else goes through encode
+            if (buffer != null && highSurrogate == 0) {
+                byte[] bytes = buffer;
+                int n = size;
+                int limit = Math.min(end, i + BUFFER_SIZE - 4 - n);
+                while (i < limit) {
+                    char c = chars[i];
+                    if (c >= 0x80) {
+                        break;
+                    }
+                    bytes[n++] = (byte) c;
+                    i++;
+                }
+                size = n;
+            }
+            if (i < end) {
+                encode(chars[i++]);
+            }
+        }
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (buffer != null && highSurrogate == 0) {
+                byte[] bytes = buffer;
+                int n = size;
+                int limit = Math.min(end, i + BUFFER_SIZE - 4 - n);
+                while (i < limit) {
+                    char c = text.charAt(i);
+                    if (c >= 0x80) {
+                        break;
+                    }
+                    bytes[n++] = (byte) c;
+                    i++;
+                }
+                size = n;
+            }
+            if (i < end) {
+                encode(text.charAt(i++));
+            }
+        }
+    }
+
+    private void encode(char c) throws IOException {
+        if (buffer == null || size > BUFFER_SIZE - 4) {
+            submit();
+            buffer = take();
+        }
+        byte[] bytes = buffer;
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                bytes[size++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3f));
+                return;
+            }
+            // a lone surrogate is replaced, like the JDK encoder does
+            bytes[size++] = '?';
+            encode(c);
+            return;
+        }
+        if (c < 0x80) {
+            bytes[size++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[size++] = (byte) (0xc0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            bytes[size++] = '?';
+        } else {
+            bytes[size++] = (byte) (0xe0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    /**
+     * Hands the filled part of the current buffer to the writer thread, which returns the buffer to the pool.
+     */
+    private void submit() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        byte[] bytes = buffer;
+        int length = size;
+        long filePosition = position;
+        buffer = null;
+        size = 0;
+        position += length;
+        if (length == 0) {
+            POOL.add(bytes);
+            return;
+        }
+        try {
+            lastWrite = WRITER.submit(() -> {
+                try {
+                    if (error == null) {
+                        ByteBuffer data = ByteBuffer.wrap(bytes, 0, length);
+                        while (data.hasRemaining()) {
+                            channel.write(data, filePosition + data.position());
+                        }
+                    }
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    POOL.add(bytes);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            POOL.add(bytes);
+            throw new IOException("Output writer is not running", e);
+        }
+    }
+
+    private static byte[] take() throws IOException {
+        byte[] bytes = POOL.poll();
+        if (bytes != null) {
+            return bytes;
+        }
+        if (ALLOCATED.incrementAndGet() <= MAX_BUFFERS) {
+            return new byte[BUFFER_SIZE];
+        }
+        ALLOCATED.decrementAndGet();
+        try {
+            // all buffers are waiting to be written, wait for the disk
+            return POOL.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an output buffer");
+        }
+    }
+
+    /**
+     * Hands what has been written so far to the writer thread, without waiting for it to be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        submit();
+    }
+
+    /**
+     * Waits until all of the file has been written and closes it.
+     * @throws IOException if a write has failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                encode('?');
+            }
+            submit();
+            if (lastWrite != null) {
+                lastWrite.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Error writing " + file, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + file);
+        } finally {
+            channel.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Records, for every generated ontology file, a hash of the inputs it was generated from and a hash of the output
+ * itself. The manifest is stored in the output folder and allows to skip files whose inputs have not changed since
+ * the last run. It is only valid for the converter version and options (the fingerprint) it was written with.
+ */
+class BuildManifest {
+
+    static final String FILE_NAME = "rda2owl-manifest.txt";
+
+    private static final String FINGERPRINT_PREFIX = "converter\t";
+    private static final String VERIFIED = "verified";
+
+    static class Entry {
+        final String inputHash;
+        final String outputHash;
+        final String ontologyURI;
+        // the output has passed the checks of the OutputVerifier, so an unchanged file need not be parsed again
+        final boolean verified;
+
+        Entry(String inputHash, String outputHash, String ontologyURI) {
+            this(inputHash, outputHash, ontologyURI, false);
+        }
+
+        Entry(String inputHash, String outputHash, String ontologyURI, boolean verified) {
+            this.inputHash = inputHash;
+            this.outputHash = outputHash;
+            this.ontologyURI = ontologyURI;
+            this.verified = verified;
+        }
+
+        Entry verified() {
+            return new Entry(inputHash, outputHash, ontologyURI, true);
+        }
+    }
+
+    private final String fingerprint;
+
+    // keyed by the physical location of the output file, relative to the output folder
+    private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+
+    BuildManifest(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Loads the manifest from the given folder.
+     * @return the manifest, or an empty one if there is none or it has been written with a different fingerprint
+     */
+    static BuildManifest load(File folder, String fingerprint) {
+        BuildManifest manifest = new BuildManifest(fingerprint);
+        File file = new File(folder, FILE_NAME);
+        if (!file.isFile()) {
+            return manifest;
+        }
+
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            String line = in.readLine();
+            if (line == null || !line.equals(FINGERPRINT_PREFIX + fingerprint)) {
+                return manifest;
+            }
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 4 || fields.length == 5) {
+                    boolean verified = fields.length == 5 && fields[4].equals(VERIFIED);
+                    manifest.entries.put(fields[0], new Entry(fields[1], fields[2], fields[3].isEmpty() ? null : fields[3], verified));
+                }
+            }
+        } catch (IOException e) {
+            System.out.printf("Warning: Unable to read build manifest %s, converting all files.\n", file.getAbsolutePath());
+            manifest.entries.clear();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest to a temporary file first and then renames it, so an interrupted run never leaves a
+     * manifest behind that refers to outputs that have not been written.
+     */
+    void save(File folder) throws IOException {
+        File tmpFile = new File(folder, FILE_NAME + ".tmp");
+        Writer out = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8);
+        try {
+            out.write(FINGERPRINT_PREFIX + fingerprint + "\n");
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry value = entry.getValue();
+                out.write(entry.getKey() + "\t" + value.inputHash + "\t" + value.outputHash + "\t" + (value.ontologyURI == null ? "" : value.ontologyURI));
+                out.write(value.verified ? "\t" + VERIFIED + "\n" : "\n");
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        Files.move(tmpFile.toPath(), new File(folder, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    Entry get(String physicalLocation) {
+        return entries.get(physicalLocation);
+    }
+
+    void put(String physicalLocation, Entry entry) {
+        entries.put(physicalLocation, entry);
+    }
+
+    Set<String> physicalLocations() {
+        return entries.keySet();
+    }
+
+    /**
+     * @return the entry for the given output file if it is still up to date, i.e. if its inputs have the given hash
+     * and the output file has not been changed or removed since
+     */
+    Entry upToDate(String physicalLocation, String inputHash, File outputFile) throws IOException {
+        Entry entry = entries.get(physicalLocation);
+        if (entry == null || !entry.inputHash.equals(inputHash) || !outputFile.isFile()) {
+            return null;
+        }
+        return entry.outputHash.equals(sha256(outputFile)) ? entry : null;
+    }
+
+    static String sha256(File file) throws IOException {
+        return sha256(new FileInputStream(file));
+    }
+
+    static String sha256(SourceFile... files) throws IOException {
+        MessageDigest digest = newDigest();
+        for (SourceFile file : files) {
+            update(digest, file.open());
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes and closes the given stream.
+     */
+    static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, in);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Adds the given stream to the digest and closes it.
+     */
+    static void update(MessageDigest digest, InputStream in) throws IOException {
+        try {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
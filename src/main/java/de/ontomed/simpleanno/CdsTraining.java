@@ -0,0 +1,37 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * The training run of the class data sharing archive built by the {@code cds} profile: converts a small
+ * {@link SyntheticRelease} the way the command line does, so that the classes of a typical run are loaded and can be
+ * archived with {@code -XX:ArchiveClassesAtExit}. Needs no network access.
+ */
+class CdsTraining {
+
+    public static void main(String[] args) throws IOException {
+        File folder = Files.createTempDirectory("rda2owl-cds").toFile();
+        try {
+            SyntheticRelease release = new SyntheticRelease(1).propertySets(2, 50).classSets(1, 10).termLists(4, 20);
+            File zipFile = new File(folder, "RDA-0.0.0.zip");
+            release.writeZip(zipFile, "0.0.0");
+            File tree = new File(folder, "RDA-Vocabularies-0.0.1");
+            release.writeTree(new File(tree, "xml"));
+
+            String cache = "--cache-dir=" + new File(folder, "cache").getPath();
+            for (String engine : new String[] {"line", "stax", "mmap"}) {
+                String output = new File(folder, engine).getPath();
+                // a full conversion, then an incremental one that reuses all files
+                RDA2OWL.main(new String[] {"--offline", "--zip=" + zipFile.getPath(), "--engine=" + engine, cache, output});
+                RDA2OWL.main(new String[] {"--offline", "--zip=" + zipFile.getPath(), "--engine=" + engine, cache, output});
+            }
+            RDA2OWL.main(new String[] {"--batch=" + tree.getPath(), "--verify", "--hierarchy", cache, new File(folder, "batch").getPath()});
+        } finally {
+            FileUtils.deleteDirectory(folder);
+        }
+    }
+}
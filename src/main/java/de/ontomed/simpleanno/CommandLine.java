@@ -0,0 +1,68 @@
+package de.ontomed.simpleanno;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal command line parser. Arguments of the form {@code --name=value} or {@code --name} are options, everything
+ * else is a positional argument (e.g. the output folder).
+ */
+class CommandLine {
+
+    private final Map<String, String> options = new HashMap<>();
+    private final List<String> positional = new ArrayList<>();
+
+    CommandLine(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    options.put(arg.substring(2), "");
+                } else {
+                    options.put(arg.substring(2, eq), arg.substring(eq + 1));
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+    }
+
+    boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    String get(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects a number but got \"" + value + "\"");
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if an option is not one of the given names, e.g. a misspelled one
+     */
+    void requireKnown(Collection<String> names) {
+        for (String name : options.keySet()) {
+            if (!names.contains(name)) {
+                throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+    }
+
+    List<String> positional() {
+        return positional;
+    }
+}
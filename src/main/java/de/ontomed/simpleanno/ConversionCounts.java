@@ -0,0 +1,150 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * The numbers of a single file conversion, counted by the engine in the same pass that writes the OWL file: the
+ * lines of the input and the written entities by {@link TYPE}. The lines are counted like
+ * {@link BufferedReader#readLine()} does.
+ * <p>
+ * An instance is used by one thread only.
+ */
+class ConversionCounts {
+
+    private static final TYPE[] TYPES = TYPE.values();
+
+    private long lines;
+    private final long[] entities = new long[TYPES.length];
+    // entities without a known rdf:type, written as rdf:Description
+    private long untypedEntities;
+
+    void line() {
+        lines++;
+    }
+
+    void lines(long count) {
+        lines += count;
+    }
+
+    /**
+     * @param type the type the entity has been written with, null if it has been written as rdf:Description
+     */
+    void entity(TYPE type) {
+        if (type == null) {
+            untypedEntities++;
+        } else {
+            entities[type.ordinal()]++;
+        }
+    }
+
+    long lines() {
+        return lines;
+    }
+
+    long entities(TYPE type) {
+        return entities[type.ordinal()];
+    }
+
+    long untypedEntities() {
+        return untypedEntities;
+    }
+
+    /**
+     * A reader counting the lines returned by {@link #readLine()}.
+     */
+    static final class LineReader extends BufferedReader {
+
+        private final ConversionCounts counts;
+
+        LineReader(Reader in, ConversionCounts counts) {
+            super(in);
+            this.counts = counts;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            String line = super.readLine();
+            if (line != null) {
+                counts.line();
+            }
+            return line;
+        }
+    }
+
+    /**
+     * A stream counting the line feeds of the bytes read through it, for engines that do not read lines.
+     */
+    static final class LineFeedInputStream extends FilterInputStream {
+
+        private final ConversionCounts counts;
+        private long lineFeeds;
+        private int last = '\n';
+        private boolean closed;
+
+        LineFeedInputStream(InputStream in, ConversionCounts counts) {
+            super(in);
+            this.counts = counts;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                if (b == '\n') {
+                    lineFeeds++;
+                }
+                last = b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            for (int i = off; i < off + read; i++) {
+                if (b[i] == '\n') {
+                    lineFeeds++;
+                }
+            }
+            if (read > 0) {
+                last = b[off + read - 1];
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes would not be counted
+            byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+
+        /**
+         * Reads the rest of the input, unless the parser has closed the stream at its end already, and adds the
+         * lines to the counts.
+         */
+        void finish() throws IOException {
+            if (!closed) {
+                byte[] buffer = new byte[8192];
+                while (read(buffer, 0, buffer.length) != -1) {
+                    // counted by read
+                }
+            }
+            // a last line without line feed
+            counts.lines(last == '\n' ? lineFeeds : lineFeeds + 1);
+        }
+    }
+}
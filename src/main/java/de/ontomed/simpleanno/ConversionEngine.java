@@ -0,0 +1,48 @@
+package de.ontomed.simpleanno;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Transforms a single RDA RDF/XML file into an OWL ontology file.
+ * Implementations must be stateless (or thread confined), as files are converted concurrently.
+ */
+interface ConversionEngine {
+
+    /**
+     * @return the name used to select this engine on the command line
+     */
+    String name();
+
+    /**
+     * @param inputFile the RDA file
+     * @param outputFile the OWL file to write
+     * @param propertyTypes the types to use for entities declared as rdf:Property
+     * @return the URI of the ontology, or null if the file contains no ontology header
+     */
+    default String convert(SourceFile inputFile, File outputFile, PropertyTypes propertyTypes) throws IOException {
+        return convert(inputFile, outputFile, propertyTypes, new ConversionCounts());
+    }
+
+    /**
+     * @param counts counts the lines read and the entities written while converting
+     * @return the URI of the ontology, or null if the file contains no ontology header
+     */
+    String convert(SourceFile inputFile, File outputFile, PropertyTypes propertyTypes, ConversionCounts counts) throws IOException;
+
+    static ConversionEngine forName(String name) {
+        return forName(name, LineEngine.DEFAULT_BUFFER_MAX_MB);
+    }
+
+    /**
+     * @param bufferMaxMb the most memory the line engine uses to hold back the lines of an entity, per file
+     */
+    static ConversionEngine forName(String name, int bufferMaxMb) {
+        switch (name) {
+            case "line": return new LineEngine(bufferMaxMb);
+            case "stax": return new StaxEngine();
+            case "mmap": return new MappedEngine();
+            default: throw new IllegalArgumentException("Unknown conversion engine \"" + name + "\", expected one of: line, stax, mmap");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package de.ontomed.simpleanno;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A unit of conversion work (a single file or a property file triple) together with its input size, which is used
+ * to schedule the largest files first.
+ */
+class ConversionTask {
+
+    @FunctionalInterface
+    interface Action {
+        void run() throws IOException;
+    }
+
+    private final String name;
+    private final long size;
+    private final Action action;
+    // set by a failed run, read once all tasks have finished
+    private volatile Exception failure;
+
+    ConversionTask(String name, long size, Action action) {
+        this.name = name;
+        this.size = size;
+        this.action = action;
+    }
+
+    String name() {
+        return name;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Runs the task. A failure does not keep the other tasks from running, it is recorded and thrown by
+     * {@link #checkFailures(List)} once all of them have finished.
+     */
+    void runQuietly() {
+        try {
+            action.run();
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * @throws IOException if any of the given tasks has failed, with the failure of each of them as a suppressed
+     * exception
+     */
+    static void checkFailures(List<ConversionTask> tasks) throws IOException {
+        List<ConversionTask> failed = new ArrayList<>();
+        for (ConversionTask task : tasks) {
+            if (task.failure != null) {
+                failed.add(task);
+            }
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+        failed.sort(Comparator.comparing(ConversionTask::name));
+
+        StringBuilder message = new StringBuilder();
+        message.append(failed.size()).append(" of ").append(tasks.size()).append(" files could not be converted:");
+        List<IOException> failures = new ArrayList<>(failed.size());
+        for (ConversionTask task : failed) {
+            // a RuntimeException (e.g. a NullPointerException on a malformed file) has no meaningful message of its own
+            String reason = task.failure instanceof IOException ? task.failure.getMessage() : task.failure.toString();
+            message.append("\n  ").append(task.name).append(": ").append(reason);
+            failures.add(new IOException("Error converting " + task.name + ": " + reason, task.failure));
+        }
+        IOException exception = new IOException(message.toString());
+        for (IOException failure : failures) {
+            exception.addSuppressed(failure);
+        }
+        throw exception;
+    }
+
+    /**
+     * Runs all tasks, largest first. With a single worker the tasks are run in the calling thread, otherwise they are
+     * handed to a work-stealing pool in FIFO mode, so the big files are picked up first and the small ones fill the gaps.
+     * All tasks are run even if some of them fail.
+     * @param tasks the tasks to run
+     * @param workers the number of worker threads, 0 means one per available processor
+     * @throws IOException if any of the tasks has failed, see {@link #checkFailures(List)}
+     */
+    static void runAll(List<ConversionTask> tasks, int workers) throws IOException {
+        List<ConversionTask> ordered = new ArrayList<>(tasks);
+        ordered.sort(Comparator.comparingLong(ConversionTask::size).reversed().thenComparing(ConversionTask::name));
+
+        if (workers <= 0) {
+            workers = Runtime.getRuntime().availableProcessors();
+        }
+
+        if (workers == 1 || ordered.size() < 2) {
+            ordered.forEach(ConversionTask::runQuietly);
+            checkFailures(tasks);
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(workers, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        try {
+            List<ForkJoinTask<?>> submitted = new ArrayList<>(ordered.size());
+            for (ConversionTask task : ordered) {
+                submitted.add(pool.submit(task::runQuietly));
+            }
+            for (ForkJoinTask<?> task : submitted) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        checkFailures(tasks);
+    }
+}
@@ -0,0 +1,75 @@
+package de.ontomed.simpleanno;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the RDA files from an extracted release folder.
+ */
+class DirectorySource implements RdaSource {
+
+    private final File xmlFolder;
+
+    DirectorySource(File xmlFolder) {
+        this.xmlFolder = xmlFolder;
+    }
+
+    @Override
+    public List<SourceFile> list(String folder) {
+        File[] files = new File(xmlFolder, folder).listFiles(file -> file.isFile() && file.getName().endsWith(".xml"));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        List<SourceFile> result = new ArrayList<>(files.length);
+        for (File file : files) {
+            result.add(new LocalFile(folder + "/" + file.getName(), file));
+        }
+        return result;
+    }
+
+    @Override
+    public SourceFile find(String path) {
+        File file = new File(xmlFolder, path);
+        return file.isFile() ? new LocalFile(path, file) : null;
+    }
+
+    @Override
+    public String location() {
+        return xmlFolder.getAbsolutePath();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    static class LocalFile extends SourceFile {
+
+        private final File file;
+
+        LocalFile(String path, File file) {
+            super(path);
+            this.file = file;
+        }
+
+        File file() {
+            return file;
+        }
+
+        @Override
+        long size() {
+            return file.length();
+        }
+
+        @Override
+        InputStream open() throws FileNotFoundException {
+            return new FileInputStream(file);
+        }
+    }
+}
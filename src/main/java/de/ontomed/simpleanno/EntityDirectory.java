@@ -0,0 +1,226 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tells which of the written OWL files defines an entity and where, using the directory written next to them
+ * ({@code rda2owl-entities.idx}, see {@code --entity-directory}). The directory file is memory mapped; the definition
+ * of an entity is read as the bytes it occupies in its OWL file, without parsing the file.
+ * <p>
+ * The layout of the file (all numbers big endian, strings as offset and length into the UTF-8 string block):
+ * <pre>
+ * "RDAD" version files entities stringBytes
+ * string block
+ * files:    (offset length)*   locations of the OWL files relative to the output folder, sorted
+ * entities: (offset length type file position:long size)*   sorted by URI (UTF-8 bytes) and file,
+ *                                                           type is the TYPE ordinal or -1
+ * </pre>
+ * An entity may be defined in several files (e.g. a property in {@code <name>.owl}, {@code datatype.owl} and
+ * {@code object.owl} unless properties are merged). Instances can be used from several threads at the same time.
+ */
+public final class EntityDirectory {
+
+    public static final String FILE_NAME = "rda2owl-entities.idx";
+
+    static final byte[] MAGIC = {'R', 'D', 'A', 'D'};
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 8 + 3 * 4;
+    private static final int FILE_BYTES = 8;
+    private static final int ENTITY_BYTES = 28;
+
+    /**
+     * The definition of an entity in one of the OWL files.
+     */
+    public static final class Entry {
+        private final String uri;
+        private final TYPE type;
+        private final String physicalLocation;
+        private final long offset;
+        private final int length;
+
+        private Entry(String uri, TYPE type, String physicalLocation, long offset, int length) {
+            this.uri = uri;
+            this.type = type;
+            this.physicalLocation = physicalLocation;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String uri() {
+            return uri;
+        }
+
+        /**
+         * @return the OWL entity type, null for other elements (rdf:Description, skos:ConceptScheme)
+         */
+        public TYPE type() {
+            return type;
+        }
+
+        /**
+         * @return the location of the OWL file relative to the output folder, as in the catalog
+         */
+        public String physicalLocation() {
+            return physicalLocation;
+        }
+
+        /**
+         * @return the position of the first byte of the entity's element in the file
+         */
+        public long offset() {
+            return offset;
+        }
+
+        /**
+         * @return the number of bytes from the start tag of the entity's element to its end tag (inclusive)
+         */
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return uri + " (" + (type == null ? "other" : type.element()) + ") in " + physicalLocation + " at " + offset + "+" + length;
+        }
+    }
+
+    private final File folder;
+    private final ByteBuffer data;
+    private final int files;
+    private final int entities;
+    private final int stringsStart;
+    private final int filesStart;
+    private final int entitiesStart;
+
+    private EntityDirectory(File folder, ByteBuffer data) throws IOException {
+        this.folder = folder;
+        this.data = data;
+        byte[] magic = new byte[MAGIC.length];
+        for (int i = 0; i < magic.length && i < data.capacity(); i++) {
+            magic[i] = data.get(i);
+        }
+        if (data.capacity() < HEADER_BYTES || !Arrays.equals(magic, MAGIC) || data.getInt(4) != VERSION) {
+            throw new IOException("Not an entity directory of this version");
+        }
+        files = data.getInt(8);
+        entities = data.getInt(12);
+        int stringBytes = data.getInt(16);
+
+        stringsStart = HEADER_BYTES;
+        filesStart = stringsStart + stringBytes;
+        entitiesStart = filesStart + files * FILE_BYTES;
+        if (entitiesStart + (long) entities * ENTITY_BYTES != data.capacity()) {
+            throw new IOException("Entity directory is truncated or corrupt");
+        }
+    }
+
+    /**
+     * Maps the given directory file into memory.
+     * @param file the directory file, or the output folder containing it
+     */
+    public static EntityDirectory open(File file) throws IOException {
+        if (file.isDirectory()) {
+            file = new File(file, FILE_NAME);
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel has been closed
+            return new EntityDirectory(file.getAbsoluteFile().getParentFile(), in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+        } finally {
+            in.close();
+        }
+    }
+
+    public int entityCount() {
+        return entities;
+    }
+
+    /**
+     * @return the definitions of the entity with the given URI, ordered by file, empty if there are none
+     */
+    public List<Entry> lookup(String uri) {
+        byte[] bytes = uri.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = entities;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareURI(middle, bytes) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == entities || compareURI(low, bytes) != 0) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<>(1);
+        for (int index = low; index < entities && compareURI(index, bytes) == 0; index++) {
+            int entry = entitiesStart + index * ENTITY_BYTES;
+            int type = data.getInt(entry + 8);
+            String physicalLocation = string(filesStart + data.getInt(entry + 12) * FILE_BYTES);
+            entries.add(new Entry(uri, type < 0 ? null : TYPE.values()[type], physicalLocation, data.getLong(entry + 16), data.getInt(entry + 24)));
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the definition of an entity from its OWL file.
+     * @return the entity's element, e.g. {@code <owl:Class rdf:about="...">...</owl:Class>}
+     */
+    public String read(Entry entry) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(new File(folder, entry.physicalLocation), "r");
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate(entry.length);
+            FileChannel channel = in.getChannel();
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, entry.offset + bytes.position()) < 0) {
+                    throw new IOException("OWL file has changed since the entity directory has been written: " + entry.physicalLocation);
+                }
+            }
+            return new String(bytes.array(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Compares the URI of the entity with the given index to the given bytes (unsigned).
+     */
+    private int compareURI(int index, byte[] bytes) {
+        int entry = entitiesStart + index * ENTITY_BYTES;
+        int offset = stringsStart + data.getInt(entry);
+        int length = data.getInt(entry + 4);
+        int common = Math.min(length, bytes.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (data.get(offset + i) & 0xff) - (bytes[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - bytes.length;
+    }
+
+    /**
+     * @return the string referenced at the given position
+     */
+    private String string(int ref) {
+        int offset = stringsStart + data.getInt(ref);
+        byte[] bytes = new byte[data.getInt(ref + 4)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,254 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the entities in the written OWL files and writes their locations as an {@link EntityDirectory}. Files can be
+ * added from several threads at the same time.
+ */
+class EntityDirectoryBuilder {
+
+    private static final String NS_RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    static final Pattern NAMESPACE_PATTERN = Pattern.compile("xmlns:([\\w.-]+)\\s*=\\s*\"([^\"]*)\"");
+    private static final Pattern ABOUT_PATTERN = Pattern.compile("\\s([\\w.-]+):about\\s*=\\s*\"([^\"]*)\"");
+    private static final Pattern NAME_PATTERN = Pattern.compile("<([\\w.-]+):([\\w.-]+)");
+
+    private static class Entry {
+        private final byte[] uri;
+        private final TYPE type;
+        private final int file;
+        private final long offset;
+        private final int length;
+
+        private Entry(byte[] uri, TYPE type, int file, long offset, int length) {
+            this.uri = uri;
+            this.type = type;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final List<String> files = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Adds the entities of a written OWL file: the top level elements with an rdf:about attribute, except for the
+     * owl:Ontology.
+     * @param physicalLocation the location of the file relative to the output folder
+     */
+    void add(File outputFile, String physicalLocation) throws IOException {
+        List<Entry> fileEntries = new ArrayList<>();
+        RandomAccessFile in = new RandomAccessFile(outputFile, "r");
+        try {
+            ByteBuffer data = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            scan(data, fileEntries);
+        } finally {
+            in.close();
+        }
+
+        synchronized (this) {
+            int file = files.size();
+            files.add(physicalLocation);
+            for (Entry entry : fileEntries) {
+                entries.add(new Entry(entry.uri, entry.type, file, entry.offset, entry.length));
+            }
+        }
+    }
+
+    /**
+     * Finds the elements below the root element, without parsing them.
+     */
+    private static void scan(ByteBuffer data, List<Entry> fileEntries) throws IOException {
+        int size = data.limit();
+        Map<String, String> namespaces = new HashMap<>();
+        int depth = 0;
+        // the start of the current top level element and what it defines, null if it is not an entity
+        int entityStart = -1;
+        String entityURI = null;
+        TYPE entityType = null;
+
+        int i = 0;
+        while (i < size) {
+            if (data.get(i) != '<') {
+                i++;
+                continue;
+            }
+            int start = i;
+            if (startsWith(data, i, "<?")) {
+                i = skipPast(data, i, "?>");
+            } else if (startsWith(data, i, "<!--")) {
+                i = skipPast(data, i, "-->");
+            } else if (startsWith(data, i, "<![CDATA[")) {
+                i = skipPast(data, i, "]]>");
+            } else if (startsWith(data, i, "<!")) {
+                i = skipPast(data, i, ">");
+            } else if (startsWith(data, i, "</")) {
+                i = skipPast(data, i, ">");
+                depth--;
+                if (depth == 1 && entityURI != null) {
+                    fileEntries.add(new Entry(entityURI.getBytes(StandardCharsets.UTF_8), entityType, 0, entityStart, i - entityStart));
+                    entityURI = null;
+                }
+            } else {
+                i = skipTag(data, i);
+                boolean empty = data.get(i - 2) == '/';
+                if (depth <= 1) {
+                    String tag = string(data, start, i);
+                    Matcher namespace = NAMESPACE_PATTERN.matcher(tag);
+                    while (namespace.find()) {
+                        namespaces.put(namespace.group(1), namespace.group(2));
+                    }
+                    if (depth == 1) {
+                        entityStart = start;
+                        entityURI = null;
+                        entityType = null;
+                        Matcher name = NAME_PATTERN.matcher(tag);
+                        Matcher about = ABOUT_PATTERN.matcher(tag);
+                        while (about.find()) {
+                            if (NS_RDF.equals(namespaces.get(about.group(1)))) {
+                                entityURI = SearchIndexBuilder.unescape(about.group(2));
+                            }
+                        }
+                        if (entityURI != null && name.lookingAt()) {
+                            String namespaceURI = namespaces.get(name.group(1));
+                            if (RDA2OWL.NS_OWL.equals(namespaceURI) && name.group(2).equals("Ontology")) {
+                                entityURI = null;
+                            } else {
+                                entityType = RDA2OWL.NS_OWL.equals(namespaceURI) ? type(name.group(2)) : null;
+                            }
+                        }
+                    }
+                }
+                if (!empty) {
+                    depth++;
+                } else if (depth == 1 && entityURI != null) {
+                    fileEntries.add(new Entry(entityURI.getBytes(StandardCharsets.UTF_8), entityType, 0, entityStart, i - entityStart));
+                    entityURI = null;
+                }
+            }
+        }
+    }
+
+    private static TYPE type(String element) {
+        for (TYPE type : TYPE.values()) {
+            if (type.element().equals(element)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    static boolean startsWith(ByteBuffer data, int offset, String prefix) {
+        if (offset + prefix.length() > data.limit()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data.get(offset + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset after the next occurrence of the given end
+     */
+    static int skipPast(ByteBuffer data, int offset, String end) throws IOException {
+        for (int i = offset + 1; i + end.length() <= data.limit(); i++) {
+            if (startsWith(data, i, end)) {
+                return i + end.length();
+            }
+        }
+        throw new IOException("Unexpected end of file after offset " + offset);
+    }
+
+    /**
+     * @return the offset after the '&gt;' ending the tag, ignoring any in quoted attribute values
+     */
+    static int skipTag(ByteBuffer data, int offset) throws IOException {
+        byte quote = 0;
+        for (int i = offset + 1; i < data.limit(); i++) {
+            byte b = data.get(i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        throw new IOException("Unexpected end of file after offset " + offset);
+    }
+
+    static String string(ByteBuffer data, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the directory in the layout described in {@link EntityDirectory}.
+     */
+    synchronized void write(File directoryFile) throws IOException {
+        // the files have been added in the order they have been converted in, which depends on the number of
+        // threads; sorted, the directory is the same for every run
+        String[] fileNames = files.toArray(new String[0]);
+        Arrays.sort(fileNames);
+        int[] fileIds = new int[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            fileIds[files.indexOf(fileNames[i])] = i;
+        }
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort((a, b) -> {
+            int order = SearchIndex.compare(a.uri, b.uri);
+            return order != 0 ? order : Integer.compare(fileIds[a.file], fileIds[b.file]);
+        });
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        ByteArrayOutputStream tables = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(tables);
+        for (String file : fileNames) {
+            byte[] bytes = file.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(strings.size());
+            out.writeInt(bytes.length);
+            strings.write(bytes);
+        }
+        for (Entry entry : sorted) {
+            out.writeInt(strings.size());
+            out.writeInt(entry.uri.length);
+            strings.write(entry.uri);
+            out.writeInt(entry.type == null ? -1 : entry.type.ordinal());
+            out.writeInt(fileIds[entry.file]);
+            out.writeLong(entry.offset);
+            out.writeInt(entry.length);
+        }
+        out.flush();
+
+        DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(directoryFile)));
+        try {
+            file.write(EntityDirectory.MAGIC);
+            file.writeInt(EntityDirectory.VERSION);
+            file.writeInt(fileNames.length);
+            file.writeInt(sorted.size());
+            file.writeInt(strings.size());
+            strings.writeTo(file);
+            tables.writeTo(file);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the entities of a single RDA file one at a time. Relies on the same line layout as the {@link LineEngine},
+ * the entities have the same type as in the OWL files written by it.
+ * <p>
+ * Only the ontology URI and the namespaces are kept of the header. Like in the line engine, the lines of a SKOS header
+ * are held in a {@link LineArena} while it is skipped, so a header of any size takes at most the given number of chars
+ * of memory; {@link #writeHeader} reads it again to write it.
+ */
+class EntityReader implements OntologyEntities {
+
+    private static final Pattern NAMESPACE_PATTERN = Pattern.compile("xmlns:([\\w.-]+)\\s*=\\s*\"([^\"]*)\"");
+
+    private final String sourcePath;
+    private final PropertyTypes propertyTypes;
+    private final Interner interner;
+    private final BufferedReader in;
+    private final String ontologyURI;
+    private final Map<String, String> namespaces = new LinkedHashMap<>();
+
+    private RdaEntity next;
+
+    EntityReader(SourceFile inputFile, PropertyTypes propertyTypes) throws IOException {
+        this(inputFile, propertyTypes, LineEngine.bufferMaxChars(LineEngine.DEFAULT_BUFFER_MAX_MB));
+    }
+
+    /**
+     * @param bufferMaxChars the most chars of the header held in memory, see {@link LineEngine#bufferMaxChars(int)}
+     */
+    EntityReader(SourceFile inputFile, PropertyTypes propertyTypes, int bufferMaxChars) throws IOException {
+        this(inputFile, propertyTypes, Interner.NONE, bufferMaxChars, new ConversionCounts());
+    }
+
+    /**
+     * @param interner pools the URIs of the entities, the namespaces and the ontology URI
+     * @param bufferMaxChars the most chars of the header held in memory, see {@link LineEngine#bufferMaxChars(int)}
+     */
+    EntityReader(SourceFile inputFile, PropertyTypes propertyTypes, Interner interner, int bufferMaxChars) throws IOException {
+        this(inputFile, propertyTypes, interner, bufferMaxChars, new ConversionCounts());
+    }
+
+    /**
+     * @param interner pools the URIs of the entities, the namespaces and the ontology URI
+     * @param bufferMaxChars the most chars of the header held in memory, see {@link LineEngine#bufferMaxChars(int)}
+     * @param counts counts the lines read
+     */
+    EntityReader(SourceFile inputFile, PropertyTypes propertyTypes, Interner interner, int bufferMaxChars, ConversionCounts counts) throws IOException {
+        this.sourcePath = inputFile.path();
+        this.propertyTypes = propertyTypes;
+        this.interner = interner;
+        this.in = new ConversionCounts.LineReader(new InputStreamReader(inputFile.open(), StandardCharsets.UTF_8), counts);
+
+        LineArena lines = new LineArena(bufferMaxChars);
+        try {
+            // the header is parsed exactly like in the line engine, only the namespace lines are kept
+            StringWriter namespaceLines = new StringWriter();
+            LineEngine.handleNamespaces(in, namespaceLines, lines);
+            Matcher matcher = NAMESPACE_PATTERN.matcher(namespaceLines.toString());
+            while (matcher.find()) {
+                namespaces.put(interner.intern(matcher.group(1)), interner.intern(matcher.group(2)));
+            }
+            ontologyURI = interner.intern(handleHeader(inputFile, in, new NullWriter(), lines));
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(in);
+            throw e;
+        } finally {
+            lines.close();
+        }
+    }
+
+    /**
+     * Writes the ontology header of the given file as the line engine writes it to the OWL file, i.e. the
+     * owl:Ontology element (and the skos:ConceptScheme of a term list). The file is read from its start again, the
+     * header is streamed and never held in memory as a whole.
+     * @param bufferMaxChars the most chars of the header held in memory, see {@link LineEngine#bufferMaxChars(int)}
+     */
+    static void writeHeader(SourceFile inputFile, Writer out, int bufferMaxChars) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(inputFile.open(), StandardCharsets.UTF_8));
+        LineArena lines = new LineArena(bufferMaxChars);
+        try {
+            LineEngine.handleNamespaces(in, new NullWriter(), lines);
+            handleHeader(inputFile, in, out, lines);
+        } finally {
+            IOUtils.closeQuietly(in);
+            lines.close();
+        }
+    }
+
+    /**
+     * Reads the header, writing it to the given writer.
+     * @return the ontology URI
+     */
+    private static String handleHeader(SourceFile inputFile, BufferedReader in, Writer out, LineArena lines) throws IOException {
+        if (inputFile.parentName().equals("termList")) {
+            return LineEngine.handleSkosOntologyHeader(in, out, lines);
+        }
+        return LineEngine.handleOntologyHeader(in, out);
+    }
+
+    @Override
+    public String ontologyURI() {
+        return ontologyURI;
+    }
+
+    @Override
+    public Map<String, String> namespaces() {
+        return namespaces;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readEntity();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading " + sourcePath, e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public RdaEntity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        RdaEntity entity = next;
+        next = null;
+        return entity;
+    }
+
+    private RdaEntity readEntity() throws IOException {
+        String line;
+        String entityURI = null;
+        TYPE entityType = null;
+        List<String> lines = new ArrayList<>();
+
+        while ((line = in.readLine()) != null) {
+            boolean startLine = false;
+            if (entityURI == null) {
+                // still fast-forwarding to the start of the next entity
+                entityURI = LineEngine.startOfEntity(line);
+                if (entityURI == null) {
+                    continue;
+                }
+                startLine = true;
+            }
+
+            String entityTypeURI = LineEngine.typeOfEntity(line);
+            if (entityTypeURI != null) {
+                TYPE type = TYPE.forTypeURI(entityTypeURI, propertyTypes.typeOf(entityURI));
+                if (type != null) {
+                    entityType = type;
+                }
+            } else if (LineEngine.isEndOfEntity(line)) {
+                return new RdaEntity(interner.intern(entityURI), entityType, lines, ontologyURI, sourcePath);
+            } else if (!startLine) {
+                lines.add(line);
+            }
+        }
+
+        close();
+        return null;
+    }
+
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(in);
+    }
+}
@@ -0,0 +1,92 @@
+package de.ontomed.simpleanno;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * The entities of a list of RDA files, read lazily file by file. Files that have not been started yet can be split
+ * off, so the files are read in parallel when the spliterator backs a parallel stream.
+ */
+class EntitySpliterator implements Spliterator<RdaEntity> {
+
+    /**
+     * Opens the reader of a file.
+     */
+    @FunctionalInterface
+    interface ReaderFactory {
+        EntityReader open(SourceFile file) throws IOException;
+    }
+
+    private final List<SourceFile> files;
+    private final ReaderFactory readerFactory;
+
+    // all readers opened by this spliterator and the ones split off, so they can be closed when the stream is closed
+    private final Queue<EntityReader> openReaders;
+
+    private int next;
+    private final int end;
+    private EntityReader current;
+
+    EntitySpliterator(List<SourceFile> files, ReaderFactory readerFactory, Queue<EntityReader> openReaders) {
+        this(files, readerFactory, openReaders, 0, files.size());
+    }
+
+    private EntitySpliterator(List<SourceFile> files, ReaderFactory readerFactory, Queue<EntityReader> openReaders, int next, int end) {
+        this.files = files;
+        this.readerFactory = readerFactory;
+        this.openReaders = openReaders;
+        this.next = next;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RdaEntity> action) {
+        while (true) {
+            if (current != null) {
+                if (current.hasNext()) {
+                    action.accept(current.next());
+                    return true;
+                }
+                current.close();
+                openReaders.remove(current);
+                current = null;
+            }
+            if (next >= end) {
+                return false;
+            }
+            SourceFile file = files.get(next++);
+            try {
+                current = readerFactory.open(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading " + file.path(), e);
+            }
+            openReaders.add(current);
+        }
+    }
+
+    @Override
+    public Spliterator<RdaEntity> trySplit() {
+        // only files that have not been started can be split off, otherwise the encounter order would change
+        if (current != null || end - next < 2) {
+            return null;
+        }
+        int middle = next + (end - next) / 2;
+        EntitySpliterator prefix = new EntitySpliterator(files, readerFactory, openReaders, next, middle);
+        next = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -0,0 +1,225 @@
+package de.ontomed.simpleanno;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers subsumption questions ("is X a subproperty of Y", "is concept X narrower than Y") without a reasoner, using
+ * the transitive closure of the {@code rdfs:subClassOf}, {@code rdfs:subPropertyOf} and {@code skos:broader} (and
+ * inverted {@code skos:narrower}) statements of all OWL files, written next to them ({@code rda2owl-hierarchy.idx},
+ * see {@code --hierarchy}). The file is memory mapped.
+ * <p>
+ * Every entity taking part in such a statement has a dense id, its index in the entities sorted by URI. Looking up the
+ * id of a URI and testing whether an entity is an ancestor of another take logarithmic time, the ancestors and
+ * descendants of an entity are stored as sorted lists of ids. The layout of the file (all numbers big endian, strings
+ * as offset and length into the UTF-8 string block):
+ * <pre>
+ * "RDAH" version entities closureSize stringBytes
+ * string block
+ * entities: (offset length firstAncestor ancestorCount firstDescendant descendantCount)*   sorted by URI (UTF-8 bytes)
+ * closure:  id*   the ancestors of every entity, then the descendants of every entity, each list sorted
+ * </pre>
+ * An entity is its own ancestor only if the statements form a cycle. Instances can be used from several threads at
+ * the same time.
+ */
+public final class Hierarchy {
+
+    public static final String FILE_NAME = "rda2owl-hierarchy.idx";
+
+    static final byte[] MAGIC = {'R', 'D', 'A', 'H'};
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 8 + 3 * 4;
+    private static final int ENTITY_BYTES = 24;
+
+    private final ByteBuffer data;
+    private final int entities;
+    private final int stringsStart;
+    private final int entitiesStart;
+    private final int closureStart;
+
+    private Hierarchy(ByteBuffer data) throws IOException {
+        this.data = data;
+        byte[] magic = new byte[MAGIC.length];
+        for (int i = 0; i < magic.length && i < data.capacity(); i++) {
+            magic[i] = data.get(i);
+        }
+        if (data.capacity() < HEADER_BYTES || !Arrays.equals(magic, MAGIC) || data.getInt(4) != VERSION) {
+            throw new IOException("Not a hierarchy of this version");
+        }
+        entities = data.getInt(8);
+        int closureSize = data.getInt(12);
+        int stringBytes = data.getInt(16);
+
+        stringsStart = HEADER_BYTES;
+        entitiesStart = stringsStart + stringBytes;
+        closureStart = entitiesStart + entities * ENTITY_BYTES;
+        if (closureStart + (long) closureSize * 4 != data.capacity()) {
+            throw new IOException("Hierarchy is truncated or corrupt");
+        }
+    }
+
+    /**
+     * Maps the given hierarchy file into memory.
+     * @param file the hierarchy file, or the output folder containing it
+     */
+    public static Hierarchy open(File file) throws IOException {
+        if (file.isDirectory()) {
+            file = new File(file, FILE_NAME);
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel has been closed
+            return new Hierarchy(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+        } finally {
+            in.close();
+        }
+    }
+
+    public int entityCount() {
+        return entities;
+    }
+
+    /**
+     * @return the dense id of the entity with the given URI, -1 if it is not part of the hierarchy
+     */
+    public int id(String uri) {
+        byte[] bytes = uri.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = entities - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compareURI(middle, bytes);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public String uri(int id) {
+        int entry = entry(id);
+        byte[] bytes = new byte[data.getInt(entry + 4)];
+        int offset = stringsStart + data.getInt(entry);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return true if {@code ancestor} is a (direct or indirect) superclass, superproperty or broader concept of
+     * {@code id}
+     */
+    public boolean isAncestor(int ancestor, int id) {
+        int entry = entry(id);
+        int low = data.getInt(entry + 8);
+        int high = low + data.getInt(entry + 12) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = data.getInt(closureStart + middle * 4);
+            if (value < ancestor) {
+                low = middle + 1;
+            } else if (value > ancestor) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the entity with the URI {@code ancestor} is a (direct or indirect) superclass, superproperty or
+     * broader concept of the one with the URI {@code uri}, false if either is not part of the hierarchy
+     */
+    public boolean isAncestor(String ancestor, String uri) {
+        int ancestorId = id(ancestor);
+        int id = ancestorId < 0 ? -1 : id(uri);
+        return id >= 0 && isAncestor(ancestorId, id);
+    }
+
+    /**
+     * @return the ids of all ancestors of the entity, sorted
+     */
+    public int[] ancestors(int id) {
+        int entry = entry(id);
+        return ids(data.getInt(entry + 8), data.getInt(entry + 12));
+    }
+
+    /**
+     * @return the ids of all descendants of the entity, sorted
+     */
+    public int[] descendants(int id) {
+        int entry = entry(id);
+        return ids(data.getInt(entry + 16), data.getInt(entry + 20));
+    }
+
+    /**
+     * @return the URIs of all ancestors of the entity with the given URI, empty if it is not part of the hierarchy
+     */
+    public List<String> ancestors(String uri) {
+        int id = id(uri);
+        return id < 0 ? Collections.<String>emptyList() : uris(ancestors(id));
+    }
+
+    /**
+     * @return the URIs of all descendants of the entity with the given URI, empty if it is not part of the hierarchy
+     */
+    public List<String> descendants(String uri) {
+        int id = id(uri);
+        return id < 0 ? Collections.<String>emptyList() : uris(descendants(id));
+    }
+
+    private int entry(int id) {
+        if (id < 0 || id >= entities) {
+            throw new IndexOutOfBoundsException("No entity with id " + id);
+        }
+        return entitiesStart + id * ENTITY_BYTES;
+    }
+
+    private int[] ids(int first, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = data.getInt(closureStart + (first + i) * 4);
+        }
+        return ids;
+    }
+
+    private List<String> uris(int[] ids) {
+        List<String> uris = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            uris.add(uri(id));
+        }
+        return uris;
+    }
+
+    /**
+     * Compares the URI of the entity with the given id to the given bytes (unsigned).
+     */
+    private int compareURI(int id, byte[] bytes) {
+        int entry = entitiesStart + id * ENTITY_BYTES;
+        int offset = stringsStart + data.getInt(entry);
+        int length = data.getInt(entry + 4);
+        int common = Math.min(length, bytes.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (data.get(offset + i) & 0xff) - (bytes[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - bytes.length;
+    }
+}
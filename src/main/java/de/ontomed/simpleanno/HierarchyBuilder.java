@@ -0,0 +1,326 @@
+package de.ontomed.simpleanno;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the subclass, subproperty and broader statements of the written OWL files and writes their transitive
+ * closure as a {@link Hierarchy}. Files can be added from several threads at the same time.
+ */
+class HierarchyBuilder {
+
+    private static final String NS_RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String NS_RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+    private static final String NS_SKOS = "http://www.w3.org/2004/02/skos/core#";
+
+    // the tag of a statement, e.g. <rdfs:subClassOf rdf:resource="..."/>
+    private static final Pattern STATEMENT_PATTERN = Pattern.compile("<([\\w.-]+):(subClassOf|subPropertyOf|broader|narrower)\\s+([\\w.-]+):resource\\s*=\\s*\"([^\"]*)\"");
+    private static final String[] STATEMENT_NAMES = {"subClassOf", "subPropertyOf", "broader", "narrower"};
+
+    // the child and the parent of every statement, the same statement may have been added several times
+    private final List<String> children = new ArrayList<>();
+    private final List<String> parents = new ArrayList<>();
+    // the URIs are kept until the hierarchy is written
+    private final Interner interner;
+
+    /**
+     * @param interner pools the URIs of the statements
+     */
+    HierarchyBuilder(Interner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * Adds the statements of a written OWL file: the subClassOf, subPropertyOf, broader and narrower elements with
+     * an rdf:resource attribute directly below an element with an rdf:about attribute.
+     */
+    void add(File outputFile) throws IOException {
+        List<String> fileChildren = new ArrayList<>();
+        List<String> fileParents = new ArrayList<>();
+        RandomAccessFile in = new RandomAccessFile(outputFile, "r");
+        try {
+            ByteBuffer data = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            scan(data, fileChildren, fileParents, interner);
+        } finally {
+            in.close();
+        }
+
+        synchronized (this) {
+            children.addAll(fileChildren);
+            parents.addAll(fileParents);
+        }
+    }
+
+    /**
+     * Finds the statements without parsing the file, like {@link EntityDirectoryBuilder} does; only the top level
+     * tags and the tags of the statements are decoded.
+     */
+    private static void scan(ByteBuffer data, List<String> children, List<String> parents, Interner interner) throws IOException {
+        int size = data.limit();
+        Map<String, String> namespaces = new HashMap<>();
+        int depth = 0;
+        // the URI of the current top level element, null if it has none
+        String subject = null;
+
+        int i = 0;
+        while (i < size) {
+            if (data.get(i) != '<') {
+                i++;
+                continue;
+            }
+            int start = i;
+            // decided by the byte after the '<', most tags are start and end tags
+            byte next = i + 1 < size ? data.get(i + 1) : 0;
+            if (next == '/') {
+                i = EntityDirectoryBuilder.skipTag(data, i);
+                depth--;
+            } else if (next == '?') {
+                i = EntityDirectoryBuilder.skipPast(data, i, "?>");
+            } else if (next == '!') {
+                if (EntityDirectoryBuilder.startsWith(data, i, "<!--")) {
+                    i = EntityDirectoryBuilder.skipPast(data, i, "-->");
+                } else if (EntityDirectoryBuilder.startsWith(data, i, "<![CDATA[")) {
+                    i = EntityDirectoryBuilder.skipPast(data, i, "]]>");
+                } else {
+                    i = EntityDirectoryBuilder.skipPast(data, i, ">");
+                }
+            } else {
+                i = EntityDirectoryBuilder.skipTag(data, i);
+                boolean empty = data.get(i - 2) == '/';
+                if (depth == 0) {
+                    Matcher namespace = EntityDirectoryBuilder.NAMESPACE_PATTERN.matcher(EntityDirectoryBuilder.string(data, start, i));
+                    while (namespace.find()) {
+                        namespaces.put(namespace.group(1), namespace.group(2));
+                    }
+                } else if (depth == 1) {
+                    subject = about(data, start, i, namespaces);
+                } else if (depth == 2 && subject != null && isStatement(data, start, i)) {
+                    Matcher matcher = STATEMENT_PATTERN.matcher(EntityDirectoryBuilder.string(data, start, i));
+                    if (matcher.lookingAt() && NS_RDF.equals(namespaces.get(matcher.group(3)))) {
+                        String namespace = namespaces.get(matcher.group(1));
+                        String property = matcher.group(2);
+                        String resource = interner.intern(SearchIndexBuilder.unescape(matcher.group(4)));
+                        if (NS_RDFS.equals(namespace) && (property.equals("subClassOf") || property.equals("subPropertyOf"))
+                                || NS_SKOS.equals(namespace) && property.equals("broader")) {
+                            children.add(interner.intern(subject));
+                            parents.add(resource);
+                        } else if (NS_SKOS.equals(namespace) && property.equals("narrower")) {
+                            children.add(resource);
+                            parents.add(interner.intern(subject));
+                        }
+                    }
+                }
+                if (!empty) {
+                    depth++;
+                }
+            }
+        }
+    }
+
+    private static boolean hasSurrogates(String[] values) {
+        for (String value : values) {
+            for (int i = 0; i < value.length(); i++) {
+                if (Character.isSurrogate(value.charAt(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the value of the rdf:about attribute of the tag between the given offsets, null if it has none
+     */
+    private static String about(ByteBuffer data, int start, int end, Map<String, String> namespaces) {
+        byte quote = 0;
+        for (int i = start + 1; i < end; i++) {
+            byte b = data.get(i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == ':' && EntityDirectoryBuilder.startsWith(data, i, ":about=")) {
+                int prefixStart = i;
+                while (prefixStart > start && data.get(prefixStart - 1) != ' ' && data.get(prefixStart - 1) != '\n' && data.get(prefixStart - 1) != '\t') {
+                    prefixStart--;
+                }
+                int valueStart = i + ":about=".length() + 1;
+                byte valueQuote = data.get(valueStart - 1);
+                if (!NS_RDF.equals(namespaces.get(EntityDirectoryBuilder.string(data, prefixStart, i))) || valueQuote != '"' && valueQuote != '\'') {
+                    continue;
+                }
+                int valueEnd = valueStart;
+                while (valueEnd < end && data.get(valueEnd) != valueQuote) {
+                    valueEnd++;
+                }
+                return SearchIndexBuilder.unescape(EntityDirectoryBuilder.string(data, valueStart, valueEnd));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the local name of the tag between the given offsets is the name of a statement we collect
+     */
+    private static boolean isStatement(ByteBuffer data, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            byte b = data.get(i);
+            if (b == ':') {
+                for (String name : STATEMENT_NAMES) {
+                    if (EntityDirectoryBuilder.startsWith(data, i + 1, name)) {
+                        return true;
+                    }
+                }
+                return false;
+            } else if (b == ' ' || b == '/' || b == '>') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the closure and writes it in the layout described in {@link Hierarchy}.
+     */
+    synchronized void write(File hierarchyFile) throws IOException {
+        // the ids are the positions in the sorted URIs, so they do not depend on the order the files have been
+        // converted in
+        Set<String> uriSet = new HashSet<>(children);
+        uriSet.addAll(parents);
+        String[] uris = uriSet.toArray(new String[0]);
+        if (hasSurrogates(uris)) {
+            Arrays.sort(uris, (a, b) -> SearchIndex.compare(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8)));
+        } else {
+            // without surrogates the order of the chars is the order of the UTF-8 bytes
+            Arrays.sort(uris);
+        }
+        Map<String, Integer> ids = new HashMap<>(uris.length * 2);
+        for (int i = 0; i < uris.length; i++) {
+            ids.put(uris[i], i);
+        }
+
+        // distinct edges, child in the upper half
+        long[] edges = new long[children.size()];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = ((long) ids.get(children.get(i)) << 32) | ids.get(parents.get(i));
+        }
+        Arrays.sort(edges);
+        int[] firstParent = new int[uris.length + 1];
+        int[] parentIds = new int[edges.length];
+        int edgeCount = 0;
+        for (int i = 0; i < edges.length; i++) {
+            if (i > 0 && edges[i] == edges[i - 1]) {
+                continue;
+            }
+            firstParent[(int) (edges[i] >>> 32) + 1]++;
+            parentIds[edgeCount++] = (int) edges[i];
+        }
+        for (int i = 0; i < uris.length; i++) {
+            firstParent[i + 1] += firstParent[i];
+        }
+
+        int[][] ancestors = new int[uris.length][];
+        // the entity whose ancestors have been visited last, so the marks need not be cleared
+        int[] visitedBy = new int[uris.length];
+        Arrays.fill(visitedBy, -1);
+        // every entity is pushed at most once, the start entity a second time if it is part of a cycle
+        int[] stack = new int[uris.length + 1];
+        int[] found = new int[uris.length];
+        long closureSize = 0;
+        for (int id = 0; id < uris.length; id++) {
+            int size = 0;
+            int top = 0;
+            stack[top++] = id;
+            while (top > 0) {
+                int current = stack[--top];
+                for (int p = firstParent[current]; p < firstParent[current + 1]; p++) {
+                    int parent = parentIds[p];
+                    if (visitedBy[parent] != id) {
+                        // an entity reached again through a cycle is its own ancestor
+                        visitedBy[parent] = id;
+                        found[size++] = parent;
+                        stack[top++] = parent;
+                    }
+                }
+            }
+            ancestors[id] = Arrays.copyOf(found, size);
+            Arrays.sort(ancestors[id]);
+            closureSize += size;
+        }
+        // the file is mapped as a whole, so it cannot be larger than an int can address
+        if (closureSize * 2 * 4 > Integer.MAX_VALUE) {
+            throw new IOException(String.format("The hierarchy of %d entities has %d ancestors in total, too many for %s", uris.length, closureSize, hierarchyFile));
+        }
+
+        // the descendants are the inverted ancestors, visited in id order they come out sorted
+        int[] descendantCounts = new int[uris.length];
+        for (int[] entityAncestors : ancestors) {
+            for (int ancestor : entityAncestors) {
+                descendantCounts[ancestor]++;
+            }
+        }
+        int[][] descendants = new int[uris.length][];
+        for (int i = 0; i < uris.length; i++) {
+            descendants[i] = new int[descendantCounts[i]];
+            descendantCounts[i] = 0;
+        }
+        for (int id = 0; id < uris.length; id++) {
+            for (int ancestor : ancestors[id]) {
+                descendants[ancestor][descendantCounts[ancestor]++] = id;
+            }
+        }
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream(uris.length * 64);
+        ByteBuffer table = ByteBuffer.allocate(uris.length * 24);
+        int ancestorPosition = 0;
+        int descendantPosition = (int) closureSize;
+        for (int id = 0; id < uris.length; id++) {
+            byte[] bytes = uris[id].getBytes(StandardCharsets.UTF_8);
+            table.putInt(strings.size());
+            table.putInt(bytes.length);
+            strings.write(bytes);
+            table.putInt(ancestorPosition);
+            table.putInt(ancestors[id].length);
+            table.putInt(descendantPosition);
+            table.putInt(descendants[id].length);
+            ancestorPosition += ancestors[id].length;
+            descendantPosition += descendants[id].length;
+        }
+
+        long fileSize = Hierarchy.HEADER_BYTES + strings.size() + table.capacity() + closureSize * 2 * 4;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException(String.format("The hierarchy of %d entities would take %d bytes, too many for %s", uris.length, fileSize, hierarchyFile));
+        }
+
+        DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(hierarchyFile), 64 * 1024));
+        try {
+            file.write(Hierarchy.MAGIC);
+            file.writeInt(Hierarchy.VERSION);
+            file.writeInt(uris.length);
+            file.writeInt((int) closureSize * 2);
+            file.writeInt(strings.size());
+            strings.writeTo(file);
+            file.write(table.array());
+            // the closure is by far the largest part, streamed from the lists instead of copied into one buffer
+            for (int[] entityAncestors : ancestors) {
+                for (int ancestor : entityAncestors) {
+                    file.writeInt(ancestor);
+                }
+            }
+            for (int[] entityDescendants : descendants) {
+                for (int descendant : entityDescendants) {
+                    file.writeInt(descendant);
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+}
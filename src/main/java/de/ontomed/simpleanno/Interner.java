@@ -0,0 +1,77 @@
+package de.ontomed.simpleanno;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of strings shared by conversions that run at the same time, so that equal strings read from different files
+ * (or different releases of the same vocabulary) are kept in memory only once. Only strings that are kept until the
+ * conversions end are worth pooling: entity URIs (of the search index and the hierarchy), namespace declarations,
+ * catalog locations and ontology URIs. Strings that are only used while a file is converted (e.g. annotation lines)
+ * would just be kept longer than needed. The pool stops growing when it is full; strings that do not fit are returned
+ * as they are.
+ */
+class Interner {
+
+    /**
+     * Does not pool anything.
+     */
+    static final Interner NONE = new Interner(0);
+
+    private final ConcurrentMap<String, String> pool;
+    private final int maxEntries;
+    // to measure the benefit of the pool, see RunMetrics#putInterner(Interner)
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param maxEntries the maximum number of pooled strings
+     */
+    Interner(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.pool = maxEntries > 0 ? new ConcurrentHashMap<>(Math.min(maxEntries, 1 << 16)) : null;
+    }
+
+    /**
+     * @return the pooled string equal to the given one, the given one if there is none yet (or null for null)
+     */
+    String intern(String value) {
+        if (pool == null || value == null) {
+            return value;
+        }
+        lookups.increment();
+        String pooled = pool.get(value);
+        if (pooled != null) {
+            hits.increment();
+            return pooled;
+        }
+        if (pool.size() >= maxEntries) {
+            return value;
+        }
+        pooled = pool.putIfAbsent(value, value);
+        if (pooled != null) {
+            hits.increment();
+            return pooled;
+        }
+        return value;
+    }
+
+    int size() {
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * @return the number of strings looked up in the pool
+     */
+    long lookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return the number of strings looked up that were in the pool already, i.e. that are not kept twice
+     */
+    long hits() {
+        return hits.sum();
+    }
+}
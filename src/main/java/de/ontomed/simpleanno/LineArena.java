@@ -0,0 +1,114 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Holds back lines that cannot be written yet, e.g. the lines of an entity until its type is known. The lines are
+ * appended to one growable char array that is reused for the next entity, so buffering a line allocates nothing once
+ * the array is large enough. The array never grows beyond the given ceiling: if the buffered lines do not fit, the
+ * ones buffered so far are spilled to a temporary file and written from there.
+ * <p>
+ * An instance is used by one thread only.
+ */
+class LineArena implements Closeable {
+
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    private final int maxChars;
+
+    private char[] chars;
+    private int length;
+
+    // the lines spilled to disk, they come before the ones in the array
+    private File spillFile;
+    private Writer spill;
+
+    /**
+     * @param maxChars the most chars held in memory
+     */
+    LineArena(int maxChars) {
+        this.maxChars = maxChars;
+        this.chars = new char[Math.min(INITIAL_SIZE, maxChars)];
+    }
+
+    /**
+     * Appends a line, the line terminator is added.
+     */
+    void add(String line) throws IOException {
+        int needed = line.length() + 1;
+        if (length + needed > chars.length) {
+            makeRoom(needed);
+        }
+        if (needed > chars.length) {
+            // longer than the ceiling on its own, straight to disk
+            spill.write(line);
+            spill.write('\n');
+        } else {
+            line.getChars(0, needed - 1, chars, length);
+            length += needed;
+            chars[length - 1] = '\n';
+        }
+    }
+
+    private void makeRoom(int needed) throws IOException {
+        if (length + needed <= maxChars) {
+            int size = chars.length;
+            while (size < length + needed) {
+                size = (int) Math.min(2L * size, maxChars);
+            }
+            char[] grown = new char[size];
+            System.arraycopy(chars, 0, grown, 0, length);
+            chars = grown;
+            return;
+        }
+        if (spill == null) {
+            spillFile = File.createTempFile("rda2owl-lines", ".tmp");
+            spill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), StandardCharsets.UTF_8));
+        }
+        spill.write(chars, 0, length);
+        length = 0;
+        if (needed <= maxChars && needed > chars.length) {
+            chars = new char[maxChars];
+        }
+    }
+
+    /**
+     * Writes the buffered lines in the order they have been added.
+     */
+    void writeTo(Writer out) throws IOException {
+        if (spill != null) {
+            spill.flush();
+            Reader in = new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8);
+            try {
+                IOUtils.copy(in, out);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        out.write(chars, 0, length);
+    }
+
+    /**
+     * Forgets the buffered lines, the memory is kept for the next ones.
+     */
+    void clear() {
+        length = 0;
+        if (spill != null) {
+            IOUtils.closeQuietly(spill);
+            spill = null;
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Deletes the spill file, if any.
+     */
+    @Override
+    public void close() {
+        clear();
+    }
+}
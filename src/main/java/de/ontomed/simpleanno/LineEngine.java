@@ -0,0 +1,293 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static de.ontomed.simpleanno.RDA2OWL.NS_OWL;
+
+/**
+ * The original conversion engine. Reads the input line by line and relies on the layout of the RDA files, i.e. on
+ * {@code <rdf:Description rdf:about="...">}, {@code </rdf:Description>} and {@code <rdf:type rdf:resource="..."/>}
+ * each sitting on a line of their own.
+ * <p>
+ * The lines of an entity are held back until its type is known, in a {@link LineArena} that is reused for all
+ * entities of a file and holds at most the given number of megabytes, larger entities (or headers) are spilled to a
+ * temporary file.
+ */
+class LineEngine implements ConversionEngine {
+
+    static final int DEFAULT_BUFFER_MAX_MB = 16;
+
+    private static final String XMLNS_PREFIX = "xmlns:";
+
+    // literal prefixes of the patterns, lines without them are not matched at all
+    private static final String ENTITY_START = "<rdf:Description rdf:about=\"";
+    private static final String ENTITY_END = "</rdf:Description>";
+    private static final String ENTITY_TYPE = "<rdf:type rdf:resource=\"";
+
+    private static final Pattern entityDefinitionStartPattern = Pattern.compile("\\<rdf:Description rdf:about=\"(.+?)\"\\>");
+
+    private static final Pattern entityTypePattern = Pattern.compile("\\<rdf:type rdf:resource=\"(.+?)\"\\s*\\/\\>");
+
+    private final int bufferMaxChars;
+
+    LineEngine() {
+        this(DEFAULT_BUFFER_MAX_MB);
+    }
+
+    /**
+     * @param bufferMaxMb the most memory used to hold back the lines of an entity or header, per file
+     */
+    LineEngine(int bufferMaxMb) {
+        this.bufferMaxChars = bufferMaxChars(bufferMaxMb);
+    }
+
+    /**
+     * @return the most chars held back per file, as configured
+     */
+    int bufferMaxChars() {
+        return bufferMaxChars;
+    }
+
+    static int bufferMaxChars(int bufferMaxMb) {
+        if (bufferMaxMb <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferMaxMb + " MB");
+        }
+        // two bytes per char
+        return (int) Math.min(bufferMaxMb * (1L << 19), Integer.MAX_VALUE - 8);
+    }
+
+    @Override
+    public String name() {
+        return "line";
+    }
+
+    @Override
+    public String convert(SourceFile inputFile, File outputFile, PropertyTypes propertyTypes, ConversionCounts counts) throws IOException {
+        // the RDA files are UTF-8 encoded, so is our output (independent of the platform default charset)
+        BufferedReader in = new ConversionCounts.LineReader(new InputStreamReader(inputFile.open(), StandardCharsets.UTF_8), counts);
+
+        // encoded into pooled buffers, written to disk by the writer thread while we go on converting
+        Writer out = new AsyncFileWriter(outputFile);
+
+        LineArena lines = new LineArena(bufferMaxChars);
+        try {
+            handleNamespaces(in, out, lines);
+
+            String ontologyURI;
+            if (inputFile.parentName().equals("termList")) {
+                ontologyURI = handleSkosOntologyHeader(in, out, lines);
+            } else {
+                ontologyURI = handleOntologyHeader(in, out);
+            }
+
+            while  (handleNextEntity(in, out, propertyTypes, lines, counts));
+
+            // waits for the file to be written, write errors are reported here
+            out.close();
+            return ontologyURI;
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+            lines.close();
+        }
+    }
+
+    static void handleNamespaces(BufferedReader in, Writer out, LineArena lines) throws IOException {
+        lines.clear();
+        String line = null;
+
+        // fast forward to xmlns:
+        while (!(line = in.readLine()).trim().startsWith("xmlns:")) {
+            out.write(line);
+            out.write('\n');
+        }
+
+        boolean containsOwlNS = false;
+        // the last namespace line is held back, the owl namespace goes before it
+        String lastNsLine = null;
+
+        while (line.trim().startsWith("xmlns:")) {
+            if (lastNsLine != null) {
+                lines.add(lastNsLine);
+            }
+            lastNsLine = line;
+            if (line.contains(NS_OWL)) {
+                containsOwlNS = true;
+            }
+            line = in.readLine();
+        }
+
+        lines.writeTo(out);
+        if (!containsOwlNS) {
+            out.write("    " + XMLNS_PREFIX + "owl=\"" + NS_OWL + "\"\n");
+        }
+        out.write(lastNsLine);
+        out.write('\n');
+        lines.clear();
+
+        out.write(line);
+        out.write('\n');
+
+    }
+
+    // transforms the first rdf:Description to an owl:Ontology declaration
+    static String handleOntologyHeader(BufferedReader in, Writer out) throws IOException {
+        String line = null;
+
+        String ontologyURI = null;
+
+        while ((line = in.readLine()) != null) {
+            if (ontologyURI == null) {
+                ontologyURI = startOfEntity(line);
+                if (ontologyURI != null) {
+                    line = "<owl:Ontology rdf:about=\"" + ontologyURI + "\">";
+                }
+            }
+            if (isEndOfEntity(line)) {
+                out.write("</owl:Ontology>\n");
+                break;
+            }
+            out.write(line);
+            out.write('\n');
+
+        }
+
+        return ontologyURI;
+    }
+
+    private static final Pattern SKOS_CONCEPT_SCHEME_START_PATTERN = Pattern.compile("<skos:ConceptScheme rdf:about=\"(.*?)\">");
+    private static final Pattern SKOS_CONCEPT_SCHEME_END_PATTERN = Pattern.compile("</skos:ConceptScheme>");
+
+    static String handleSkosOntologyHeader(BufferedReader in, Writer out, LineArena lines) throws IOException {
+        String ontologyURI = null;
+        lines.clear();
+        String line = null;
+
+        while ((line = in.readLine()) != null) {
+            lines.add(line);
+            Matcher matcher = SKOS_CONCEPT_SCHEME_START_PATTERN.matcher(line);
+            if (matcher.find()) {
+                ontologyURI = matcher.group(1);
+            } else {
+                matcher = SKOS_CONCEPT_SCHEME_END_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    break;
+                }
+            }
+        }
+
+        out.write("<owl:Ontology rdf:about=\"");
+        out.write(String.valueOf(ontologyURI));
+        out.write("\" />\n");
+        lines.writeTo(out);
+        lines.clear();
+
+        return ontologyURI;
+    }
+
+    private static boolean handleNextEntity(BufferedReader in, Writer out, PropertyTypes propertyTypes, LineArena lines, ConversionCounts counts) throws IOException {
+        String line = null;
+        lines.clear();
+        // the first line of the entity is kept apart, it is replaced once the type is known
+        String firstLine = null;
+
+        String entityURI = null;
+        TYPE entityType = null;
+
+        while ((line = in.readLine()) != null) {
+
+            if (entityURI == null) {
+                // still fast-forwarding to the start of the next entity
+                entityURI = startOfEntity(line);
+                if (entityURI == null) {
+                    // still no entity start
+                    // just copy the line to the output file
+                    out.write(line);
+                    out.write('\n');
+                    continue;
+                }
+            }
+
+
+            // we are inside of an entity
+
+            // look for type element
+            String entityTypeURI = typeOfEntity(line);
+            if (entityTypeURI != null) {
+                // this is the line that contains the rdf:type element
+                // we extract the type and create a proper element instead of the rdf:Description element
+                TYPE type = TYPE.forTypeURI(entityTypeURI, propertyTypes.typeOf(entityURI));
+                if (type != null) {
+                    entityType = type;
+                }
+            } else if (isEndOfEntity(line)) {
+                // this is the end, my friend
+                counts.entity(entityType);
+
+                if (entityType == null) {
+                    if (firstLine != null) {
+                        out.write(firstLine);
+                        out.write('\n');
+                    }
+                    lines.writeTo(out);
+                    out.write(line);
+                    out.write('\n');
+                } else {
+                    // we need to replace the rdf:Description start and end tags (first and last line) with the concrete owl entity elements
+                    if (firstLine != null) {
+                        out.write("<owl:");
+                        out.write(entityType.element());
+                        out.write(" rdf:about=\"");
+                        out.write(entityURI);
+                        out.write("\">\n");
+                    }
+                    lines.writeTo(out);
+                    out.write("</owl:");
+                    out.write(entityType.element());
+                    out.write(">\n");
+                }
+
+                return true;
+
+            } else if (firstLine == null) {
+                firstLine = line;
+            } else {
+                // regular line, copy it
+                lines.add(line);
+            }
+
+        }
+        // no more entities, bye bye
+        return false;
+
+    }
+
+    static String startOfEntity(String line) {
+        if (!line.contains(ENTITY_START)) {
+            return null;
+        }
+        Matcher matcher = entityDefinitionStartPattern.matcher(line);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    static boolean isEndOfEntity(String line) {
+        return line.contains(ENTITY_END);
+    }
+
+    /**
+     * @return the resource of the rdf:type element on the given line or null if there is none
+     */
+    static String typeOfEntity(String line) {
+        if (!line.contains(ENTITY_TYPE)) {
+            return null;
+        }
+        Matcher matcher = entityTypePattern.matcher(line);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
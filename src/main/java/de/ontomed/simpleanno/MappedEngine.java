@@ -0,0 +1,502 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static de.ontomed.simpleanno.RDA2OWL.NS_OWL;
+
+/**
+ * Byte level variant of the {@link LineEngine}. The input is memory mapped and scanned for the few tag prefixes that
+ * matter. Only lines containing one of them are decoded and matched against the same patterns as in the line engine,
+ * all other bytes are copied to the output unchanged via a direct staging buffer. The output is byte-identical to the
+ * one of the line engine (for well-formed UTF-8 input), input and output are always UTF-8.
+ */
+class MappedEngine implements ConversionEngine {
+
+    private static final byte[] XMLNS = ascii("xmlns:");
+    private static final byte[] OWL_NS = ascii(NS_OWL);
+    private static final byte[] ENTITY_START = ascii("<rdf:Description rdf:about=\"");
+    private static final byte[] ENTITY_END = ascii("</rdf:Description>");
+    private static final byte[] ENTITY_TYPE = ascii("<rdf:type rdf:resource=\"");
+    private static final byte[] SCHEME_START = ascii("<skos:ConceptScheme rdf:about=\"");
+    private static final byte[] SCHEME_END = ascii("</skos:ConceptScheme>");
+
+    private static final byte[] LF = ascii("\n");
+    private static final byte[] OWL_NS_LINE = ascii("    xmlns:owl=\"" + NS_OWL + "\"\n");
+    private static final byte[] ONTOLOGY_END_LINE = ascii("</owl:Ontology>\n");
+
+    private static final byte[][] ENTITY_END_LINES = new byte[TYPE.values().length][];
+
+    static {
+        for (TYPE type : TYPE.values()) {
+            ENTITY_END_LINES[type.ordinal()] = ascii("</owl:" + type.element() + ">\n");
+        }
+    }
+
+    // same patterns as in the line engine, only applied to lines that contain the respective prefix
+    private static final Pattern ENTITY_START_PATTERN = Pattern.compile("\\<rdf:Description rdf:about=\"(.+?)\"\\>");
+    private static final Pattern ENTITY_TYPE_PATTERN = Pattern.compile("\\<rdf:type rdf:resource=\"(.+?)\"\\s*\\/\\>");
+    private static final Pattern SCHEME_START_PATTERN = Pattern.compile("<skos:ConceptScheme rdf:about=\"(.*?)\">");
+
+    private static final int STAGING_BUFFER_SIZE = 1 << 16;
+
+    private static final ThreadLocal<ByteBuffer> STAGING_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(STAGING_BUFFER_SIZE));
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String name() {
+        return "mmap";
+    }
+
+    @Override
+    public String convert(SourceFile inputFile, File outputFile, PropertyTypes propertyTypes, ConversionCounts counts) throws IOException {
+        FileChannel inChannel = null;
+        ByteBuffer data;
+
+        if (inputFile instanceof DirectorySource.LocalFile) {
+            inChannel = FileChannel.open(((DirectorySource.LocalFile) inputFile).file().toPath(), StandardOpenOption.READ);
+            long size = inChannel.size();
+            if (size > Integer.MAX_VALUE) {
+                inChannel.close();
+                // too large to be mapped in one piece, which never happens with the RDA files anyway
+                return new LineEngine().convert(inputFile, outputFile, propertyTypes, counts);
+            }
+            data = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } else if (inputFile instanceof ZipStreamPipeline.InflatedFile) {
+            data = ByteBuffer.wrap(((ZipStreamPipeline.InflatedFile) inputFile).content());
+        } else {
+            // zip entries cannot be mapped, so they are read into memory
+            InputStream in = inputFile.open();
+            try {
+                data = ByteBuffer.wrap(IOUtils.toByteArray(in));
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        FileChannel outChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            Conversion conversion = new Conversion(data, new Output(data, outChannel, STAGING_BUFFER.get()), propertyTypes, counts);
+            return conversion.run(inputFile.parentName().equals("termList"));
+        } finally {
+            outChannel.close();
+            if (inChannel != null) {
+                inChannel.close();
+            }
+        }
+    }
+
+    /**
+     * Collects the output. Consecutive ranges of the input are merged and copied in one go, everything is staged in
+     * a direct buffer which is written to the output channel when full.
+     */
+    private static final class Output {
+
+        private final ByteBuffer data;
+        private final FileChannel channel;
+        private final ByteBuffer staging;
+
+        private int pendingStart;
+        private int pendingEnd;
+
+        Output(ByteBuffer data, FileChannel channel, ByteBuffer staging) {
+            this.data = data;
+            this.channel = channel;
+            this.staging = staging;
+            ((Buffer) staging).clear();
+        }
+
+        void copy(int start, int end) throws IOException {
+            if (start != pendingEnd) {
+                flushPending();
+                pendingStart = start;
+            }
+            pendingEnd = end;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            flushPending();
+            put(ByteBuffer.wrap(bytes));
+        }
+
+        void close() throws IOException {
+            flushPending();
+            flushStaging();
+        }
+
+        private void flushPending() throws IOException {
+            if (pendingEnd > pendingStart) {
+                ByteBuffer range = data.duplicate();
+                ((Buffer) range).limit(pendingEnd);
+                ((Buffer) range).position(pendingStart);
+                put(range);
+            }
+            pendingStart = pendingEnd = 0;
+        }
+
+        private void put(ByteBuffer src) throws IOException {
+            if (src.remaining() > staging.remaining()) {
+                flushStaging();
+            }
+            if (src.remaining() >= staging.capacity()) {
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            } else {
+                staging.put(src);
+            }
+        }
+
+        private void flushStaging() throws IOException {
+            ((Buffer) staging).flip();
+            while (staging.hasRemaining()) {
+                channel.write(staging);
+            }
+            ((Buffer) staging).clear();
+        }
+    }
+
+    /**
+     * A growable list of line ranges (start, end without terminator, start of next line, terminator is a single LF).
+     */
+    private static final class Lines {
+        private int[] values = new int[4 * 64];
+        private int size;
+
+        void add(int start, int end, int next, boolean lf) {
+            if (4 * size + 4 > values.length) {
+                int[] grown = new int[values.length * 2];
+                System.arraycopy(values, 0, grown, 0, values.length);
+                values = grown;
+            }
+            values[4 * size] = start;
+            values[4 * size + 1] = end;
+            values[4 * size + 2] = next;
+            values[4 * size + 3] = lf ? 1 : 0;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void copy(int index, Output out) throws IOException {
+            int i = 4 * index;
+            if (values[i + 3] == 1) {
+                out.copy(values[i], values[i + 2]);
+            } else {
+                out.copy(values[i], values[i + 1]);
+                out.write(LF);
+            }
+        }
+    }
+
+    /**
+     * State of a single file conversion. Mirrors the structure of the line engine.
+     */
+    private static final class Conversion {
+
+        private final ByteBuffer data;
+        private final int limit;
+        private final Output out;
+        private final PropertyTypes propertyTypes;
+        private final ConversionCounts counts;
+
+        private final Lines lines = new Lines();
+        private byte[] scratch = new byte[256];
+
+        // the current line
+        private int position;
+        private int lineStart;
+        private int lineEnd;
+        private int lineNext;
+        private boolean lineLF;
+
+        Conversion(ByteBuffer data, Output out, PropertyTypes propertyTypes, ConversionCounts counts) {
+            this.data = data;
+            this.limit = data.limit();
+            this.out = out;
+            this.propertyTypes = propertyTypes;
+            this.counts = counts;
+        }
+
+        String run(boolean termList) throws IOException {
+            handleNamespaces();
+
+            String ontologyURI = termList ? handleSkosOntologyHeader() : handleOntologyHeader();
+
+            while (handleNextEntity());
+
+            out.close();
+            return ontologyURI;
+        }
+
+        /**
+         * Advances to the next line, with the same notion of a line as {@link java.io.BufferedReader#readLine()}.
+         * @return false at the end of the input
+         */
+        private boolean nextLine() {
+            if (position >= limit) {
+                return false;
+            }
+            int i = position;
+            while (i < limit) {
+                byte b = data.get(i);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                i++;
+            }
+            lineStart = position;
+            lineEnd = i;
+            lineLF = false;
+            if (i < limit) {
+                if (data.get(i) == '\r') {
+                    i++;
+                    if (i < limit && data.get(i) == '\n') {
+                        i++;
+                    }
+                } else {
+                    lineLF = true;
+                    i++;
+                }
+            }
+            lineNext = i;
+            position = i;
+            counts.line();
+            return true;
+        }
+
+        private void copyLine() throws IOException {
+            if (lineLF) {
+                out.copy(lineStart, lineNext);
+            } else {
+                out.copy(lineStart, lineEnd);
+                out.write(LF);
+            }
+        }
+
+        private void addLine() {
+            lines.add(lineStart, lineEnd, lineNext, lineLF);
+        }
+
+        private boolean lineContains(byte[] pattern) {
+            int last = lineEnd - pattern.length;
+            byte first = pattern[0];
+            for (int i = lineStart; i <= last; i++) {
+                if (data.get(i) != first) {
+                    continue;
+                }
+                int j = 1;
+                while (j < pattern.length && data.get(i + j) == pattern[j]) {
+                    j++;
+                }
+                if (j == pattern.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean lineTrimmedStartsWith(byte[] pattern) {
+            int i = lineStart;
+            while (i < lineEnd && (data.get(i) & 0xff) <= ' ') {
+                i++;
+            }
+            if (lineEnd - i < pattern.length) {
+                return false;
+            }
+            for (int j = 0; j < pattern.length; j++) {
+                if (data.get(i + j) != pattern[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String decodeLine() {
+            int length = lineEnd - lineStart;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            ByteBuffer line = data.duplicate();
+            ((Buffer) line).position(lineStart);
+            line.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the first group of the pattern if the current line contains the prefix and matches the pattern
+         */
+        private String matchLine(byte[] prefix, Pattern pattern) {
+            if (!lineContains(prefix)) {
+                return null;
+            }
+            Matcher matcher = pattern.matcher(decodeLine());
+            return matcher.find() ? matcher.group(1) : null;
+        }
+
+        private void handleNamespaces() throws IOException {
+            // fast forward to xmlns:
+            do {
+                if (!nextLine()) {
+                    throw new IOException("No namespace declarations found");
+                }
+                if (lineTrimmedStartsWith(XMLNS)) {
+                    break;
+                }
+                copyLine();
+            } while (true);
+
+            boolean containsOwlNS = false;
+            boolean more = true;
+
+            lines.clear();
+            while (more && lineTrimmedStartsWith(XMLNS)) {
+                addLine();
+                if (lineContains(OWL_NS)) {
+                    containsOwlNS = true;
+                }
+                more = nextLine();
+            }
+
+            if (!more) {
+                throw new IOException("Unexpected end of file after namespace declarations");
+            }
+
+            int count = lines.size();
+            for (int i = 0; i < count; i++) {
+                if (i == count - 1 && !containsOwlNS) {
+                    out.write(OWL_NS_LINE);
+                }
+                lines.copy(i, out);
+            }
+
+            copyLine();
+        }
+
+        // transforms the first rdf:Description to an owl:Ontology declaration
+        private String handleOntologyHeader() throws IOException {
+            String ontologyURI = null;
+
+            while (nextLine()) {
+                String replacement = null;
+                if (ontologyURI == null) {
+                    ontologyURI = matchLine(ENTITY_START, ENTITY_START_PATTERN);
+                    if (ontologyURI != null) {
+                        replacement = "<owl:Ontology rdf:about=\"" + ontologyURI + "\">";
+                    }
+                }
+                if (replacement != null) {
+                    if (replacement.contains("</rdf:Description>")) {
+                        out.write(ONTOLOGY_END_LINE);
+                        break;
+                    }
+                    out.write((replacement + "\n").getBytes(StandardCharsets.UTF_8));
+                } else if (lineContains(ENTITY_END)) {
+                    out.write(ONTOLOGY_END_LINE);
+                    break;
+                } else {
+                    copyLine();
+                }
+            }
+
+            return ontologyURI;
+        }
+
+        private String handleSkosOntologyHeader() throws IOException {
+            String ontologyURI = null;
+            lines.clear();
+
+            while (nextLine()) {
+                addLine();
+                String schemeURI = matchLine(SCHEME_START, SCHEME_START_PATTERN);
+                if (schemeURI != null) {
+                    ontologyURI = schemeURI;
+                } else if (lineContains(SCHEME_END)) {
+                    break;
+                }
+            }
+
+            out.write(("<owl:Ontology rdf:about=\"" + ontologyURI + "\" />\n").getBytes(StandardCharsets.UTF_8));
+
+            for (int i = 0; i < lines.size(); i++) {
+                lines.copy(i, out);
+            }
+
+            return ontologyURI;
+        }
+
+        private boolean handleNextEntity() throws IOException {
+            lines.clear();
+
+            String entityURI = null;
+            TYPE entityType = null;
+
+            while (nextLine()) {
+
+                if (entityURI == null) {
+                    // still fast-forwarding to the start of the next entity
+                    entityURI = matchLine(ENTITY_START, ENTITY_START_PATTERN);
+                    if (entityURI == null) {
+                        copyLine();
+                        continue;
+                    }
+                }
+
+                String entityTypeURI = matchLine(ENTITY_TYPE, ENTITY_TYPE_PATTERN);
+                if (entityTypeURI != null) {
+                    // the rdf:type line is dropped
+                    TYPE type = TYPE.forTypeURI(entityTypeURI, propertyTypes.typeOf(entityURI));
+                    if (type != null) {
+                        entityType = type;
+                    }
+                } else if (lineContains(ENTITY_END)) {
+                    addLine();
+                    counts.entity(entityType);
+
+                    int count = lines.size();
+                    if (entityType == null) {
+                        for (int i = 0; i < count; i++) {
+                            lines.copy(i, out);
+                        }
+                    } else {
+                        // first and last line are replaced with the concrete owl entity elements
+                        if (count > 1) {
+                            out.write(("<owl:" + entityType.element() + " rdf:about=\"" + entityURI + "\">\n").getBytes(StandardCharsets.UTF_8));
+                            for (int i = 1; i < count - 1; i++) {
+                                lines.copy(i, out);
+                            }
+                        }
+                        out.write(ENTITY_END_LINES[entityType.ordinal()]);
+                    }
+
+                    return true;
+                } else {
+                    addLine();
+                }
+            }
+
+            // no more entities
+            return false;
+        }
+    }
+}
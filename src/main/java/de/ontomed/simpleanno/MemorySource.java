@@ -0,0 +1,90 @@
+package de.ontomed.simpleanno;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * RDA files held in memory, e.g. read from a release zip that is only available as a stream.
+ */
+class MemorySource implements RdaSource {
+
+    private final String location;
+
+    // keyed by the path relative to the xml folder
+    private final TreeMap<String, SourceFile> files = new TreeMap<>();
+
+    private MemorySource(String location) {
+        this.location = location;
+    }
+
+    /**
+     * Reads the RDA files from a release zip. All other entries are skipped. The stream is not closed.
+     */
+    static MemorySource readZip(InputStream in, String location) throws IOException {
+        MemorySource source = new MemorySource(location);
+
+        ZipInputStream zip = new ZipInputStream(in);
+        byte[] buffer = new byte[1 << 16];
+        String xmlPrefix = null;
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (xmlPrefix == null) {
+                xmlPrefix = ZipSource.xmlPrefix(name);
+            }
+            if (xmlPrefix == null || entry.isDirectory() || !name.startsWith(xmlPrefix) || !name.endsWith(".xml")) {
+                continue;
+            }
+
+            ByteArrayOutputStream content = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 1 << 16);
+            int read;
+            while ((read = zip.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            String path = name.substring(xmlPrefix.length());
+            source.files.put(path, new ZipStreamPipeline.InflatedFile(path, content.toByteArray()));
+        }
+
+        if (xmlPrefix == null) {
+            throw new IOException("No RDA xml folder found in " + location);
+        }
+        return source;
+    }
+
+    @Override
+    public List<SourceFile> list(String folder) {
+        String prefix = folder + "/";
+        List<SourceFile> result = new ArrayList<>();
+        for (String path : files.tailMap(prefix).keySet()) {
+            if (!path.startsWith(prefix)) {
+                break;
+            }
+            if (path.indexOf('/', prefix.length()) < 0) {
+                result.add(files.get(path));
+            }
+        }
+        return result.isEmpty() ? Collections.<SourceFile>emptyList() : result;
+    }
+
+    @Override
+    public SourceFile find(String path) {
+        return files.get(path);
+    }
+
+    @Override
+    public String location() {
+        return location;
+    }
+
+    @Override
+    public void close() {
+        files.clear();
+    }
+}
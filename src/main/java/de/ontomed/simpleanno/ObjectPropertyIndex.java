@@ -0,0 +1,109 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static de.ontomed.simpleanno.StaxEngine.NS_RDF;
+
+/**
+ * The property types of a {@code datatype.xml} file: a property becomes an object property if an equally named property
+ * is defined in the accompanying {@code object.xml}, and a datatype property otherwise.
+ * <p>
+ * The index is built in a single pass over {@code object.xml} and only holds the sorted, distinct local names of its
+ * properties (after {@link RDA2OWL#normalizeNameSpace(String)}), so its size depends on the number of properties and
+ * not on the size of the file.
+ */
+class ObjectPropertyIndex implements PropertyTypes {
+
+    private final String[] localNames;
+
+    private ObjectPropertyIndex(String[] localNames) {
+        this.localNames = localNames;
+    }
+
+    /**
+     * Reads the properties defined in the given {@code object.xml} file.
+     */
+    static ObjectPropertyIndex build(SourceFile objectFile) throws IOException {
+        return build(objectFile, new ConversionCounts());
+    }
+
+    /**
+     * @param counts counts the lines of the file
+     */
+    static ObjectPropertyIndex build(SourceFile objectFile, ConversionCounts counts) throws IOException {
+        List<String> names = new ArrayList<>();
+
+        ConversionCounts.LineFeedInputStream in = new ConversionCounts.LineFeedInputStream(new BufferedInputStream(objectFile.open()), counts);
+        try {
+            XMLStreamReader reader = StaxEngine.INPUT_FACTORY.get().createXMLStreamReader(in);
+            try {
+                int depth = 0;
+                boolean headerDone = false;
+                while (reader.hasNext()) {
+                    int kind = reader.next();
+                    if (kind == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        // the entities are the rdf:Description elements below rdf:RDF, the first one is the ontology header
+                        if (depth == 2 && NS_RDF.equals(reader.getNamespaceURI()) && "Description".equals(reader.getLocalName())) {
+                            String about = reader.getAttributeValue(NS_RDF, "about");
+                            if (about != null && headerDone) {
+                                names.add(localName(about));
+                            }
+                            headerDone = true;
+                        }
+                    } else if (kind == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+                in.finish();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Error reading " + objectFile.path() + ": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+
+        String[] sorted = names.toArray(new String[names.size()]);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return new ObjectPropertyIndex(Arrays.copyOf(sorted, distinct));
+    }
+
+    /**
+     * @return true if a property with the same (normalized) local name is defined in {@code object.xml}
+     */
+    boolean contains(String entityURI) {
+        return Arrays.binarySearch(localNames, localName(entityURI)) >= 0;
+    }
+
+    int size() {
+        return localNames.length;
+    }
+
+    @Override
+    public TYPE typeOf(String entityURI) {
+        return contains(entityURI) ? TYPE.OBJECT_PROPERTY : TYPE.DATATYPE_PROPERTY;
+    }
+
+    static String localName(String uri) {
+        String normalized = RDA2OWL.normalizeNameSpace(uri);
+        return normalized.substring(Math.max(normalized.lastIndexOf('/'), normalized.lastIndexOf('#')) + 1);
+    }
+}
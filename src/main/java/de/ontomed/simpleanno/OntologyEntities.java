@@ -0,0 +1,31 @@
+package de.ontomed.simpleanno;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The entities of one output ontology, read one entity at a time.
+ */
+interface OntologyEntities extends Iterator<RdaEntity>, Closeable {
+
+    /**
+     * Opens the entities of an output ontology again, e.g. to add them to the search index after the OWL
+     * file has been written.
+     */
+    @FunctionalInterface
+    interface Opener {
+        OntologyEntities open() throws IOException;
+    }
+
+    String ontologyURI();
+
+    /**
+     * @return the namespace declarations (prefix to namespace URI), including the owl namespace
+     */
+    Map<String, String> namespaces();
+
+    @Override
+    void close();
+}
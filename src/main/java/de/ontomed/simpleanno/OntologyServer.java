@@ -0,0 +1,368 @@
+package de.ontomed.simpleanno;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the files of the current release folder over HTTP: {@code rda-all.owl}, the individual ontologies, the
+ * catalog and the load optimized formats, under their path relative to the release folder (e.g.
+ * {@code /Elements/w.owl}). {@code /} serves {@code rda-all.owl}.
+ * <p>
+ * Responses carry a strong ETag (the SHA-256 of the content) and are revalidated by clients on every use
+ * ({@code Cache-Control: no-cache}), so a new release becomes visible right after it has been swapped in. Clients
+ * accepting gzip get a compressed response. Recently requested files are kept in memory (content and compressed
+ * content) up to a byte budget. Larger files are streamed from disk and compressed while they are sent; their hash is
+ * computed once and remembered.
+ * <p>
+ * The release folder is looked up once per request, so a request is answered completely from the release that was
+ * current when it arrived.
+ */
+class OntologyServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Supplier<File> releaseFolder;
+    private final FileCache cache;
+
+    /**
+     * @param address the address to listen on
+     * @param releaseFolder returns the folder of the current release, null while there is none
+     * @param cacheBytes the maximum number of bytes kept in memory
+     * @param threads the number of request handler threads
+     */
+    OntologyServer(InetSocketAddress address, Supplier<File> releaseFolder, long cacheBytes, int threads) throws IOException {
+        this.releaseFolder = releaseFolder;
+        this.cache = new FileCache(cacheBytes);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server listens on (useful if it has been created with port 0)
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            boolean head = method.equals("HEAD");
+            if (!head && !method.equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            File folder = releaseFolder.get();
+            if (folder == null) {
+                exchange.getResponseHeaders().set("Retry-After", "60");
+                sendText(exchange, 503, "No release has been converted yet");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            File file = resolve(folder, path.equals("/") ? "/rda-all.owl" : path);
+            if (file == null) {
+                sendText(exchange, 404, "Not found");
+                return;
+            }
+
+            Resource resource = cache.get(file);
+            Headers headers = exchange.getResponseHeaders();
+            boolean gzip = resource.compressible && acceptsGzip(exchange.getRequestHeaders());
+            // the compressed representation is a different entity and needs a different tag
+            String etag = gzip ? resource.etag.substring(0, resource.etag.length() - 1) + "-gz\"" : resource.etag;
+            headers.set("Content-Type", resource.contentType);
+            headers.set("ETag", etag);
+            headers.set("Cache-Control", "no-cache");
+            if (resource.compressible) {
+                headers.set("Vary", "Accept-Encoding");
+            }
+
+            if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            if (gzip) {
+                headers.set("Content-Encoding", "gzip");
+            }
+            if (resource.content == null) {
+                sendFile(exchange, resource, gzip, head);
+                return;
+            }
+            byte[] body = gzip ? resource.gzipped : resource.content;
+            if (head) {
+                headers.set("Content-Length", Long.toString(body.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            System.out.printf("Error serving %s\n", exchange.getRequestURI());
+            System.out.println(e.getMessage());
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the file for the given request path, or null if there is none or the path is not allowed
+     */
+    static File resolve(File folder, String path) {
+        File file = folder;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            // no way out of the release folder and no hidden files
+            if (segment.startsWith(".") || segment.contains("\\")) {
+                return null;
+            }
+            file = new File(file, segment);
+        }
+        return file != folder && file.isFile() ? file : null;
+    }
+
+    private static boolean acceptsGzip(Headers requestHeaders) {
+        String acceptEncoding = requestHeaders.getFirst("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends a file that is not kept in memory straight from disk, compressed while it is sent if requested. The length
+     * of the compressed response is not known in advance, so it is sent in chunks.
+     */
+    private static void sendFile(HttpExchange exchange, Resource resource, boolean gzip, boolean head) throws IOException {
+        if (head) {
+            if (!gzip) {
+                exchange.getResponseHeaders().set("Content-Length", Long.toString(resource.length));
+            }
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, gzip ? 0 : resource.length);
+        OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody(), 64 * 1024) : exchange.getResponseBody();
+        try {
+            Files.copy(resource.file.toPath(), out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    static String contentType(String fileName) {
+        if (fileName.endsWith(".owl")) {
+            return "application/rdf+xml";
+        } else if (fileName.endsWith(".xml")) {
+            return "application/xml";
+        } else if (fileName.endsWith(".nt")) {
+            return "application/n-triples";
+        } else if (fileName.endsWith(".gz")) {
+            return "application/gzip";
+        } else if (fileName.endsWith(".json")) {
+            return "application/json";
+        } else if (fileName.endsWith(".txt")) {
+            return "text/plain; charset=utf-8";
+        }
+        return "application/octet-stream";
+    }
+
+    /**
+     * A file of a release folder, loaded into memory if it fits into the cache. Release folders are never changed once
+     * they are served, so the content and the tag stay valid as long as the file exists.
+     */
+    private static class Resource {
+        private final File file;
+        private final long length;
+        private final String etag;
+        private final String contentType;
+        // false for files that are already compressed
+        private final boolean compressible;
+        // both null if the file is streamed from disk, gzipped also null if the file is not compressible
+        private final byte[] content;
+        private final byte[] gzipped;
+
+        private Resource(File file, String etag, byte[] content) throws IOException {
+            this.file = file;
+            this.length = content == null ? file.length() : content.length;
+            this.etag = etag;
+            this.contentType = contentType(file.getName());
+            this.compressible = !file.getName().endsWith(".gz") && !file.getName().endsWith(".rdfb");
+            this.content = content;
+            this.gzipped = content != null && compressible ? gzip(content) : null;
+        }
+
+        private static Resource load(File file) throws IOException {
+            InputStream in = new FileInputStream(file);
+            byte[] content;
+            try {
+                content = IOUtils.toByteArray(in);
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+            return new Resource(file, etag(BuildManifest.sha256(new ByteArrayInputStream(content))), content);
+        }
+
+        private long size() {
+            return content == null ? 0 : content.length + (gzipped == null ? 0 : gzipped.length);
+        }
+
+        private static String etag(String hash) {
+            return "\"" + hash + "\"";
+        }
+
+        private static byte[] gzip(byte[] content) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(content);
+            gzip.close();
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Least recently used files, up to a byte budget. Files larger than the budget are streamed from disk for every
+     * request; only their tags are kept, so each of them is read for hashing once.
+     */
+    private static class FileCache {
+
+        // tags of streamed files, a few per release
+        private static final int MAX_TAGS = 1024;
+
+        private final long maxBytes;
+        private final LinkedHashMap<String, Resource> resources = new LinkedHashMap<>(64, 0.75f, true);
+        private final LinkedHashMap<String, String> tags = new LinkedHashMap<String, String>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_TAGS;
+            }
+        };
+        private long bytes;
+
+        private FileCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        Resource get(File file) throws IOException {
+            String key = file.getAbsolutePath();
+            synchronized (this) {
+                Resource resource = resources.get(key);
+                if (resource != null) {
+                    return resource;
+                }
+            }
+
+            if (file.length() > maxBytes) {
+                return new Resource(file, tag(file), null);
+            }
+
+            // loaded outside of the lock, two requests for the same file may both load it
+            Resource resource = Resource.load(file);
+            if (resource.size() > maxBytes) {
+                return resource;
+            }
+
+            synchronized (this) {
+                Resource previous = resources.put(key, resource);
+                if (previous != null) {
+                    bytes -= previous.size();
+                }
+                bytes += resource.size();
+                Iterator<Map.Entry<String, Resource>> eldest = resources.entrySet().iterator();
+                while (bytes > maxBytes && eldest.hasNext()) {
+                    Resource evicted = eldest.next().getValue();
+                    eldest.remove();
+                    bytes -= evicted.size();
+                }
+            }
+            return resource;
+        }
+
+        /**
+         * @return the tag of a streamed file, hashed from disk on its first request
+         */
+        private String tag(File file) throws IOException {
+            // a file replaced under the same path gets a new key
+            String key = file.getAbsolutePath() + "\t" + file.length() + "\t" + file.lastModified();
+            synchronized (this) {
+                String tag = tags.get(key);
+                if (tag != null) {
+                    return tag;
+                }
+            }
+            String tag = Resource.etag(BuildManifest.sha256(file));
+            synchronized (this) {
+                tags.put(key, tag);
+            }
+            return tag;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package de.ontomed.simpleanno;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The formats written by a conversion: always the OWL (RDF/XML) files, optionally some load optimized
+ * {@link TripleFormat}s next to them, and which of them the catalog points at.
+ */
+class OutputFormats {
+
+    /**
+     * When the written files are forced to disk.
+     */
+    enum Fsync {
+        // left to the operating system
+        NONE,
+        // each file as soon as it has been written
+        FILE,
+        // all files written by a run at its end, in one go
+        END;
+
+        static Fsync forName(String name) {
+            switch (name) {
+                case "none": return NONE;
+                case "file": return FILE;
+                case "end": return END;
+                default: throw new IllegalArgumentException("Unknown fsync mode \"" + name + "\", expected one of: none, file, end");
+            }
+        }
+    }
+
+    static final OutputFormats OWL_ONLY = new OutputFormats(EnumSet.noneOf(TripleFormat.class), null);
+
+    private final Set<TripleFormat> tripleFormats;
+    private final TripleFormat catalogFormat;
+    private final boolean mergedProperties;
+    private final boolean searchIndex;
+    private final boolean entityDirectory;
+    private final boolean hierarchy;
+    private final Fsync fsync;
+    private final boolean verify;
+
+    /**
+     * @param tripleFormats the formats written in addition to OWL
+     * @param catalogFormat the format the catalog points at, null for the OWL files
+     */
+    OutputFormats(Set<TripleFormat> tripleFormats, TripleFormat catalogFormat) {
+        this(tripleFormats, catalogFormat, false, false, false, false, Fsync.NONE, false);
+    }
+
+    private OutputFormats(Set<TripleFormat> tripleFormats, TripleFormat catalogFormat, boolean mergedProperties, boolean searchIndex, boolean entityDirectory, boolean hierarchy, Fsync fsync, boolean verify) {
+        if (catalogFormat != null && !tripleFormats.contains(catalogFormat)) {
+            throw new IllegalArgumentException("The catalog can only point at a format that is written: " + catalogFormat.formatName());
+        }
+        this.tripleFormats = Collections.unmodifiableSet(EnumSet.copyOf(tripleFormats.isEmpty() ? EnumSet.noneOf(TripleFormat.class) : tripleFormats));
+        this.catalogFormat = catalogFormat;
+        this.mergedProperties = mergedProperties;
+        this.searchIndex = searchIndex;
+        this.entityDirectory = entityDirectory;
+        this.hierarchy = hierarchy;
+        this.fsync = fsync;
+        this.verify = verify;
+    }
+
+    /**
+     * @param tripleFormats a comma separated list of format names, may be empty
+     * @param catalogFormat a format name, {@code owl} for the OWL files
+     */
+    static OutputFormats forNames(String tripleFormats, String catalogFormat) {
+        return new OutputFormats(TripleFormat.forNames(tripleFormats), catalogFormat.equals("owl") ? null : TripleFormat.forName(catalogFormat));
+    }
+
+    /**
+     * @param mergedProperties true to write the three definitions of a property vocabulary ({@code <name>.xml},
+     *                         {@code datatype.xml} and {@code object.xml}) into one ontology, see {@link PropertyMerger}
+     * @return these formats with the given property layout
+     */
+    OutputFormats mergeProperties(boolean mergedProperties) {
+        return new OutputFormats(tripleFormats, catalogFormat, mergedProperties, searchIndex, entityDirectory, hierarchy, fsync, verify);
+    }
+
+    boolean mergedProperties() {
+        return mergedProperties;
+    }
+
+    /**
+     * @param searchIndex true to write a {@link SearchIndex} of the labels and definitions
+     * @return these formats with or without the search index
+     */
+    OutputFormats searchIndex(boolean searchIndex) {
+        return new OutputFormats(tripleFormats, catalogFormat, mergedProperties, searchIndex, entityDirectory, hierarchy, fsync, verify);
+    }
+
+    boolean searchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @param entityDirectory true to write an {@link EntityDirectory} of the entities in the OWL files
+     * @return these formats with or without the entity directory
+     */
+    OutputFormats entityDirectory(boolean entityDirectory) {
+        return new OutputFormats(tripleFormats, catalogFormat, mergedProperties, searchIndex, entityDirectory, hierarchy, fsync, verify);
+    }
+
+    boolean entityDirectory() {
+        return entityDirectory;
+    }
+
+    /**
+     * @param hierarchy true to write a {@link Hierarchy}, the closure of the subclass, subproperty and broader
+     *                  statements
+     * @return these formats with or without the hierarchy
+     */
+    OutputFormats hierarchy(boolean hierarchy) {
+        return new OutputFormats(tripleFormats, catalogFormat, mergedProperties, searchIndex, entityDirectory, hierarchy, fsync, verify);
+    }
+
+    boolean hierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * @param fsync when to force the written files to disk, not part of the fingerprint
+     * @return these formats with the given fsync mode
+     */
+    OutputFormats fsync(Fsync fsync) {
+        return new OutputFormats(tripleFormats, catalogFormat, mergedProperties, searchIndex, entityDirectory, hierarchy, fsync, verify);
+    }
+
+    Fsync fsync() {
+        return fsync;
+    }
+
+    /**
+     * @param verify true to check the written files with an {@link OutputVerifier}, not part of the fingerprint
+     * @return these formats with or without verification
+     */
+    OutputFormats verify(boolean verify) {
+        return new OutputFormats(tripleFormats, catalogFormat, mergedProperties, searchIndex, entityDirectory, hierarchy, fsync, verify);
+    }
+
+    boolean verify() {
+        return verify;
+    }
+
+    Set<TripleFormat> tripleFormats() {
+        return tripleFormats;
+    }
+
+    /**
+     * @param physicalLocation the location of an OWL file
+     * @return the location of the file the catalog points at instead
+     */
+    String catalogLocation(String physicalLocation) {
+        if (catalogFormat == null) {
+            return physicalLocation;
+        }
+        return physicalLocation.substring(0, physicalLocation.length() - ".owl".length()) + catalogFormat.extension();
+    }
+
+    /**
+     * @return part of the manifest fingerprint, so that files are converted again when the formats change. Whether
+     * properties are merged is not part of it: a merged file depends on other input files than the unmerged one of
+     * the same name, so it is converted again anyway, and the files it replaces are removed as leftovers.
+     */
+    String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder("owl");
+        for (TripleFormat format : tripleFormats) {
+            fingerprint.append('+').append(format.formatName());
+        }
+        return fingerprint.toString();
+    }
+}
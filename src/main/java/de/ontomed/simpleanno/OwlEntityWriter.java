@@ -0,0 +1,84 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.util.Map;
+
+/**
+ * Writes entities to an OWL file in the layout of the {@link LineEngine}, for output that is not converted from a
+ * single RDA file (merged property vocabularies, deltas between releases).
+ */
+class OwlEntityWriter implements Closeable {
+
+    /**
+     * Writes the owl:Ontology element.
+     */
+    @FunctionalInterface
+    interface Header {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    private final Writer out;
+
+    /**
+     * Writes the namespace declarations and the header.
+     * @param namespaces prefix to namespace URI, must include the owl namespace
+     * @param header the owl:Ontology element
+     */
+    OwlEntityWriter(File outputFile, Map<String, String> namespaces, String header) throws IOException {
+        this(outputFile, namespaces, out -> out.write(header));
+    }
+
+    /**
+     * Writes the namespace declarations and the header.
+     * @param namespaces prefix to namespace URI, must include the owl namespace
+     * @param header writes the owl:Ontology element
+     */
+    OwlEntityWriter(File outputFile, Map<String, String> namespaces, Header header) throws IOException {
+        out = new AsyncFileWriter(outputFile);
+        try {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rdf:RDF");
+            for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+                out.write("\n    xmlns:" + namespace.getKey() + "=\"" + namespace.getValue() + "\"");
+            }
+            out.write(">\n\n");
+            header.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(out);
+            throw e;
+        }
+    }
+
+    void write(RdaEntity entity) throws IOException {
+        if (entity.type() != null) {
+            out.write("<owl:" + entity.type().element() + " rdf:about=\"" + entity.uri() + "\">\n");
+        } else {
+            out.write("  <rdf:Description rdf:about=\"" + entity.uri() + "\">\n");
+        }
+        for (String line : entity.lines()) {
+            out.write(line);
+            out.write('\n');
+        }
+        out.write(entity.type() != null ? "</owl:" + entity.type().element() + ">\n" : "  </rdf:Description>\n");
+    }
+
+    /**
+     * Writes the end of the file and closes it.
+     */
+    void finish() throws IOException {
+        try {
+            out.write("</rdf:RDF>\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Closes the file without finishing it, e.g. after an error.
+     */
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(out);
+    }
+}
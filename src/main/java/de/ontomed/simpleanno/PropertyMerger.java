@@ -0,0 +1,237 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Merges the three definitions of the properties of a property vocabulary ({@code <name>.xml},
+ * {@code <name>/datatype.xml} and {@code <name>/object.xml}) into a single ontology. Each property becomes one entity
+ * with the URI of its canonical definition (see {@link RDA2OWL#normalizeNameSpace(String)}) and the union of the
+ * annotations of all three definitions. It is an object property if it is defined in {@code object.xml}, a datatype
+ * property if it is only defined in {@code datatype.xml} and keeps the type of {@code <name>.xml} otherwise.
+ * <p>
+ * The files are merged on the (normalized) local names of the properties. {@code <name>.xml} is streamed, the
+ * companions are read ahead only as far as needed to find the definitions of the current property; definitions read
+ * ahead on the way are kept until their property comes up. As the three files list the properties in the same order,
+ * only a few definitions are held in memory. Indexes of the local names of the companions tell which properties are
+ * defined there at all, so a companion is never read to its end looking for a property it does not define.
+ * Properties only defined in a companion follow at the end.
+ */
+class PropertyMerger implements OntologyEntities {
+
+    private static class Companion {
+        private final EntityReader reader;
+        private final ObjectPropertyIndex index;
+        // definitions that have been read ahead, in file order, keyed by local name
+        private final Map<String, RdaEntity> ahead = new LinkedHashMap<>();
+
+        private Companion(EntityReader reader, ObjectPropertyIndex index) {
+            this.reader = reader;
+            this.index = index;
+        }
+
+        /**
+         * @return the definition of the property with the given local name, or null if there is none
+         */
+        private RdaEntity take(String localName, String uri) {
+            if (!index.contains(uri)) {
+                return null;
+            }
+            RdaEntity entity = ahead.remove(localName);
+            if (entity != null) {
+                return entity;
+            }
+            while (reader.hasNext()) {
+                entity = reader.next();
+                String entityName = ObjectPropertyIndex.localName(entity.uri());
+                if (entityName.equals(localName)) {
+                    return entity;
+                }
+                ahead.putIfAbsent(entityName, entity);
+            }
+            return null;
+        }
+
+        /**
+         * @return the next definition that has not been taken yet, or null if there is none
+         */
+        private RdaEntity next() {
+            if (!ahead.isEmpty()) {
+                Iterator<RdaEntity> iterator = ahead.values().iterator();
+                RdaEntity entity = iterator.next();
+                iterator.remove();
+                return entity;
+            }
+            return reader.hasNext() ? reader.next() : null;
+        }
+    }
+
+    private final EntityReader main;
+    private final Companion datatype;
+    private final Companion object;
+    private final Map<String, String> namespaces = new LinkedHashMap<>();
+    private final String sourcePath;
+    private final Interner interner;
+
+    // local names of the properties that have been merged already
+    private final Set<String> merged = new HashSet<>();
+    private RdaEntity next;
+
+    /**
+     * @param interner pools the URIs and namespaces of the entities
+     */
+    PropertyMerger(SourceFile mainFile, SourceFile datatypeFile, SourceFile objectFile, Interner interner, int bufferMaxChars) throws IOException {
+        this(mainFile, datatypeFile, objectFile, interner, bufferMaxChars, new ConversionCounts());
+    }
+
+    /**
+     * @param interner pools the URIs and namespaces of the entities
+     * @param bufferMaxChars the most chars of a header held in memory, see {@link LineEngine#bufferMaxChars(int)}
+     * @param counts counts the lines read from the three files
+     */
+    PropertyMerger(SourceFile mainFile, SourceFile datatypeFile, SourceFile objectFile, Interner interner, int bufferMaxChars, ConversionCounts counts) throws IOException {
+        this.interner = interner;
+        List<EntityReader> opened = new ArrayList<>();
+        try {
+            main = open(mainFile, TYPE.ANNOTATION_PROPERTY, interner, bufferMaxChars, counts, opened);
+            // the index of object.xml works for any property file
+            datatype = new Companion(open(datatypeFile, TYPE.DATATYPE_PROPERTY, interner, bufferMaxChars, counts, opened), ObjectPropertyIndex.build(datatypeFile));
+            object = new Companion(open(objectFile, TYPE.OBJECT_PROPERTY, interner, bufferMaxChars, counts, opened), ObjectPropertyIndex.build(objectFile));
+        } catch (IOException | RuntimeException e) {
+            for (EntityReader reader : opened) {
+                reader.close();
+            }
+            throw e;
+        }
+        sourcePath = mainFile.path();
+        namespaces.putAll(main.namespaces());
+        for (Map.Entry<String, String> namespace : datatype.reader.namespaces().entrySet()) {
+            namespaces.putIfAbsent(namespace.getKey(), namespace.getValue());
+        }
+        for (Map.Entry<String, String> namespace : object.reader.namespaces().entrySet()) {
+            namespaces.putIfAbsent(namespace.getKey(), namespace.getValue());
+        }
+    }
+
+    private static EntityReader open(SourceFile file, TYPE propertyType, Interner interner, int bufferMaxChars, ConversionCounts counts, List<EntityReader> opened) throws IOException {
+        EntityReader reader = new EntityReader(file, PropertyTypes.fixed(propertyType), interner, bufferMaxChars, counts);
+        opened.add(reader);
+        return reader;
+    }
+
+    @Override
+    public String ontologyURI() {
+        return main.ontologyURI();
+    }
+
+    @Override
+    public Map<String, String> namespaces() {
+        return namespaces;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = mergeNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public RdaEntity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        RdaEntity entity = next;
+        next = null;
+        return entity;
+    }
+
+    private RdaEntity mergeNext() {
+        while (main.hasNext()) {
+            RdaEntity entity = main.next();
+            String localName = ObjectPropertyIndex.localName(entity.uri());
+            if (merged.add(localName)) {
+                return merge(entity.uri(), entity, datatype.take(localName, entity.uri()), object.take(localName, entity.uri()));
+            }
+        }
+        // properties that are not defined in <name>.xml
+        RdaEntity entity;
+        while ((entity = datatype.next()) != null) {
+            String localName = ObjectPropertyIndex.localName(entity.uri());
+            if (merged.add(localName)) {
+                return merge(RDA2OWL.normalizeNameSpace(entity.uri()), null, entity, object.take(localName, entity.uri()));
+            }
+        }
+        while ((entity = object.next()) != null) {
+            String localName = ObjectPropertyIndex.localName(entity.uri());
+            if (merged.add(localName)) {
+                return merge(RDA2OWL.normalizeNameSpace(entity.uri()), null, null, entity);
+            }
+        }
+        return null;
+    }
+
+    private RdaEntity merge(String uri, RdaEntity mainEntity, RdaEntity datatypeEntity, RdaEntity objectEntity) {
+        TYPE type;
+        if (objectEntity != null && objectEntity.type() != null) {
+            type = objectEntity.type();
+        } else if (datatypeEntity != null && datatypeEntity.type() != null) {
+            type = datatypeEntity.type();
+        } else {
+            type = mainEntity != null ? mainEntity.type() : null;
+        }
+
+        // the union of the annotations; references to the datatype and object namespaces point at the merged
+        // entities, and the sub property statements relating the definitions to each other become pointless
+        Set<String> lines = new LinkedHashSet<>();
+        String selfReference = "rdf:resource=\"" + uri + "\"";
+        for (RdaEntity entity : new RdaEntity[] {mainEntity, datatypeEntity, objectEntity}) {
+            if (entity == null) {
+                continue;
+            }
+            for (String line : entity.lines()) {
+                String normalized = line.contains("rdf:resource=") ? RDA2OWL.normalizeNameSpace(line) : line;
+                if (!normalized.contains(selfReference)) {
+                    lines.add(normalized);
+                }
+            }
+        }
+        return new RdaEntity(interner.intern(uri), type, new ArrayList<>(lines), main.ontologyURI(), sourcePath);
+    }
+
+    @Override
+    public void close() {
+        main.close();
+        datatype.reader.close();
+        object.reader.close();
+    }
+
+    /**
+     * Writes the merged ontology in the layout of the {@link LineEngine}, with the header of {@code <name>.xml}.
+     * @param bufferMaxChars the most chars of a header held in memory, see {@link LineEngine#bufferMaxChars(int)}
+     * @param counts counts the lines of the three files and the merged entities
+     * @return the ontology URI
+     */
+    static String write(SourceFile mainFile, SourceFile datatypeFile, SourceFile objectFile, File outputFile, Interner interner, int bufferMaxChars, ConversionCounts counts) throws IOException {
+        PropertyMerger merger = new PropertyMerger(mainFile, datatypeFile, objectFile, interner, bufferMaxChars, counts);
+        OwlEntityWriter out = null;
+        try {
+            out = new OwlEntityWriter(outputFile, merger.namespaces(), writer -> EntityReader.writeHeader(mainFile, writer, bufferMaxChars));
+            while (merger.hasNext()) {
+                RdaEntity entity = merger.next();
+                out.write(entity);
+                counts.entity(entity.type());
+            }
+            out.finish();
+            return merger.ontologyURI();
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+            merger.close();
+        }
+    }
+}
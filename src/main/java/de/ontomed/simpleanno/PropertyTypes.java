@@ -0,0 +1,23 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+
+/**
+ * Decides which kind of OWL property an entity that is declared as plain rdf:Property becomes.
+ */
+@FunctionalInterface
+interface PropertyTypes {
+
+    /**
+     * @param entityURI the URI of an entity declared as rdf:Property
+     * @return the type of the OWL property to generate for it
+     */
+    TYPE typeOf(String entityURI);
+
+    /**
+     * @return property types that are the same for all entities of a file
+     */
+    static PropertyTypes fixed(TYPE type) {
+        return entityURI -> type;
+    }
+}
@@ -1,20 +1,19 @@
 package de.ontomed.simpleanno;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.ResponseHandler;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
+import org.apache.commons.io.FileUtils;
 
 import java.io.*;
-import java.nio.file.Path;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -25,24 +24,25 @@ import java.util.zip.ZipFile;
  */
 public class RDA2OWL {
 
-    private static class EntityDescription {
-        private TYPE type;
-        HashSet<String> lines;
-    }
-
     private static class ImportCatalogEntry {
         private String uri;
         private String physicalLocation;
 
     }
 
-    private static LinkedList<ImportCatalogEntry> importCatalogEntries = new LinkedList<>();
+    // keyed by physical location, so that the main ontology and the catalog are written in the same order no matter
+    // in which order (or on how many threads) the files have been converted
+    private final ConcurrentSkipListMap<String, ImportCatalogEntry> importCatalogEntries = new ConcurrentSkipListMap<>();
 
-    private static final String XMLNS_PREFIX = "xmlns:";
+    static final String NS_OWL = "http://www.w3.org/2002/07/owl#";
 
-    private static final String NS_OWL = "http://www.w3.org/2002/07/owl#";
+    // imported by the main ontology, but not part of the release and therefore not in the catalog
+    static final String DC_ELEMENTS_ONTOLOGY = "http://purl.org/NET/dc_owl2dl/elements";
 
-    private enum TYPE {
+    // the number of verification problems printed, all of them are counted
+    private static final int MAX_REPORTED_PROBLEMS = 50;
+
+    public enum TYPE {
         CLASS("Class"),
         INDIVIDUAL("Individual"),
         OBJECT_PROPERTY("ObjectProperty"),
@@ -52,19 +52,194 @@ public class RDA2OWL {
         private String element;
         TYPE(String element) {this.element = element;}
         public String element() {return element;}
+
+        /**
+         * Maps the object of an rdf:type statement to the OWL entity type we generate for it.
+         * @param typeURI the rdf:type resource, e.g. {@code http://www.w3.org/2002/07/owl#Class}
+         * @param propertyType the type to use for plain rdf:Property entities
+         * @return the entity type or null if the rdf:type is not one we know how to handle
+         */
+        static TYPE forTypeURI(String typeURI, TYPE propertyType) {
+            String typeName = typeURI.substring(typeURI.lastIndexOf('#') + 1);
+            switch (typeName.toLowerCase()) {
+                case "class": return CLASS;
+                case "individual": return INDIVIDUAL;
+                case "objectproperty": return OBJECT_PROPERTY;
+                case "property": return propertyType;
+                default: return null;
+            }
+        }
+    }
+
+    // bump whenever a change of the converter changes its output, so that incremental runs do not reuse stale files
+    static final String CONVERTER_VERSION = "2";
+
+    // the state of a single conversion run, several runs may be in progress at the same time
+    private final ConversionEngine engine;
+    // the most chars held back per file when reading entities, see LineEngine#bufferMaxChars(int)
+    private final int bufferMaxChars;
+    private final OutputFormats outputFormats;
+    private final RunMetrics metrics;
+    // shared with the conversions of the other releases of a batch
+    private final Interner interner;
+    // null unless a search index is written
+    private final SearchIndexBuilder searchIndex;
+    // null unless an entity directory is written
+    private final EntityDirectoryBuilder entityDirectory;
+    // null unless a hierarchy is written
+    private final HierarchyBuilder hierarchy;
+    // null unless the written files are verified
+    private final OutputVerifier verifier;
+
+    // the manifest of the previous run (used to skip unchanged files) and the one of the current run
+    private final BuildManifest previousManifest;
+    private final BuildManifest manifest;
+    private final AtomicInteger reusedFiles = new AtomicInteger();
+    private final AtomicLong inputBytes = new AtomicLong();
+    // the files to force to disk at the end of the run (with --fsync=end)
+    private final Queue<File> unsyncedFiles = new ConcurrentLinkedQueue<>();
+
+    private RDA2OWL(ConversionEngine engine, OutputFormats outputFormats, RunMetrics metrics, Interner interner, File owlDestFolder, boolean full) {
+        this.engine = engine;
+        // the files read line by line besides the engine (merged properties, search index) hold back as much as it does
+        this.bufferMaxChars = engine instanceof LineEngine ? ((LineEngine) engine).bufferMaxChars() : LineEngine.bufferMaxChars(LineEngine.DEFAULT_BUFFER_MAX_MB);
+        this.outputFormats = outputFormats;
+        this.metrics = metrics;
+        this.interner = interner;
+        this.searchIndex = outputFormats.searchIndex() ? new SearchIndexBuilder() : null;
+        this.entityDirectory = outputFormats.entityDirectory() ? new EntityDirectoryBuilder() : null;
+        this.hierarchy = outputFormats.hierarchy() ? new HierarchyBuilder(interner) : null;
+        this.verifier = outputFormats.verify() ? new OutputVerifier(owlDestFolder, Collections.singleton(DC_ELEMENTS_ONTOLOGY)) : null;
+
+        String fingerprint = CONVERTER_VERSION + "/" + engine.name() + "/" + outputFormats.fingerprint();
+        manifest = new BuildManifest(fingerprint);
+        previousManifest = full ? new BuildManifest(fingerprint) : BuildManifest.load(owlDestFolder, fingerprint);
     }
 
-    private static final Pattern entityDefinitionStartPattern = Pattern.compile("\\<rdf:Description rdf:about=\"(.+?)\"\\>");
-    private static final Pattern entityDefinitionEndPattern = Pattern.compile("\\</rdf:Description\\>");
+    private static final String USAGE = "Usage: java -cp <classpath> de.ontomed.simpleanno.RDA2OWL [options] [output folder]\n" +
+            "\n" +
+            "Conversion:\n" +
+            "  --threads=N                 convert files on N worker threads (0 = one per processor, default 1)\n" +
+            "  --engine=line|stax|mmap     the conversion engine (default line)\n" +
+            "  --buffer-max-mb=N           the most memory the line engine holds back per entity or header (default 16)\n" +
+            "  --no-extract                read the RDA files straight from the release zip\n" +
+            "  --full                      convert all files instead of keeping the unchanged ones of the last run\n" +
+            "                              into the same output folder. The default output folder is per release,\n" +
+            "                              give a fixed output folder to keep files unchanged between releases\n" +
+            "  --pipeline                  convert the release while it is being downloaded\n" +
+            "  --formats=nt,nt.gz,bin      also write load optimized files next to each OWL file\n" +
+            "  --catalog-format=owl|nt|nt.gz|bin  the files the catalog points at (default owl)\n" +
+            "  --merge-properties          write each property vocabulary as a single ontology\n" +
+            "  --search-index              also write the search index rda2owl-search.idx\n" +
+            "  --entity-directory          also write the entity directory rda2owl-entities.idx\n" +
+            "  --hierarchy                 also write the hierarchy rda2owl-hierarchy.idx\n" +
+            "  --fsync=none|file|end       when the written files are forced to disk (default none)\n" +
+            "  --verify                    check the written files and the catalog\n" +
+            "  --progress                  show the conversion progress\n" +
+            "  --report=FILE               where to write the run report (default rda2owl-report.json in the output folder)\n" +
+            "\n" +
+            "Release:\n" +
+            "  --version=X                 convert release X instead of the latest one\n" +
+            "  --offline                   never contact GitHub (needs --version=X of a cached release, or --zip=FILE)\n" +
+            "  --zip=FILE                  convert a local release zip\n" +
+            "  --base-url=URL              the GitHub repository the releases are downloaded from\n" +
+            "  --cache-dir=DIR             the download cache (default <tmp>/rda2owl)\n" +
+            "  --cache-max-mb=N            the size budget of the download cache (default 1024)\n" +
+            "\n" +
+            "Modes:\n" +
+            "  --batch=A,B,...             convert several releases (versions, zips or extracted releases) in one run\n" +
+            "  --intern-max=N              the most strings pooled across the releases of a batch (default 1048576)\n" +
+            "  --diff=OLD,NEW              write the entities added, changed and removed between two releases\n" +
+            "  --daemon                    poll for new releases and serve the current one over HTTP\n" +
+            "  --poll-minutes=N, --bind=HOST, --port=N, --cache-mb=N  the polling interval (default 60), address\n" +
+            "                              (default localhost:8080) and memory cache (default 64) of the daemon\n" +
+            "  --help                      print this text\n";
+
+    // the names of all options, anything else is rejected with the usage text
+    private static final List<String> OPTIONS = Arrays.asList("threads", "engine", "buffer-max-mb", "no-extract", "full",
+            "pipeline", "formats", "catalog-format", "merge-properties", "search-index", "entity-directory", "hierarchy",
+            "fsync", "verify", "progress", "report", "version", "offline", "zip", "base-url", "cache-dir", "cache-max-mb",
+            "batch", "intern-max", "diff", "daemon", "poll-minutes", "bind", "port", "cache-mb", "help");
 
-    private static final Pattern entityTypePattern = Pattern.compile("\\<rdf:type rdf:resource=\"(.+?)\"\\s*\\/\\>");
+    /**
+     * The options shared by all modes of a run, parsed from the command line.
+     */
+    private static final class Options {
+        private final CommandLine commandLine;
+        private final int bufferMaxMb;
+        private final ConversionEngine engine;
+        private final OutputFormats outputFormats;
+        // number of conversion workers, 0 means one per available processor
+        private final int workers;
+        private final int cacheMaxMb;
+        private final int internMax;
+        private final int port;
+        private final int pollMinutes;
+        private final int cacheMb;
+        // downloads and extracted releases are kept in a cache folder that may be shared by concurrent runs
+        private final File rootFolder;
+        // null unless an output folder has been given (and could be created)
+        private File userOwlDestFolder;
+
+        /**
+         * @throws IllegalArgumentException if an option is unknown or has an invalid value
+         */
+        private Options(CommandLine commandLine) {
+            commandLine.requireKnown(OPTIONS);
+            this.commandLine = commandLine;
+            bufferMaxMb = commandLine.getInt("buffer-max-mb", LineEngine.DEFAULT_BUFFER_MAX_MB);
+            engine = ConversionEngine.forName(commandLine.get("engine", "line"), bufferMaxMb);
+            // load optimized formats written next to the OWL files, and which files the catalog points at
+            outputFormats = OutputFormats.forNames(commandLine.get("formats", ""), commandLine.get("catalog-format", "owl"))
+                    .mergeProperties(commandLine.has("merge-properties"))
+                    .searchIndex(commandLine.has("search-index"))
+                    .entityDirectory(commandLine.has("entity-directory"))
+                    .hierarchy(commandLine.has("hierarchy"))
+                    .fsync(OutputFormats.Fsync.forName(commandLine.get("fsync", "none")))
+                    .verify(commandLine.has("verify"));
+            workers = commandLine.getInt("threads", 1);
+            cacheMaxMb = commandLine.getInt("cache-max-mb", 1024);
+            internMax = commandLine.getInt("intern-max", 1 << 20);
+            port = commandLine.getInt("port", 8080);
+            pollMinutes = commandLine.getInt("poll-minutes", 60);
+            cacheMb = commandLine.getInt("cache-mb", 64);
+            rootFolder = new File(commandLine.get("cache-dir", new File(System.getProperty("java.io.tmpdir"), "rda2owl").getPath()));
+        }
+
+        /**
+         * @return the output folder given on the command line, or the given default
+         */
+        private File owlDestFolder(File defaultFolder) {
+            return userOwlDestFolder == null ? defaultFolder : userOwlDestFolder;
+        }
+
+        private boolean full() {
+            return commandLine.has("full");
+        }
+    }
 
     public static void main(String[] args) {
 
-        File userOwlDestFolder = null;
-        if (args.length != 0) {
-            System.out.printf("Using custom output folder %s\n", args[0]);
-            userOwlDestFolder = new File(args[0]);
+        CommandLine commandLine = new CommandLine(args);
+        if (commandLine.has("help")) {
+            System.out.print(USAGE);
+            return;
+        }
+
+        Options options = null;
+        try {
+            options = new Options(commandLine);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            System.out.println();
+            System.out.print(USAGE);
+            System.exit(1);
+        }
+
+        if (!commandLine.positional().isEmpty()) {
+            String userOwlDestPath = commandLine.positional().get(0);
+            System.out.printf("Using custom output folder %s\n", userOwlDestPath);
+            File userOwlDestFolder = new File(userOwlDestPath);
             if (userOwlDestFolder.exists()) {
                 if (!userOwlDestFolder.isDirectory()) {
                     userOwlDestFolder = userOwlDestFolder.getParentFile();
@@ -75,180 +250,827 @@ public class RDA2OWL {
                     userOwlDestFolder = null;
                 }
             }
+            options.userOwlDestFolder = userOwlDestFolder;
         }
 
-        System.out.println("Checking latest RDA release version...");
+        options.rootFolder.mkdirs();
+        ReleaseCache cache = new ReleaseCache(options.rootFolder, options.cacheMaxMb * (1L << 20));
 
-        // Determine latest RDA version number (request HTML page from
-        // https://github.com/RDARegistry/RDA-Vocabularies/releases/latest, this will redirect to the actual latest
-        // release page. The release number and a link to the file can then be found in the html source).
+        ReleaseDownloader downloader = new ReleaseDownloader(commandLine.get("base-url", ReleaseDownloader.DEFAULT_BASE_URL), options.rootFolder);
 
-        String latestRDAVersion = null;
+        if (commandLine.has("diff")) {
+            runDiff(options);
+        } else if (commandLine.has("batch")) {
+            runBatch(options, cache, downloader);
+        } else if (commandLine.has("daemon")) {
+            runDaemon(options, cache, downloader);
+        } else if (commandLine.has("zip")) {
+            runZip(options);
+        } else {
+            runRelease(options, cache, downloader);
+        }
+    }
 
-        HttpClient httpclient = HttpClients.custom()
-                .setDefaultRequestConfig(RequestConfig.custom()
-                        .setCookieSpec(CookieSpecs.STANDARD).build())
-                .build();
+    /**
+     * @return the metrics of a release conversion, with the options of the run as properties of the report
+     */
+    private static RunMetrics runMetrics(Options options) {
+        CommandLine commandLine = options.commandLine;
+        RunMetrics metrics = new RunMetrics();
+        metrics.put("converterVersion", CONVERTER_VERSION);
+        metrics.put("engine", options.engine.name());
+        metrics.put("bufferMaxMb", options.bufferMaxMb);
+        metrics.put("threads", options.workers);
+        metrics.put("formats", commandLine.get("formats", ""));
+        metrics.put("mergeProperties", options.outputFormats.mergedProperties());
+        metrics.put("searchIndex", options.outputFormats.searchIndex());
+        metrics.put("entityDirectory", options.outputFormats.entityDirectory());
+        metrics.put("hierarchy", options.outputFormats.hierarchy());
+        metrics.put("fsync", options.outputFormats.fsync().name().toLowerCase(Locale.ROOT));
+        metrics.put("verify", options.outputFormats.verify());
+        metrics.put("pipeline", commandLine.has("pipeline"));
+        metrics.put("extract", !commandLine.has("no-extract"));
+        metrics.put("full", options.full());
+        return metrics;
+    }
 
+    /**
+     * Compares two releases instead of converting one, see {@link ReleaseDiff}.
+     */
+    private static void runDiff(Options options) {
+        String[] releases = options.commandLine.get("diff", "").split(",");
+        if (releases.length != 2) {
+            System.out.println("Option --diff expects two release zips (or extracted releases): --diff=OLD,NEW");
+            System.exit(1);
+        }
+        File diffFolder = options.owlDestFolder(new File(options.rootFolder, "diff"));
         try {
-            HttpGet httpget = new HttpGet("http://github.com/RDARegistry/RDA-Vocabularies/releases/latest");
-
-            ResponseHandler<String> responseHandler = new ResponseHandler<String>() {
-
-                @Override
-                public String handleResponse(
-                        final HttpResponse response) throws ClientProtocolException, IOException {
-                    int status = response.getStatusLine().getStatusCode();
-                    if (status >= 200 && status < 300) {
-                        HttpEntity entity = response.getEntity();
-                        return entity != null ? EntityUtils.toString(entity) : null;
-                    } else {
-                        throw new ClientProtocolException("Unexpected response status: " + status);
+            diff(new File(releases[0]), new File(releases[1]), diffFolder);
+        } catch (IOException ex) {
+            System.out.println("Error comparing RDA releases.");
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Converts several releases in one go, see {@link #convertBatch}.
+     */
+    private static void runBatch(Options options, ReleaseCache cache, ReleaseDownloader downloader) {
+        File batchFolder = options.owlDestFolder(new File(options.rootFolder, "batch"));
+        List<ReleaseCache.Lease> leases = new ArrayList<>();
+        List<RdaSource> sources = new ArrayList<>();
+        try {
+            List<BatchRelease> releases = new ArrayList<>();
+            Set<String> labels = new HashSet<>();
+            for (String release : options.commandLine.get("batch", "").split(",")) {
+                if (release.trim().isEmpty()) {
+                    continue;
+                }
+                File releaseFile = new File(release.trim());
+                String label = releaseFile.exists() ? releaseLabel(releaseFile) : release.trim();
+                // both would be written to the same folder, and a version can only be leased once per VM
+                if (!labels.add(label)) {
+                    System.out.printf("RDA release %s is in the batch more than once, converting it once.\n", label);
+                    continue;
+                }
+                RdaSource source;
+                if (releaseFile.exists()) {
+                    // a release zip or an extracted release
+                    source = releaseFile.isDirectory() ? RdaInput.directory(releaseFile).source() : new ZipSource(releaseFile, null);
+                } else {
+                    // a version, taken from the download cache; released versions do not change, so a verified
+                    // cached zip is used without asking the server
+                    ReleaseCache.Lease lease = cache.lease(label, false);
+                    leases.add(lease);
+                    if (lease.exclusive() && !downloader.isCached(label)) {
+                        System.out.printf("Downloading RDA release %s ...\n", label);
+                        downloader.download(label, null, false);
                     }
+                    lease.share();
+                    source = new ZipSource(downloader.zipFile(label), null);
                 }
+                sources.add(source);
 
-            };
-            String responseBody = httpclient.execute(httpget, responseHandler);
+                RunMetrics releaseMetrics = runMetrics(options);
+                releaseMetrics.put("rdaVersion", label);
+                releaseMetrics.put("batch", true);
+                releases.add(new BatchRelease(source, new File(batchFolder, label), releaseMetrics));
+            }
 
-            Pattern versionPattern = Pattern.compile("\\<a href=\"/RDARegistry/RDA-Vocabularies/archive/v(.*?)\\.zip\"");
-            Matcher versionMatcher = versionPattern.matcher(responseBody);
-            if (versionMatcher.find()) {
-                latestRDAVersion = versionMatcher.group(1);
-                System.out.format("Latest RDA release version: %s\n", latestRDAVersion);
-            } else {
-                System.out.println("Could not detect latest RDA release version. Maybe the github page layout has changed. Please contact the developer of this tool.");
-                System.exit(1);
+            System.out.printf("Converting %d RDA releases into %s ...\n", releases.size(), batchFolder.getAbsolutePath());
+            convertBatch(releases, options.engine, options.outputFormats, options.workers, options.full(), options.internMax);
+            for (BatchRelease release : releases) {
+                release.metrics.writeReport(new File(release.owlDestFolder, RunMetrics.REPORT_FILE_NAME));
             }
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println("Error converting RDA releases.");
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        } finally {
+            for (RdaSource source : sources) {
+                try {
+                    source.close();
+                } catch (IOException ignored) {
+                }
+            }
+            for (ReleaseCache.Lease lease : leases) {
+                closeLease(lease);
+            }
+        }
+        System.out.println("Done.");
+    }
 
+    /**
+     * Keeps polling for new releases and serves the converted files, see {@link WatchDaemon}.
+     */
+    private static void runDaemon(Options options, ReleaseCache cache, ReleaseDownloader downloader) {
+        CommandLine commandLine = options.commandLine;
+        File daemonFolder = options.owlDestFolder(new File(options.rootFolder, "daemon"));
+        try {
+            new WatchDaemon(downloader, cache, daemonFolder, options.engine, options.outputFormats, options.workers).start(
+                    new InetSocketAddress(commandLine.get("bind", "localhost"), options.port),
+                    options.pollMinutes, options.cacheMb * (1L << 20));
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println("Error starting daemon.");
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Converts a local release zip without any network access and without touching the download cache.
+     */
+    private static void runZip(Options options) {
+        RunMetrics metrics = startMetrics(options);
+        File localZipFile = new File(options.commandLine.get("zip", ""));
+        String label = releaseLabel(localZipFile);
+        metrics.put("rdaVersion", label);
+        File owlDestFolder = options.owlDestFolder(new File(new File(options.rootFolder, "zip"), label));
+        owlDestFolder.mkdirs();
+        System.out.println("\nStarting conversion...");
+        RdaSource source = null;
+        try {
+            source = new ZipSource(localZipFile, null);
+            convert(source, owlDestFolder, options.engine, options.outputFormats, options.workers, options.full(), metrics);
+        } catch (OutputVerifier.VerificationException ex) {
+            verificationFailed(ex, metrics, options.commandLine, owlDestFolder);
         } catch (IOException ex) {
-            System.out.println("Error retrieving latest RDA release version from github.");
+            System.out.format("Error converting %s\n", localZipFile.getAbsolutePath());
             System.out.println(ex.getMessage());
             System.exit(1);
+        } finally {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException ignored) {
+                }
+            }
         }
+        writeReport(metrics, options.commandLine, owlDestFolder);
+        System.out.printf("Done. Files written to %s", owlDestFolder.getAbsolutePath());
+    }
 
+    /**
+     * @return the metrics of the release converted by this run, showing the progress if requested
+     */
+    private static RunMetrics startMetrics(Options options) {
+        // timings and throughput of the run, written as a JSON report at the end
+        RunMetrics metrics = runMetrics(options);
+        if (options.commandLine.has("progress")) {
+            metrics.showProgress();
+        }
+        return metrics;
+    }
 
-        // download latest release to tmp folder
+    /**
+     * Converts the latest release (or the one given with --version), downloading it if it is not in the download
+     * cache yet.
+     */
+    private static void runRelease(Options options, ReleaseCache cache, ReleaseDownloader downloader) {
+        CommandLine commandLine = options.commandLine;
+        RunMetrics metrics = startMetrics(options);
+        File rootFolder = options.rootFolder;
 
-        // check for previously downloaded file
-        // TODO maybe do an MD5 checksum comparison in order to check it's really the file
+        String latestRDAVersion = releaseVersion(options, downloader, metrics);
 
-        File rootFolder = new File(System.getProperty("java.io.tmpdir"), "rda2owl");
+        // download the release to tmp folder (or check that the previously downloaded file is still current)
 
-        System.out.format("Downloading latest RDA release to %s ...\n", rootFolder.getAbsolutePath());
+        boolean requestedVersion = commandLine.get("version", null) != null;
+        if (!requestedVersion) {
+            System.out.format("Downloading latest RDA release to %s ...\n", rootFolder.getAbsolutePath());
+        } else {
+            System.out.format("Looking for RDA release %s in %s ...\n", latestRDAVersion, rootFolder.getAbsolutePath());
+        }
 
-        File zipFile = new File(rootFolder, "RDA-" + latestRDAVersion + ".zip");
+        File zipFile = downloader.zipFile(latestRDAVersion);
+        File rdaBaseFolder = new File(rootFolder, "RDA-Vocabularies-" + latestRDAVersion);
 
-        if (!zipFile.exists()) {
+        File owlDestFolder = options.owlDestFolder(new File(rdaBaseFolder, "owl"));
 
-            rootFolder.delete();
-            rootFolder.mkdirs();
+        // the default output folder is part of the cached release, so writing to it needs an exclusive lease
+        ReleaseCache.Lease lease = null;
+        try {
+            lease = cache.lease(latestRDAVersion, options.userOwlDestFolder == null);
+        } catch (IOException ex) {
+            System.out.println("Error locking the download cache.");
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
 
-            try {
-                HttpGet httpget = new HttpGet("http://github.com/RDARegistry/RDA-Vocabularies/archive/v" + latestRDAVersion + ".zip");
-                HttpResponse response = httpclient.execute(httpget);
-                HttpEntity entity = response.getEntity();
+        if (lease.exclusive()) {
+            RDA2OWL streamed = download(options, downloader, latestRDAVersion, owlDestFolder, metrics);
+            if (streamed != null) {
+                finishPipeline(options, streamed, zipFile, owlDestFolder, metrics);
+                closeLease(lease);
+                writeReport(metrics, commandLine, owlDestFolder);
+                System.out.printf("Done. Files written to %s", owlDestFolder.getAbsolutePath());
+                return;
+            }
+        } else {
+            // another run is reading the cached release, it must not be replaced under its feet
+            System.out.println("Release is in use by another run, using the cached download.");
+        }
 
-                InputStream in = entity.getContent();
-                FileOutputStream out = new FileOutputStream(zipFile);
-                IOUtils.copy(in, out);
-                IOUtils.closeQuietly(out);
+        // with --no-extract the files are read straight from the zip entries and nothing but the output is written
+        boolean extract = !commandLine.has("no-extract");
 
-                System.out.format("File downloaded to %s\n", zipFile.getAbsolutePath());
-            } catch (IOException ex) {
-                System.out.println("Error downloading file.");
-                System.exit(1);
-            }
+        if (extract && !rdaBaseFolder.exists() && !lease.exclusive()) {
+            // only the run holding the release exclusively may extract it, the others read the zip
+            extract = false;
+        }
 
-            System.out.println("Extracting zip file...");
+        if (extract && !rdaBaseFolder.exists()) {
+            extract(zipFile, rdaBaseFolder, latestRDAVersion, rootFolder, metrics);
+        }
 
+        if (options.userOwlDestFolder != null) {
+            // from here on the cached release is only read
             try {
-                ZipFile zip = new ZipFile(zipFile);
-
-                Enumeration<? extends ZipEntry> entries = zip.entries();
-                while (entries.hasMoreElements()) {
-                    ZipEntry entry = entries.nextElement();
-                    File entryDestination = new File(rootFolder, entry.getName());
-                    if (entry.isDirectory()) {
-                        entryDestination.mkdirs();
-                    } else {
-                        entryDestination.getParentFile().mkdirs();
-                        InputStream in = zip.getInputStream(entry);
-                        OutputStream out = new FileOutputStream(entryDestination);
-                        IOUtils.copy(in, out);
-                        IOUtils.closeQuietly(in);
-                        IOUtils.closeQuietly(out);
-                    }
-                }
+                lease.share();
             } catch (IOException ex) {
-                System.out.println("Error extracting zip file.");
+                System.out.println("Error locking the download cache.");
                 System.out.println(ex.getMessage());
                 System.exit(1);
             }
-        } else {
-            System.out.println("Found already existing file in local file system.");
         }
 
         System.out.println("\nStarting conversion...");
 
-        File rdaBaseFolder = new File(rootFolder, "RDA-Vocabularies-" + latestRDAVersion);
-        File rdfxmlBaseFolder = new File(rdaBaseFolder, "xml");
-
-        File elementsFolder = new File(rdfxmlBaseFolder, "Elements");
-        File termListFolder = new File(rdfxmlBaseFolder, "termList");
+        RdaSource source = null;
+        try {
+            if (extract) {
+                source = new DirectorySource(new File(rdaBaseFolder, "xml"));
+            } else {
+                source = new ZipSource(zipFile, rdaBaseFolder.getName() + "/xml/");
+            }
+        } catch (IOException ex) {
+            System.out.println("Error opening zip file.");
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
 
-        File owlDestFolder = userOwlDestFolder == null ? new File(rdaBaseFolder, "owl") : userOwlDestFolder;
         owlDestFolder.mkdirs();
 
-        Arrays.stream(elementsFolder.listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File file) {
-                return file.isFile() && file.getName().endsWith(".xml");
+        try {
+            // with --full everything is converted, otherwise files whose inputs did not change since the last run are kept
+            convert(source, owlDestFolder, options.engine, options.outputFormats, options.workers, options.full(), metrics);
+        } catch (OutputVerifier.VerificationException ex) {
+            verificationFailed(ex, metrics, commandLine, owlDestFolder);
+        } catch (IOException ex) {
+            System.out.format("Error converting %s\n", source.location());
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        try {
+            source.close();
+        } catch (IOException ignored) {
+        }
+
+        closeLease(lease);
+
+        writeReport(metrics, commandLine, owlDestFolder);
+
+        System.out.printf("Done. Files written to %s", owlDestFolder.getAbsolutePath());
+
+    }
+
+    /**
+     * Determines the release to convert: the one given with --version, or the latest one (request HTML page from
+     * {@code <base url>/releases/latest}, this will redirect to the actual latest release page. The release number
+     * and a link to the file can then be found in the html source). The base url can be changed to test against a
+     * local server.
+     */
+    private static String releaseVersion(Options options, ReleaseDownloader downloader, RunMetrics metrics) {
+        // with --version=X that release is converted instead of the latest one; released versions do not change, so
+        // if it is in the cache already, GitHub is not contacted at all. --offline never contacts it.
+        String requestedVersion = options.commandLine.get("version", null);
+        if (options.commandLine.has("offline") && requestedVersion == null) {
+            System.out.println("Option --offline needs the release to convert: --version=X (from the download cache) or --zip=FILE");
+            System.exit(1);
+        }
+
+        if (requestedVersion != null) {
+            metrics.put("rdaVersion", requestedVersion);
+            return requestedVersion;
+        }
+
+        System.out.println("Checking latest RDA release version...");
+
+        String latestRDAVersion = null;
+        try {
+            RunMetrics.Stage probe = metrics.start("version-probe");
+            latestRDAVersion = downloader.latestVersion();
+            probe.end(downloader.bytesTransferred());
+            if (latestRDAVersion != null) {
+                System.out.format("Latest RDA release version: %s\n", latestRDAVersion);
+            } else {
+                System.out.println("Could not detect latest RDA release version. Maybe the github page layout has changed. Please contact the developer of this tool.");
+                System.exit(1);
             }
-        })).forEach(file -> {
-            // the RDA RDF files obey a certain structure, on which we rely when processing the files:
-            // - If a file named <name>.xml is accompanied by a folder named <name>, then the file contains only property definitions.
-            //   The folder then contains two additional files, named datatype.xml and object.xml. All three files define almost the same properties redunandtly (but in different namespaces).
-            //   All properties have the type rdf:property. The properties defined in object.xml and datatype.xml are subproperties of the corresponding properties defined in <name>.xml.
-            //   Only "real" datatype properties (whose range is not a class) do not have a corresponding property in object.xml.
-            //   It is not possible to maintain this structure in OWL obviously, because datatype properties cannot be subproperties of object properties and vice versa.
-            //   What we do instead is go through all properties in datatype.xml and, for each property, check for the definition of  an equally named property in object.xml.
-            //   If such property exists, then we define an object property in our OWL ontology. Otherwise, we add it as a datatype property.
-            //   <name>.xml contains additional annotations (labels, definitions, etc.). We add all these annotations as well.
-            // - If no accompanying folder is present, then the file only contains class or property (rdf:property) definitions. Here we have no clue about whether a property is an
-            //   object or a datatype property. Therefore, we just add them as annotations properties (which in most cases seems to be the intention anyway).
+            metrics.put("rdaVersion", latestRDAVersion);
 
-            String fileName = file.getName();
-            String folderName = file.getName().substring(0, fileName.length() - 4);
-            File folder = new File(elementsFolder, folderName);
+        } catch (IOException ex) {
+            System.out.println("Error retrieving latest RDA release version from github.");
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+        return latestRDAVersion;
+    }
 
-            try {
-                if (folder.exists() && folder.isDirectory()) {
-                    handlePropertyFiles(file, folder, owlDestFolder);
-                } else {
-                    handleSingleFile(file, owlDestFolder);
+    /**
+     * Downloads the release into the download cache unless it is there already. With --pipeline a release that is not
+     * in the cache yet is converted while it is being downloaded.
+     * @return the files converted while downloading, to be finished now that the download is complete and verified,
+     * or null if the release has not been converted yet
+     */
+    private static RDA2OWL download(Options options, ReleaseDownloader downloader, String version, File owlDestFolder, RunMetrics metrics) {
+        CommandLine commandLine = options.commandLine;
+        File zipFile = downloader.zipFile(version);
+        File rdaBaseFolder = new File(options.rootFolder, "RDA-Vocabularies-" + version);
+        AtomicReference<RDA2OWL> streamed = new AtomicReference<>();
+        try {
+            long probeBytes = downloader.bytesTransferred();
+            boolean pipeline = commandLine.has("pipeline");
+            RunMetrics.Stage download = metrics.start(pipeline ? "download-and-conversion" : "download");
+            boolean cached = downloader.isCached(version);
+            if (cached) {
+                System.out.println("Found already existing file in local file system.");
+            } else if (commandLine.has("offline")) {
+                System.out.format("RDA release %s is not in the download cache %s and cannot be downloaded offline.\n", version, options.rootFolder.getAbsolutePath());
+                System.exit(1);
+            }
+            long previousModification = zipFile.lastModified();
+            if (pipeline && !cached) {
+                System.out.println("\nStarting conversion while downloading...");
+                owlDestFolder.mkdirs();
+                String xmlPrefix = rdaBaseFolder.getName() + "/xml/";
+                downloader.download(version,
+                        in -> streamed.set(convertStreaming(in, xmlPrefix, owlDestFolder, options.engine, options.outputFormats, options.workers, options.full(), metrics)), false);
+            } else if (!cached || commandLine.get("version", null) == null) {
+                // the zip has been hashed above already
+                downloader.download(version, null, cached);
+            }
+            download.end(downloader.bytesTransferred() - probeBytes);
+            if (zipFile.lastModified() != previousModification) {
+                System.out.format("File downloaded to %s\n", zipFile.getAbsolutePath());
+                // the files extracted from an older download are outdated
+                if (rdaBaseFolder.exists()) {
+                    FileUtils.deleteDirectory(rdaBaseFolder);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
             }
+        } catch (IOException ex) {
+            System.out.println("Error downloading file.");
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+        return streamed.get();
+    }
 
-        });
+    /**
+     * Finishes a release converted while it has been downloaded: the download has passed the length and SHA-256
+     * checks, so the main ontology, the catalog and the manifest can be written now.
+     */
+    private static void finishPipeline(Options options, RDA2OWL streamed, File zipFile, File owlDestFolder, RunMetrics metrics) {
+        try {
+            streamed.finishConversion(owlDestFolder, options.workers);
+        } catch (OutputVerifier.VerificationException ex) {
+            verificationFailed(ex, metrics, options.commandLine, owlDestFolder);
+        } catch (IOException ex) {
+            System.out.format("Error converting %s\n", zipFile.getAbsolutePath());
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Extracts the release zip into the download cache.
+     */
+    private static void extract(File zipFile, File rdaBaseFolder, String version, File rootFolder, RunMetrics metrics) {
+        System.out.println("Extracting zip file...");
 
-        Arrays.stream(termListFolder.listFiles(new FileFilter() {
-            @Override
-            public boolean accept(File file) {
-                return file.isFile() && file.getName().endsWith(".xml");
+        try {
+            RunMetrics.Stage extraction = metrics.start("extraction");
+            long extractedBytes = 0;
+            // extracted next to the cache and renamed when complete, so an interrupted extraction is never used
+            File extractFolder = new File(rootFolder, ".extract-" + version);
+            if (extractFolder.exists()) {
+                FileUtils.deleteDirectory(extractFolder);
+            }
+            ZipFile zip = new ZipFile(zipFile);
+
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File entryDestination = new File(extractFolder, entry.getName());
+                if (entry.isDirectory()) {
+                    entryDestination.mkdirs();
+                } else {
+                    entryDestination.getParentFile().mkdirs();
+                    InputStream in = zip.getInputStream(entry);
+                    OutputStream out = new FileOutputStream(entryDestination);
+                    extractedBytes += IOUtils.copy(in, out);
+                    IOUtils.closeQuietly(in);
+                    IOUtils.closeQuietly(out);
+                }
             }
-        })).forEach(file -> {
+            zip.close();
+            ReleaseDownloader.move(new File(extractFolder, rdaBaseFolder.getName()), rdaBaseFolder);
+            FileUtils.deleteDirectory(extractFolder);
+            extraction.end(extractedBytes);
+        } catch (IOException ex) {
+            System.out.println("Error extracting zip file.");
+            System.out.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void closeLease(ReleaseCache.Lease lease) {
+        try {
+            lease.close();
+        } catch (IOException e) {
+            System.out.println("Error updating the download cache.");
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Ends a run whose output did not pass the verification, the problems have been printed already.
+     */
+    private static void verificationFailed(OutputVerifier.VerificationException ex, RunMetrics metrics, CommandLine commandLine, File owlDestFolder) {
+        System.out.println(ex.getMessage());
+        writeReport(metrics, commandLine, owlDestFolder);
+        System.exit(1);
+    }
+
+    private static void writeReport(RunMetrics metrics, CommandLine commandLine, File owlDestFolder) {
+        // --report=<file> writes the report somewhere else than into the output folder
+        File reportFile = new File(commandLine.get("report", new File(owlDestFolder, RunMetrics.REPORT_FILE_NAME).getPath()));
+        metrics.putStartup();
+        try {
+            metrics.writeReport(reportFile);
+            System.out.format("Run report written to %s\n", reportFile.getAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Error writing run report.");
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Converts all files of the given source and writes the main ontology and the catalog.
+     * @param source the RDA files
+     * @param owlDestFolder the output folder
+     * @param conversionEngine the engine to convert the single files with
+     * @param workers the number of conversion workers, 0 means one per available processor
+     * @param full if true, all files are converted, otherwise files whose inputs did not change are kept
+     * @throws IOException if the source cannot be read or any of its files could not be converted (see
+     * {@link ConversionTask#checkFailures(List)}); the main ontology and the catalog are not written then
+     */
+    static void convert(RdaSource source, File owlDestFolder, ConversionEngine conversionEngine, int workers, boolean full) throws IOException {
+        convert(source, owlDestFolder, conversionEngine, OutputFormats.OWL_ONLY, workers, full);
+    }
+
+    /**
+     * @param outputFormats the formats to write in addition to OWL and the one the catalog points at
+     * @see #convert(RdaSource, File, ConversionEngine, int, boolean)
+     */
+    static void convert(RdaSource source, File owlDestFolder, ConversionEngine conversionEngine, OutputFormats outputFormats, int workers, boolean full) throws IOException {
+        convert(source, owlDestFolder, conversionEngine, outputFormats, workers, full, RunMetrics.disabled());
+    }
+
+    /**
+     * @param metrics records the timings of the conversion
+     * @see #convert(RdaSource, File, ConversionEngine, OutputFormats, int, boolean)
+     */
+    static void convert(RdaSource source, File owlDestFolder, ConversionEngine conversionEngine, OutputFormats outputFormats, int workers, boolean full, RunMetrics metrics) throws IOException {
+        RDA2OWL conversion = new RDA2OWL(conversionEngine, outputFormats, metrics, Interner.NONE, owlDestFolder, full);
+
+        RunMetrics.Stage stage = metrics.start("conversion");
+        List<ConversionTask> tasks = conversion.createConversionTasks(source, owlDestFolder);
+
+        // a release with files that could not be converted is not finished, the main ontology would lack them
+        try {
+            ConversionTask.runAll(tasks, workers);
+        } finally {
+            metrics.stopProgress();
+        }
+        stage.end(conversion.inputBytes.get());
+
+        conversion.finishConversion(owlDestFolder, workers);
+    }
+
+    /**
+     * Converts the files of a release zip while it is being read from the given stream (see {@link ZipStreamPipeline}).
+     * The main ontology, the catalog and the manifest are not written yet: the zip may still turn out to be truncated
+     * or corrupt, so the returned conversion is only finished with {@link #finishConversion} once the whole zip has
+     * been read and verified.
+     * @param in the release zip, e.g. the body of the download response; it is not closed
+     * @param xmlPrefix the entry path of the xml folder including the trailing '/'
+     * @return the conversion to finish
+     * @see #convert(RdaSource, File, ConversionEngine, OutputFormats, int, boolean)
+     */
+    static RDA2OWL convertStreaming(InputStream in, String xmlPrefix, File owlDestFolder, ConversionEngine conversionEngine, OutputFormats outputFormats, int workers, boolean full, RunMetrics metrics) throws IOException {
+        RDA2OWL conversion = new RDA2OWL(conversionEngine, outputFormats, metrics, Interner.NONE, owlDestFolder, full);
+
+        RunMetrics.Stage stage = metrics.start("conversion");
+        try {
+            new ZipStreamPipeline(xmlPrefix, workers, (main, datatypeFile, objectFile) -> conversion.createConversionTask(main, datatypeFile, objectFile, owlDestFolder)).run(in);
+        } finally {
+            metrics.stopProgress();
+        }
+        stage.end(conversion.inputBytes.get());
+
+        return conversion;
+    }
+
+    /**
+     * A release converted as part of a batch, see {@link #convertBatch}.
+     */
+    static class BatchRelease {
+        private final RdaSource source;
+        private final File owlDestFolder;
+        private final RunMetrics metrics;
+
+        /**
+         * @param metrics records the timings of the release's conversion
+         */
+        BatchRelease(RdaSource source, File owlDestFolder, RunMetrics metrics) {
+            this.source = source;
+            this.owlDestFolder = owlDestFolder;
+            this.metrics = metrics;
+        }
+    }
+
+    /**
+     * Converts several releases at the same time, each into its own folder with its own main ontology and catalog.
+     * The files of all releases are converted by the same workers (largest first, whatever release they belong to),
+     * so the number of workers is the budget of the whole batch. The strings kept until the batch ends (entity URIs,
+     * namespaces, catalog locations and ontology URIs) are pooled, the report of each release has the numbers of the
+     * pool.
+     * @param maxInterned the maximum number of pooled strings
+     * @see #convert(RdaSource, File, ConversionEngine, OutputFormats, int, boolean)
+     */
+    static void convertBatch(List<BatchRelease> releases, ConversionEngine conversionEngine, OutputFormats outputFormats, int workers, boolean full, int maxInterned) throws IOException {
+        Interner interner = new Interner(maxInterned);
+
+        List<RDA2OWL> conversions = new ArrayList<>();
+        List<RunMetrics.Stage> stages = new ArrayList<>();
+        List<List<ConversionTask>> releaseTasks = new ArrayList<>();
+        List<ConversionTask> tasks = new ArrayList<>();
+        for (BatchRelease release : releases) {
+            release.owlDestFolder.mkdirs();
+            RDA2OWL conversion = new RDA2OWL(conversionEngine, outputFormats, release.metrics, interner, release.owlDestFolder, full);
+            conversions.add(conversion);
+            stages.add(release.metrics.start("conversion"));
+            releaseTasks.add(conversion.createConversionTasks(release.source, release.owlDestFolder));
+            tasks.addAll(releaseTasks.get(releaseTasks.size() - 1));
+        }
+
+        try {
+            ConversionTask.runAll(tasks, workers);
+        } catch (IOException e) {
+            // the failed files are reported with the release they belong to
+        }
+
+        // a release with files that could not be converted or that does not pass the verification does not keep
+        // the others from being finished
+        List<IOException> errors = new ArrayList<>();
+        for (int i = 0; i < releases.size(); i++) {
+            RDA2OWL conversion = conversions.get(i);
+            stages.get(i).end(conversion.inputBytes.get());
+            // shared by all releases, the numbers are the ones of the whole batch
+            releases.get(i).metrics.putInterner(interner);
             try {
-                handleSingleFile(file, owlDestFolder);
+                ConversionTask.checkFailures(releaseTasks.get(i));
+                conversion.finishConversion(releases.get(i).owlDestFolder, workers);
             } catch (IOException e) {
-                e.printStackTrace();
+                System.out.printf("Error converting %s\n", releases.get(i).owlDestFolder.getAbsolutePath());
+                System.out.println(e.getMessage());
+                errors.add(e);
             }
+        }
+        if (!errors.isEmpty()) {
+            IOException error = new IOException(errors.size() + " of " + releases.size() + " releases could not be converted.");
+            for (IOException e : errors) {
+                error.addSuppressed(e);
+            }
+            throw error;
+        }
+    }
 
-        });
+    /**
+     * Writes the entities that have been added, removed or changed between two releases to the given folder.
+     * @param oldRelease a release zip or an extracted release
+     * @param newRelease a release zip or an extracted release
+     */
+    static void diff(File oldRelease, File newRelease, File diffFolder) throws IOException {
+        System.out.printf("Comparing %s to %s ...\n", oldRelease.getPath(), newRelease.getPath());
+        RdaInput oldInput = oldRelease.isDirectory() ? RdaInput.directory(oldRelease) : RdaInput.zip(oldRelease);
+        try {
+            RdaInput newInput = newRelease.isDirectory() ? RdaInput.directory(newRelease) : RdaInput.zip(newRelease);
+            try {
+                new ReleaseDiff(releaseLabel(oldRelease), releaseLabel(newRelease)).diff(oldInput, newInput, diffFolder);
+            } finally {
+                newInput.close();
+            }
+        } finally {
+            oldInput.close();
+        }
+        System.out.printf("Delta files written to %s\n", diffFolder.getAbsolutePath());
+    }
+
+    /**
+     * @return the version in the name of a release zip or folder, e.g. {@code 2.3.2} for {@code RDA-2.3.2.zip}, or
+     * the name itself
+     */
+    private static String releaseLabel(File release) {
+        Matcher matcher = Pattern.compile("(?:RDA-Vocabularies-|RDA-)?(.+?)(?:\\.zip)?").matcher(release.getName());
+        return matcher.matches() ? matcher.group(1) : release.getName();
+    }
 
+    /**
+     * Writes the main ontology, the catalog and the indexes, forces the files to disk and verifies them.
+     * @param workers the number of files verified at the same time, 0 means one per available processor
+     * @throws IOException if the written files did not pass the verification
+     */
+    void finishConversion(File owlDestFolder, int workers) throws IOException {
+        if (reusedFiles.get() > 0) {
+            System.out.printf("Reused %d unchanged files from the previous run.\n", reusedFiles.get());
+        }
+
+        // remove output files of the previous run that are not part of this release anymore
+        for (String physicalLocation : previousManifest.physicalLocations()) {
+            if (manifest.get(physicalLocation) == null) {
+                File owlFile = new File(owlDestFolder, physicalLocation);
+                owlFile.delete();
+                for (TripleFormat format : TripleFormat.values()) {
+                    format.outputFile(owlFile).delete();
+                }
+            }
+        }
+
+        try {
+            manifest.save(owlDestFolder);
+        } catch (IOException e) {
+            System.out.println("Error writing build manifest.");
+            System.out.println(e.getMessage());
+        }
+
+        writeMainOntologyAndCatalog(owlDestFolder);
+        writeSearchIndex(owlDestFolder);
+        writeEntityDirectory(owlDestFolder);
+        writeHierarchy(owlDestFolder);
+
+        try {
+            for (String fileName : new String[] {BuildManifest.FILE_NAME, "rda-all.owl", "catalog-v001.xml", SearchIndex.FILE_NAME, EntityDirectory.FILE_NAME, Hierarchy.FILE_NAME}) {
+                File file = new File(owlDestFolder, fileName);
+                if (file.isFile()) {
+                    written(file);
+                }
+            }
+            if (!unsyncedFiles.isEmpty()) {
+                RunMetrics.Stage stage = metrics.start("fsync");
+                long bytes = 0;
+                for (File file : unsyncedFiles) {
+                    fsync(file);
+                    bytes += file.length();
+                }
+                unsyncedFiles.clear();
+                stage.end(bytes);
+            }
+        } catch (IOException e) {
+            System.out.println("Error forcing the output files to disk.");
+            System.out.println(e.getMessage());
+        }
+
+        if (verifier != null) {
+            verify(owlDestFolder, workers);
+        }
+    }
+
+    private void verify(File owlDestFolder, int workers) throws IOException {
+        System.out.format("Verifying main ontology and catalog in %s\n", owlDestFolder.getAbsolutePath());
+        RunMetrics.Stage stage = metrics.start("verify");
+        List<OutputVerifier.Problem> problems = verifier.verify(workers);
+        stage.end(new File(owlDestFolder, OutputVerifier.MAIN_ONTOLOGY).length() + new File(owlDestFolder, OutputVerifier.CATALOG).length());
+        metrics.put("verifyProblems", problems.size());
+
+        if (!problems.isEmpty()) {
+            System.out.format("Found %d problems in the output files:\n", problems.size());
+            for (int i = 0; i < problems.size() && i < MAX_REPORTED_PROBLEMS; i++) {
+                System.out.println(problems.get(i));
+            }
+            if (problems.size() > MAX_REPORTED_PROBLEMS) {
+                System.out.format("... and %d more\n", problems.size() - MAX_REPORTED_PROBLEMS);
+            }
+            throw new OutputVerifier.VerificationException(String.format("The output files in %s did not pass the verification (%d problems).", owlDestFolder.getAbsolutePath(), problems.size()));
+        }
+    }
+
+    /**
+     * Forces a file written by this run to disk now or at the end of the run, depending on the fsync mode.
+     */
+    private void written(File file) throws IOException {
+        switch (outputFormats.fsync()) {
+            case FILE:
+                fsync(file);
+                break;
+            case END:
+                unsyncedFiles.add(file);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void fsync(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeSearchIndex(File owlDestFolder) {
+        File indexFile = new File(owlDestFolder, SearchIndex.FILE_NAME);
+        if (searchIndex == null) {
+            // an index of a previous run would not match the files anymore
+            indexFile.delete();
+            return;
+        }
+        System.out.format("Writing search index %s\n", indexFile.getAbsolutePath());
+        RunMetrics.Stage stage = metrics.start("search-index");
+        try {
+            searchIndex.write(indexFile);
+        } catch (IOException e) {
+            System.out.println("Error writing search index.");
+            System.out.println(e.getMessage());
+        }
+        stage.end(indexFile.length());
+    }
+
+    private void writeEntityDirectory(File owlDestFolder) {
+        File directoryFile = new File(owlDestFolder, EntityDirectory.FILE_NAME);
+        if (entityDirectory == null) {
+            // the offsets of a previous run would not match the files anymore
+            directoryFile.delete();
+            return;
+        }
+        System.out.format("Writing entity directory %s\n", directoryFile.getAbsolutePath());
+        RunMetrics.Stage stage = metrics.start("entity-directory");
+        try {
+            entityDirectory.write(directoryFile);
+        } catch (IOException e) {
+            System.out.println("Error writing entity directory.");
+            System.out.println(e.getMessage());
+        }
+        stage.end(directoryFile.length());
+    }
+
+    private void writeHierarchy(File owlDestFolder) {
+        File hierarchyFile = new File(owlDestFolder, Hierarchy.FILE_NAME);
+        if (hierarchy == null) {
+            // a hierarchy of a previous run would not match the files anymore
+            hierarchyFile.delete();
+            return;
+        }
+        System.out.format("Writing hierarchy %s\n", hierarchyFile.getAbsolutePath());
+        RunMetrics.Stage stage = metrics.start("hierarchy");
+        try {
+            hierarchy.write(hierarchyFile);
+        } catch (IOException e) {
+            System.out.println("Error writing hierarchy.");
+            System.out.println(e.getMessage());
+        }
+        stage.end(hierarchyFile.length());
+    }
+
+    private void writeMainOntologyAndCatalog(File owlDestFolder) {
         // generate main ontology file (which imports all the others)
 
+        RunMetrics.Stage stage = metrics.start("main-ontology-and-catalog");
         try {
             File mainOntologyFile = new File(owlDestFolder, "rda-all.owl");
             FileWriter out = new FileWriter(mainOntologyFile);
@@ -276,10 +1098,15 @@ public class RDA2OWL {
             Pattern nsPrefixPattern = Pattern.compile("http://rdaregistry.info/.+?/(.*?)/*$");
 
             // streams and lambdas would be a PITA here because of exception handling and FileWriter required to be final
-            for (ImportCatalogEntry entry : importCatalogEntries) {
+            // an ontology URI shared by several files is declared once, a repeated attribute is not well-formed
+            Set<String> nsPrefixes = new HashSet<>();
+            for (ImportCatalogEntry entry : importCatalogEntries.values()) {
                 Matcher nsPrefixMatcher = nsPrefixPattern.matcher(entry.uri);
                 nsPrefixMatcher.find();
-                out.write("\n     xmlns:" + nsPrefixMatcher.group(1).replace('/', '_') + "=\"" + (entry.uri.endsWith("/") ? entry.uri : entry.uri + "/") + "\"");
+                String nsPrefix = nsPrefixMatcher.group(1).replace('/', '_');
+                if (nsPrefixes.add(nsPrefix)) {
+                    out.write("\n     xmlns:" + nsPrefix + "=\"" + (entry.uri.endsWith("/") ? entry.uri : entry.uri + "/") + "\"");
+                }
             }
 
             // close the rdf:RDF tag
@@ -287,9 +1114,9 @@ public class RDA2OWL {
 
             out.write("    <owl:Ontology rdf:about=\"http://simple-anno.de/ontologies/mdo/rda-all\">\n");
 
-            out.write("      <owl:imports rdf:resource=\"http://purl.org/NET/dc_owl2dl/elements\"/>\n");
+            out.write("      <owl:imports rdf:resource=\"" + DC_ELEMENTS_ONTOLOGY + "\"/>\n");
 
-            for (ImportCatalogEntry entry : importCatalogEntries) {
+            for (ImportCatalogEntry entry : importCatalogEntries.values()) {
                 out.write("      <owl:imports rdf:resource=\"" + entry.uri + "\"/>\n");
             }
 
@@ -312,280 +1139,223 @@ public class RDA2OWL {
 
             out.write("    <uri id=\"User Entered Import Resolution\" name=\"http://simple-anno.de/ontologies/mdo/rda-all\" uri=\"rda-all.owl\"/>");
 
-            for (ImportCatalogEntry entry : importCatalogEntries) {
-                out.write("    <uri id=\"User Entered Import Resolution\" name=\"" + entry.uri + "\" uri=\"" + entry.physicalLocation + "\"/>\n");
+            for (ImportCatalogEntry entry : importCatalogEntries.values()) {
+                out.write("    <uri id=\"User Entered Import Resolution\" name=\"" + entry.uri + "\" uri=\"" + outputFormats.catalogLocation(entry.physicalLocation) + "\"/>\n");
             }
 
             out.write("</catalog>\n");
 
             IOUtils.closeQuietly(out);
+
+            stage.end(mainOntologyFile.length() + catalogFile.length());
         } catch (IOException e) {
             System.out.println("Error writing main ontology file.");
             System.out.println(e.getMessage());
         }
-
-        System.out.printf("Done. Files written to %s", owlDestFolder.getAbsolutePath());
-
-    }
-
-    private static void handlePropertyFiles(File mainFile, File folder, File outputRootFolder) throws IOException {
-//        HashMap<String, HashSet<String>> annotationProperties = new HashMap<>();
-//        HashMap<String, HashSet<String>> objectProperties = new HashMap<>();
-//        HashMap<String, HashSet<String>> datatypeProperties = new HashMap<>();
-
-        handleSingleFile(mainFile, outputRootFolder);
-        handleSingleFile(new File(folder, "datatype.xml"), outputRootFolder);
-        handleSingleFile(new File(folder, "object.xml"), outputRootFolder);
     }
 
-    private static void handleSingleFile(File inputFile, File outputRootFolder) throws IOException {
-
-//        System.out.format("\nInput file: %s\n", inputFile.getAbsolutePath());
-        File outputFile = getOutputFile(inputFile, outputRootFolder);
-
-        ImportCatalogEntry importCatalogEntry = new ImportCatalogEntry();
-        importCatalogEntry.physicalLocation = outputRootFolder.toPath().relativize(outputFile.toPath()).toString();
-        importCatalogEntries.add(importCatalogEntry);
-
-        BufferedReader in = new BufferedReader(new FileReader(inputFile));
-
-        FileWriter out = new FileWriter(outputFile);
-
-//        HashMap<String, HashSet<String>> entities = new HashMap<>();
-//        collectEntities(in, entities);
-
-        String fileName = inputFile.getName();
-        TYPE propertyTypeHint;
-        switch (fileName) {
-            case "datatype.xml": propertyTypeHint = TYPE.DATATYPE_PROPERTY; break;
-            case "object.xml": propertyTypeHint = TYPE.OBJECT_PROPERTY; break;
-            default: propertyTypeHint = TYPE.ANNOTATION_PROPERTY; break;
-        }
+    private List<ConversionTask> createConversionTasks(RdaSource source, File owlDestFolder) throws IOException {
+        List<ConversionTask> tasks = new ArrayList<>();
 
+        for (SourceFile[] files : ReleaseLayout.conversions(source)) {
+            // the RDA RDF files obey a certain structure, on which we rely when processing the files:
+            // - If a file named <name>.xml is accompanied by a folder named <name>, then the file contains only property definitions.
+            //   The folder then contains two additional files, named datatype.xml and object.xml. All three files define almost the same properties redunandtly (but in different namespaces).
+            //   All properties have the type rdf:property. The properties defined in object.xml and datatype.xml are subproperties of the corresponding properties defined in <name>.xml.
+            //   Only "real" datatype properties (whose range is not a class) do not have a corresponding property in object.xml.
+            //   It is not possible to maintain this structure in OWL obviously, because datatype properties cannot be subproperties of object properties and vice versa.
+            //   What we do instead is go through all properties in datatype.xml and, for each property, check for the definition of  an equally named property in object.xml.
+            //   If such property exists, then we define an object property in our OWL ontology. Otherwise, we add it as a datatype property.
+            //   <name>.xml contains additional annotations (labels, definitions, etc.). We add all these annotations as well.
+            // - If no accompanying folder is present, then the file only contains class or property (rdf:property) definitions. Here we have no clue about whether a property is an
+            //   object or a datatype property. Therefore, we just add them as annotations properties (which in most cases seems to be the intention anyway).
 
-        handleNamespaces(in, out);
+            //   (see ReleaseLayout, which the conversion while downloading follows as well)
 
-        if (inputFile.getParentFile().getName().equals("termList")) {
-            importCatalogEntry.uri = handleSkosOntologyHeader(in, out);
-        } else {
-            importCatalogEntry.uri = handleOntologyHeader(in, out);
+            tasks.add(createConversionTask(files[0], files[1], files[2], owlDestFolder));
         }
 
-
-        while  (handleNextEntity(in, out, propertyTypeHint));
-
-        IOUtils.closeQuietly(in);
-        IOUtils.closeQuietly(out);
+        return tasks;
     }
 
-    private static void handleNamespaces(BufferedReader in, Writer out) throws IOException {
-        LinkedList<String> lines = new LinkedList<>();
-        String line = null;
-
-        // fast forward to xmlns:
-        while (!(line = in.readLine()).trim().startsWith("xmlns:")) {
-            out.write(line);
-            out.write("\n");
-        }
-
-        boolean containsOwlNS = false;
-
-        while (line.trim().startsWith("xmlns:")) {
-            lines.add(line);
-            if (line.contains(NS_OWL)) {
-                containsOwlNS = true;
-            }
-            line = in.readLine();
+    private ConversionTask createConversionTask(SourceFile file, SourceFile datatypeFile, SourceFile objectFile, File owlDestFolder) {
+        if (datatypeFile != null && objectFile != null) {
+            long size = file.size() + datatypeFile.size() + objectFile.size();
+            expect(size);
+            return new ConversionTask(file.path(), size, () -> handlePropertyFiles(file, datatypeFile, objectFile, owlDestFolder));
         }
+        expect(file.size());
+        return new ConversionTask(file.path(), file.size(), () -> handleSingleFile(file, owlDestFolder));
+    }
 
-        if (!containsOwlNS) {
-            lines.add(lines.size() - 1, "    " + XMLNS_PREFIX + "owl=\"" + NS_OWL + "\"" );
-        }
+    private void expect(long size) {
+        inputBytes.addAndGet(Math.max(size, 0));
+        metrics.expect(size);
+    }
 
-        for (String nsLine : lines) {
-            out.write(nsLine);
-            out.write("\n");
+    private void handlePropertyFiles(SourceFile mainFile, SourceFile datatypeFile, SourceFile objectFile, File outputRootFolder) throws IOException {
+        if (outputFormats.mergedProperties()) {
+            handleOutput(mainFile, Arrays.asList(mainFile, datatypeFile, objectFile), outputRootFolder,
+                    (outputFile, counts) -> PropertyMerger.write(mainFile, datatypeFile, objectFile, outputFile, interner, bufferMaxChars, counts),
+                    () -> new PropertyMerger(mainFile, datatypeFile, objectFile, interner, bufferMaxChars));
+            return;
         }
+        handleSingleFile(mainFile, outputRootFolder, null);
+        // the properties of datatype.xml are classified by looking them up in object.xml
+        handleSingleFile(datatypeFile, outputRootFolder, objectFile);
+        handleSingleFile(objectFile, outputRootFolder, null);
+    }
 
-        out.write(line);
-        out.write("\n");
-
+    private void handleSingleFile(SourceFile inputFile, File outputRootFolder) throws IOException {
+        handleSingleFile(inputFile, outputRootFolder, null);
     }
 
-    // transforms the first rdf:Description to an owl:Ontology declaration
-    private static String handleOntologyHeader(BufferedReader in, Writer out) throws IOException {
-        String line = null;
+    /**
+     * @param objectFile for a datatype.xml file the accompanying object.xml file, null otherwise
+     */
+    private void handleSingleFile(SourceFile inputFile, File outputRootFolder, SourceFile objectFile) throws IOException {
+        // the output of datatype.xml depends on object.xml as well
+        List<SourceFile> inputFiles = objectFile == null ? Collections.singletonList(inputFile) : Arrays.asList(inputFile, objectFile);
+        FilePropertyTypes propertyTypes = new FilePropertyTypes(inputFile, objectFile);
+        handleOutput(inputFile, inputFiles, outputRootFolder,
+                (outputFile, counts) -> engine.convert(inputFile, outputFile, propertyTypes.get(counts), counts),
+                () -> new EntityReader(inputFile, propertyTypes.get(new ConversionCounts()), interner, bufferMaxChars));
+    }
 
-        String ontologyURI = null;
+    /**
+     * The property types of a single file, built when they are first needed (not at all if the output of the previous
+     * run is reused and nothing reads its entities).
+     */
+    private final class FilePropertyTypes {
+        private final SourceFile inputFile;
+        private final SourceFile objectFile;
+        private PropertyTypes propertyTypes;
+
+        private FilePropertyTypes(SourceFile inputFile, SourceFile objectFile) {
+            this.inputFile = inputFile;
+            this.objectFile = objectFile;
+        }
 
-        while ((line = in.readLine()) != null) {
-            if (ontologyURI == null) {
-                ontologyURI = startOfEntity(line);
-                if (ontologyURI != null) {
-                    line = "<owl:Ontology rdf:about=\"" + ontologyURI + "\">";
-                }
-            }
-            if (isEndOfEntity(line)) {
-                out.write("</owl:Ontology>\n");
-                break;
+        /**
+         * @param counts counts the lines of the object.xml file if it is read
+         */
+        private PropertyTypes get(ConversionCounts counts) throws IOException {
+            if (propertyTypes == null) {
+                propertyTypes = objectFile == null ? PropertyTypes.fixed(propertyTypeHint(inputFile)) : ObjectPropertyIndex.build(objectFile, counts);
             }
-            out.write(line + "\n");
-
+            return propertyTypes;
         }
+    }
 
-        return ontologyURI;
+    @FunctionalInterface
+    private interface Conversion {
+        /**
+         * @param counts counts the lines read and the entities written
+         * @return the ontology URI
+         */
+        String convert(File outputFile, ConversionCounts counts) throws IOException;
     }
 
-    private static final Pattern SKOS_CONCEPT_SCHEME_START_PATTERN = Pattern.compile("<skos:ConceptScheme rdf:about=\"(.*?)\">");
-    private static final Pattern SKOS_CONCEPT_SCHEME_END_PATTERN = Pattern.compile("</skos:ConceptScheme>");
+    /**
+     * Writes the output of one OWL file (unless the output of the previous run is still up to date) and registers it
+     * for the catalog and the main ontology.
+     * @param inputFile the file the output is named after
+     * @param inputFiles all files the output depends on
+     * @param entities opens the entities of the output
+     */
+    private void handleOutput(SourceFile inputFile, List<SourceFile> inputFiles, File outputRootFolder, Conversion conversion, OntologyEntities.Opener entities) throws IOException {
+        RunMetrics.Stage stage = metrics.startFile(inputFile);
+        File outputFile = getOutputFile(inputFile, outputRootFolder);
 
-    private static String handleSkosOntologyHeader(BufferedReader in, Writer out) throws IOException {
-        String ontologyURI = null;
-        LinkedList<String> lines = new LinkedList<>();
-        String line = null;
+        ImportCatalogEntry importCatalogEntry = new ImportCatalogEntry();
+        importCatalogEntry.physicalLocation = interner.intern(outputRootFolder.toPath().relativize(outputFile.toPath()).toString());
 
-        while ((line = in.readLine()) != null) {
-            lines.add(line);
-            Matcher matcher = SKOS_CONCEPT_SCHEME_START_PATTERN.matcher(line);
-            if (matcher.find()) {
-                ontologyURI = matcher.group(1);
-            } else {
-                matcher = SKOS_CONCEPT_SCHEME_END_PATTERN.matcher(line);
-                if (matcher.find()) {
-                    break;
-                }
+        String inputHash = BuildManifest.sha256(inputFiles.toArray(new SourceFile[0]));
+        BuildManifest.Entry manifestEntry = previousManifest.upToDate(importCatalogEntry.physicalLocation, inputHash, outputFile);
+        for (TripleFormat format : outputFormats.tripleFormats()) {
+            if (!format.outputFile(outputFile).isFile()) {
+                manifestEntry = null;
             }
         }
-
-        lines.addFirst("<owl:Ontology rdf:about=\"" + ontologyURI + "\" />");
-
-        for (String actualLine : lines) {
-            out.write(actualLine + "\n");
-        }
-
-        return ontologyURI;
-    }
-
-    private static boolean handleNextEntity(BufferedReader in, Writer out, TYPE fileSpecificPropertyType) throws IOException {
-        String line = null;
-        LinkedList<String> lines = new LinkedList<>();
-
-        String entityURI = null;
-        TYPE entityType = null;
-
-        while ((line = in.readLine()) != null) {
-
-            if (entityURI == null) {
-                // still fast-forwarding to the start of the next entity
-                entityURI = startOfEntity(line);
-                if (entityURI == null) {
-                    // still no entity start
-                    // just copy the line to the output file
-                    out.write(line + "\n");
-                    continue;
+        boolean reused = manifestEntry != null;
+        ConversionCounts counts = reused ? null : new ConversionCounts();
+        if (reused) {
+            importCatalogEntry.uri = manifestEntry.ontologyURI;
+            reusedFiles.incrementAndGet();
+        } else {
+            importCatalogEntry.uri = interner.intern(conversion.convert(outputFile, counts));
+            if (!outputFormats.tripleFormats().isEmpty()) {
+                // the statements are read back from the OWL file just written, whichever engine has written it
+                TripleSorter triples = new TripleSorter(TripleSorter.DEFAULT_MAX_CHARS);
+                try {
+                    TripleExtractor.extract(outputFile, triples);
+                    for (TripleFormat format : outputFormats.tripleFormats()) {
+                        format.write(triples, format.outputFile(outputFile));
+                        written(format.outputFile(outputFile));
+                    }
+                } finally {
+                    triples.close();
                 }
             }
-
-
-            // we are inside of an entity
-
-            // look for type element
-            Matcher entityTypeMatcher = entityTypePattern.matcher(line);
-            if (entityTypeMatcher.find()) {
-                // this is the line that contains the rdf:type element
-                // we extract the type and create a proper element instead of the rdf:Description element
-                String entityTypeURI = entityTypeMatcher.group(1);
-                String entityTypeName = entityTypeURI.substring(entityTypeURI.lastIndexOf('#') + 1);
-                switch (entityTypeName.toLowerCase()) {
-                    case "class": entityType = TYPE.CLASS; break;
-                    case "individual": entityType = TYPE.INDIVIDUAL; break;
-                    case "objectproperty": entityType = TYPE.OBJECT_PROPERTY; break;
-                    case "property": entityType = fileSpecificPropertyType; break;
-                    default: break;
-                }
-            } else if (isEndOfEntity(line)) {
-                // this is the end, my friend
-
-                lines.add(line);
-
-                if (entityType != null) {
-                    // we need to replace the rdf:Description start and end tags (first and last line) with the concrete owl entity elements
-                    String newStartLine = "<owl:" + entityType.element + " rdf:about=\"" + entityURI + "\">";
-                    lines.removeFirst();
-                    lines.addFirst(newStartLine);
-
-                    String newEndLine = "</owl:" + entityType.element + ">";
-                    lines.removeLast();
-                    lines.add(newEndLine);
-                }
-
-                for (String actualLine : lines) {
-                    out.write(actualLine + "\n");
-                }
-
-                return true;
-
-            } else {
-                // regular line, copy it
-                lines.add(line);
+            written(outputFile);
+            manifestEntry = new BuildManifest.Entry(inputHash, BuildManifest.sha256(outputFile), importCatalogEntry.uri);
+        }
+        if (verifier != null) {
+            if (reused && manifestEntry.verified) {
+                // unchanged since it has passed the verification of an earlier run
+                verifier.addVerified(importCatalogEntry.physicalLocation, manifestEntry.ontologyURI);
+            } else if (verifier.add(importCatalogEntry.physicalLocation)) {
+                // parsed on the worker that has written (or reused) the file, while the other files are converted
+                manifestEntry = manifestEntry.verified();
             }
-
         }
-        // no more entities, bye bye
-        return false;
-
-    }
-
-    private static <M extends Map<String, S>, S extends Set<String>> void collectEntities(BufferedReader in, M map) throws IOException {
-        String line = null;
-        boolean insideEntity = false;
-        HashSet<String> currentEntity = null;
+        manifest.put(importCatalogEntry.physicalLocation, manifestEntry);
 
-        while ((line = in.readLine()) != null) {
+        importCatalogEntries.put(importCatalogEntry.physicalLocation, importCatalogEntry);
 
-            String newEntityURI = startOfEntity(line);
-            if (newEntityURI != null) {
-                currentEntity = new HashSet<>();
-                insideEntity = true;
-                System.out.println(normalizeNameSpace(newEntityURI));
-            } else if (isEndOfEntity(line)) {
-                insideEntity = false;
-                System.out.println(line);
-            } else if (insideEntity) {
-                currentEntity.add(line.trim());
-                System.out.println("    " + line);
-            }
+        if (searchIndex != null) {
+            // the index is written from scratch, so the entities of reused files are read as well
+            searchIndex.add(entities.open());
+        }
+        if (entityDirectory != null) {
+            // the entities are located in the written file, whichever engine (or previous run) has written it
+            entityDirectory.add(outputFile, importCatalogEntry.physicalLocation);
+        }
+        if (hierarchy != null) {
+            hierarchy.add(outputFile);
         }
 
+        metrics.fileDone(stage, inputFiles, outputFile, importCatalogEntry.physicalLocation, counts);
     }
 
-    private static String startOfEntity(String line) {
-        Matcher matcher = entityDefinitionStartPattern.matcher(line);
-        return matcher.find() ? matcher.group(1) : null;
-    }
-
-    private static boolean isEndOfEntity(String line) {
-        return entityDefinitionEndPattern.matcher(line).find();
+    /**
+     * @return the type of the properties declared in the given file (if its companion object.xml is not taken into account)
+     */
+    static TYPE propertyTypeHint(SourceFile inputFile) {
+        switch (inputFile.name()) {
+            case "datatype.xml": return TYPE.DATATYPE_PROPERTY;
+            case "object.xml": return TYPE.OBJECT_PROPERTY;
+            default: return TYPE.ANNOTATION_PROPERTY;
+        }
     }
 
-
     /**
      * Strips the "datatype" or "object" path element from the given namespace URI
      * @param orig a namespace URI
      * @return The same namespace URI without "datatype" or "object" path element
      */
-    private static String normalizeNameSpace(String orig) {
+    static String normalizeNameSpace(String orig) {
         return orig.replaceAll("/datatype/", "/").replaceAll("/object/", "/");
     }
 
     private final static Pattern xmlFileNameBasePattern = Pattern.compile("(\\w*)\\.xml");
 
-    private static File getOutputFile(File inputFile, File outputRootFolder) {
-        String inputFileName = inputFile.getName();
+    private static File getOutputFile(SourceFile inputFile, File outputRootFolder) {
+        String inputFileName = inputFile.name();
 
         Matcher matcher = xmlFileNameBasePattern.matcher(inputFileName);
         if (!matcher.find()) {
-            throw  new IllegalArgumentException("Unexpected file name: " + inputFile.getAbsolutePath());
+            throw  new IllegalArgumentException("Unexpected file name: " + inputFile.path());
         }
 
         String outputFileName = matcher.group(1) + ".owl";
@@ -593,11 +1363,11 @@ public class RDA2OWL {
         File outputFile;
 
         if (inputFileName.equals("datatype.xml") || inputFileName.equals("object.xml")) {
-            String inputSubFolderName = inputFile.getParentFile().getParentFile().getName();
-            String inputFolderName = inputFile.getParentFile().getName(); // should always be "Elements"
+            String inputSubFolderName = inputFile.grandParentName(); // should always be "Elements"
+            String inputFolderName = inputFile.parentName();
             outputFile =new File(new File(new File(outputRootFolder, inputSubFolderName), inputFolderName), outputFileName);
         } else {
-            String inputFolderName = inputFile.getParentFile().getName(); // either "Elements" or "termList"
+            String inputFolderName = inputFile.parentName(); // either "Elements" or "termList"
             outputFile = new File(new File(outputRootFolder, inputFolderName), outputFileName);
         }
 
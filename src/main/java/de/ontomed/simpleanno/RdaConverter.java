@@ -0,0 +1,251 @@
+package de.ontomed.simpleanno;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Converts RDA releases in-process. The converted entities can either be consumed directly (as a lazy stream or
+ * iterator, without writing anything) or written to OWL files, exactly like the command line tool does.
+ *
+ * <pre>
+ * RdaConverter converter = RdaConverter.builder().threads(0).build();
+ * try (RdaInput input = RdaInput.zip(zipFile); Stream&lt;RdaEntity&gt; entities = converter.entities(input)) {
+ *     entities.forEach(store::add);
+ * }
+ * </pre>
+ *
+ * Instances are immutable and can be used from several threads at the same time.
+ */
+public class RdaConverter {
+
+    public static class Builder {
+
+        private String engine = "line";
+        private int bufferMaxMb = LineEngine.DEFAULT_BUFFER_MAX_MB;
+        private int threads = 1;
+        private boolean full;
+        private OutputFormats outputFormats = OutputFormats.OWL_ONLY;
+        private boolean mergeProperties;
+        private boolean searchIndex;
+        private boolean entityDirectory;
+        private boolean hierarchy;
+        private OutputFormats.Fsync fsync = OutputFormats.Fsync.NONE;
+        private boolean verify;
+
+        private Builder() {
+        }
+
+        /**
+         * @param engine the engine used to write OWL files: {@code line} (default), {@code stax} or {@code mmap}
+         * @throws IllegalArgumentException if there is no engine with that name
+         */
+        public Builder engine(String engine) {
+            ConversionEngine.forName(engine);
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * @param bufferMaxMb the most memory the {@code line} engine uses to hold back the lines of an entity or header,
+         *                    per file (default 16); larger ones are held back in a temporary file. Also applies to
+         *                    the headers skipped by {@link #entities}
+         * @throws IllegalArgumentException if the size is not positive
+         */
+        public Builder bufferMaxMb(int bufferMaxMb) {
+            LineEngine.bufferMaxChars(bufferMaxMb);
+            this.bufferMaxMb = bufferMaxMb;
+            return this;
+        }
+
+        /**
+         * @param threads the number of threads used to write OWL files, 0 means one per available processor
+         */
+        public Builder threads(int threads) {
+            if (threads < 0) {
+                throw new IllegalArgumentException("Number of threads must not be negative: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param full if true, all OWL files are written, otherwise files whose inputs did not change since the last
+         *             conversion into the same folder are kept
+         */
+        public Builder full(boolean full) {
+            this.full = full;
+            return this;
+        }
+
+        /**
+         * @param formats the load optimized formats to write next to the OWL files, any of {@code nt} (sorted
+         *                N-Triples), {@code nt.gz} and {@code bin} (binary triples with a term dictionary)
+         * @param catalogFormat the files the catalog points at: {@code owl} or one of the given formats
+         * @throws IllegalArgumentException if a format is unknown or the catalog format is not written
+         */
+        public Builder formats(Collection<String> formats, String catalogFormat) {
+            this.outputFormats = OutputFormats.forNames(String.join(",", formats), catalogFormat);
+            return this;
+        }
+
+        /**
+         * @param mergeProperties if true, the three definitions of the properties of a property vocabulary are
+         *                        written into a single ontology instead of three
+         */
+        public Builder mergeProperties(boolean mergeProperties) {
+            this.mergeProperties = mergeProperties;
+            return this;
+        }
+
+        /**
+         * @param searchIndex if true, a {@link SearchIndex} of the labels and definitions is written next to the OWL
+         *                    files
+         */
+        public Builder searchIndex(boolean searchIndex) {
+            this.searchIndex = searchIndex;
+            return this;
+        }
+
+        /**
+         * @param entityDirectory if true, an {@link EntityDirectory} telling where each entity is defined is written
+         *                        next to the OWL files
+         */
+        public Builder entityDirectory(boolean entityDirectory) {
+            this.entityDirectory = entityDirectory;
+            return this;
+        }
+
+        /**
+         * @param hierarchy if true, a {@link Hierarchy} (the transitive closure of the subclass, subproperty and
+         *                  broader statements) is written next to the OWL files
+         */
+        public Builder hierarchy(boolean hierarchy) {
+            this.hierarchy = hierarchy;
+            return this;
+        }
+
+        /**
+         * @param fsync when the written files are forced to disk: {@code none} (default, left to the operating
+         *              system), {@code file} (each file when it has been written) or {@code end} (all files once at
+         *              the end of the conversion)
+         * @throws IllegalArgumentException if the mode is unknown
+         */
+        public Builder fsync(String fsync) {
+            this.fsync = OutputFormats.Fsync.forName(fsync);
+            return this;
+        }
+
+        /**
+         * @param verify if true, the written files are checked after the conversion (well-formed, one ontology per
+         *               file, all imports of the main ontology resolved by the catalog); {@link #writeOwlFiles} then
+         *               throws an IOException if they are not
+         */
+        public Builder verify(boolean verify) {
+            this.verify = verify;
+            return this;
+        }
+
+        public RdaConverter build() {
+            return new RdaConverter(this);
+        }
+    }
+
+    private final String engine;
+    private final int bufferMaxMb;
+    private final int threads;
+    private final boolean full;
+    private final OutputFormats outputFormats;
+
+    private RdaConverter(Builder builder) {
+        this.engine = builder.engine;
+        this.bufferMaxMb = builder.bufferMaxMb;
+        this.threads = builder.threads;
+        this.full = builder.full;
+        this.outputFormats = builder.outputFormats.mergeProperties(builder.mergeProperties).searchIndex(builder.searchIndex)
+                .entityDirectory(builder.entityDirectory)
+                .hierarchy(builder.hierarchy)
+                .fsync(builder.fsync)
+                .verify(builder.verify);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Writes the OWL files (and the configured load optimized formats), the main ontology {@code rda-all.owl} and the
+     * catalog {@code catalog-v001.xml} to the given folder.
+     *
+     * @throws IOException if a file could not be converted; all files are tried, the exception names every file that
+     *                     failed and carries one suppressed exception per file. The main ontology and the catalog are
+     *                     not written in that case.
+     */
+    public void writeOwlFiles(RdaInput input, File outputFolder) throws IOException {
+        outputFolder.mkdirs();
+        RDA2OWL.convert(input.source(), outputFolder, ConversionEngine.forName(engine, bufferMaxMb), outputFormats, threads, full);
+    }
+
+    /**
+     * Reads the entities lazily, file by file, in the order of the files of the release. Files are only opened
+     * when their entities are requested, a parallel stream reads several files at the same time. The stream
+     * should be closed if it is not consumed completely.
+     * <p>
+     * I/O errors are thrown as {@link java.io.UncheckedIOException}s.
+     */
+    public Stream<RdaEntity> entities(RdaInput input) throws IOException {
+        Queue<EntityReader> openReaders = new ConcurrentLinkedQueue<>();
+        return StreamSupport.stream(spliterator(input, openReaders), false).onClose(() -> {
+            EntityReader reader;
+            while ((reader = openReaders.poll()) != null) {
+                reader.close();
+            }
+        });
+    }
+
+    /**
+     * @see #entities(RdaInput)
+     */
+    public Iterator<RdaEntity> iterator(RdaInput input) throws IOException {
+        return Spliterators.iterator(spliterator(input, new ConcurrentLinkedQueue<>()));
+    }
+
+    private Spliterator<RdaEntity> spliterator(RdaInput input, Queue<EntityReader> openReaders) throws IOException {
+        RdaSource source = input.source();
+        return new EntitySpliterator(files(source), file -> new EntityReader(file, propertyTypes(source, file), LineEngine.bufferMaxChars(bufferMaxMb)), openReaders);
+    }
+
+    /**
+     * @return the files that are converted, in the same order as by the command line tool
+     */
+    static List<SourceFile> files(RdaSource source) throws IOException {
+        List<SourceFile> files = new ArrayList<>();
+        for (SourceFile[] conversion : ReleaseLayout.conversions(source)) {
+            for (SourceFile file : conversion) {
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    static PropertyTypes propertyTypes(RdaSource source, SourceFile file) throws IOException {
+        if (file.name().equals("datatype.xml")) {
+            SourceFile objectFile = source.find(file.path().substring(0, file.path().length() - "datatype.xml".length()) + "object.xml");
+            if (objectFile != null) {
+                return ObjectPropertyIndex.build(objectFile);
+            }
+        }
+        return PropertyTypes.fixed(RDA2OWL.propertyTypeHint(file));
+    }
+}
@@ -0,0 +1,69 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An entity (class, property or concept) of an RDA file, as it appears in the converted OWL ontology.
+ */
+public final class RdaEntity {
+
+    private final String uri;
+    private final TYPE type;
+    private final List<String> lines;
+    private final String ontologyURI;
+    private final String sourcePath;
+
+    RdaEntity(String uri, TYPE type, List<String> lines, String ontologyURI, String sourcePath) {
+        this.uri = uri;
+        this.type = type;
+        this.lines = Collections.unmodifiableList(lines);
+        this.ontologyURI = ontologyURI;
+        this.sourcePath = sourcePath;
+    }
+
+    /**
+     * @return the URI of the entity (its rdf:about)
+     */
+    public String uri() {
+        return uri;
+    }
+
+    /**
+     * @return the OWL entity type or null if the entity has no rdf:type the converter knows how to handle; such
+     * entities are kept as rdf:Description in the OWL files
+     */
+    public TYPE type() {
+        return type;
+    }
+
+    /**
+     * @return the RDF/XML lines of the entity's annotations and relations (labels, definitions, sub property
+     * statements, ...), i.e. everything between its start and end element except the rdf:type
+     */
+    public List<String> lines() {
+        return lines;
+    }
+
+    /**
+     * @return the URI of the ontology the entity belongs to, may be null
+     */
+    public String ontologyURI() {
+        return ontologyURI;
+    }
+
+    /**
+     * @return the path of the RDA file the entity is defined in, relative to the release's {@code xml} folder,
+     * e.g. {@code Elements/w/datatype.xml}
+     */
+    public String sourcePath() {
+        return sourcePath;
+    }
+
+    @Override
+    public String toString() {
+        return (type == null ? "Description" : type.element()) + " " + uri;
+    }
+}
@@ -0,0 +1,59 @@
+package de.ontomed.simpleanno;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The files of an RDA release, to be converted with a {@link RdaConverter}.
+ */
+public final class RdaInput implements Closeable {
+
+    private final RdaSource source;
+
+    private RdaInput(RdaSource source) {
+        this.source = source;
+    }
+
+    /**
+     * @param folder an extracted release, i.e. the folder containing the {@code xml} folder, or the {@code xml}
+     *               folder itself
+     */
+    public static RdaInput directory(File folder) {
+        File xmlFolder = new File(folder, "xml");
+        return new RdaInput(new DirectorySource(xmlFolder.isDirectory() ? xmlFolder : folder));
+    }
+
+    /**
+     * Reads the files straight from a release zip, without extracting it.
+     * @param zip a release zip as downloaded from GitHub
+     */
+    public static RdaInput zip(File zip) throws IOException {
+        return new RdaInput(new ZipSource(zip, null));
+    }
+
+    /**
+     * Reads a release zip from the given stream and keeps the RDA files in memory. The stream is not closed.
+     * @param in a release zip as downloaded from GitHub
+     */
+    public static RdaInput zip(InputStream in) throws IOException {
+        return new RdaInput(MemorySource.readZip(in, "stream"));
+    }
+
+    RdaSource source() {
+        return source;
+    }
+
+    /**
+     * @return a human readable description of the location of the files
+     */
+    public String location() {
+        return source.location();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,29 @@
+package de.ontomed.simpleanno;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The {@code xml} folder of an RDA release, either extracted to disk or read directly from the release zip.
+ */
+interface RdaSource extends Closeable {
+
+    /**
+     * Lists the xml files directly contained in the given folder, sorted by path.
+     * @param folder a folder path relative to the {@code xml} folder, e.g. {@code Elements}
+     * @return the files, an empty list if the folder does not exist
+     */
+    List<SourceFile> list(String folder) throws IOException;
+
+    /**
+     * @param path a file path relative to the {@code xml} folder, e.g. {@code Elements/w/object.xml}
+     * @return the file or null if it does not exist
+     */
+    SourceFile find(String path) throws IOException;
+
+    /**
+     * @return a human readable description of the location of this source
+     */
+    String location();
+}
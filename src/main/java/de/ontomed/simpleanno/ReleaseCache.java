@@ -0,0 +1,253 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages the download cache folder: the release zips ({@code RDA-<version>.zip} with their metadata and partial
+ * downloads) and the trees extracted from them ({@code RDA-Vocabularies-<version>}), which include the default output
+ * folder. The folder may be shared by several runs at the same time.
+ * <p>
+ * A run uses a release through a {@link Lease}, which holds a lock on {@code RDA-<version>.lock}. An exclusive lease
+ * may download, extract and write into the release's files, a shared lease may only read them. The lock file has two
+ * regions: an exclusive lease locks both, a shared lease only the second one (shared). Turning an exclusive lease into
+ * a shared one re-locks the second region while the first one still keeps everybody else out, so the release cannot
+ * be deleted in between. When a lease is closed,
+ * the release's last access time is recorded in {@code cache-index.properties} and, if the cache exceeds its byte
+ * budget, the least recently used releases that are not leased by anybody are deleted. The index is only read and
+ * written while holding the lock on {@code cache.lock}.
+ */
+class ReleaseCache {
+
+    private static final String INDEX_FILE = "cache-index.properties";
+    private static final String LOCK_FILE = "cache.lock";
+
+    private static final Pattern VERSION_FILE_PATTERN = Pattern.compile("(?:RDA-Vocabularies-|RDA-|\\.extract-)(.+?)(?:\\.zip(?:\\.part)?(?:\\.properties)?)?");
+
+    private final File folder;
+    private final long maxBytes;
+
+    /**
+     * @param folder the cache folder
+     * @param maxBytes the byte budget, the release used last is kept even if it alone exceeds it
+     */
+    ReleaseCache(File folder, long maxBytes) {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The lock of a run on a release, see {@link ReleaseCache#lease}.
+     */
+    class Lease implements Closeable {
+
+        private final String version;
+        private final FileChannel channel;
+        // null once the lease is shared
+        private FileLock first;
+        private FileLock second;
+
+        private Lease(String version, FileChannel channel, FileLock first, FileLock second) {
+            this.version = version;
+            this.channel = channel;
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * @return true if the release's files may be changed (downloaded, extracted, written to)
+         */
+        boolean exclusive() {
+            return first != null;
+        }
+
+        /**
+         * Gives up the right to change the release's files, so other runs can read them at the same time.
+         */
+        void share() throws IOException {
+            if (first == null) {
+                return;
+            }
+            second.release();
+            second = lockSecond(channel, true);
+            first.release();
+            first = null;
+        }
+
+        /**
+         * Releases the lock, records the access and evicts releases if the cache exceeds its budget.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                withIndexLock(() -> {
+                    Properties index = ReleaseDownloader.loadProperties(new File(folder, INDEX_FILE));
+                    index.setProperty(version, Long.toString(System.currentTimeMillis()));
+                    channel.close();
+                    evict(index, version);
+                    ReleaseDownloader.storeProperties(index, new File(folder, INDEX_FILE));
+                });
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Leases the given release. Blocks while another run is changing the release's files.
+     * @param exclusive true if the files of the release must be changeable; otherwise an exclusive lease is only
+     *                  granted if nobody else uses the release, and a shared one if somebody does (provided the
+     *                  release has been downloaded completely)
+     */
+    Lease lease(String version, boolean exclusive) throws IOException {
+        folder.mkdirs();
+        FileChannel channel = new RandomAccessFile(new File(folder, "RDA-" + version + ".lock"), "rw").getChannel();
+        try {
+            if (!exclusive) {
+                FileLock first = channel.tryLock(0, 1, false);
+                if (first != null) {
+                    FileLock second = channel.tryLock(1, Long.MAX_VALUE - 1, false);
+                    if (second != null) {
+                        return new Lease(version, channel, first, second);
+                    }
+                    first.release();
+                }
+                // somebody else is using the release, sharing it is fine once its download is complete
+                FileLock second = lockSecond(channel, true);
+                if (new File(folder, "RDA-" + version + ".zip").isFile()) {
+                    return new Lease(version, channel, null, second);
+                }
+                second.release();
+            }
+            // always in this order, so nobody waits for the first region while holding the second
+            FileLock first = channel.lock(0, 1, false);
+            return new Lease(version, channel, first, lockSecond(channel, false));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static FileLock lockSecond(FileChannel channel, boolean shared) throws IOException {
+        return channel.lock(1, Long.MAX_VALUE - 1, shared);
+    }
+
+    @FunctionalInterface
+    private interface IndexAction {
+        void run() throws IOException;
+    }
+
+    private void withIndexLock(IndexAction action) throws IOException {
+        FileChannel channel = new RandomAccessFile(new File(folder, LOCK_FILE), "rw").getChannel();
+        try {
+            FileLock lock = channel.lock();
+            try {
+                action.run();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Deletes the least recently used releases until the cache fits its budget. Releases that are leased by a run
+     * are skipped, as is the given one (which has just been used).
+     */
+    private void evict(Properties index, String keepVersion) throws IOException {
+        Map<String, List<File>> releases = new HashMap<>();
+        File[] files = folder.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            Matcher matcher = VERSION_FILE_PATTERN.matcher(file.getName());
+            if (matcher.matches() && !file.getName().endsWith(".lock")) {
+                releases.computeIfAbsent(matcher.group(1), version -> new ArrayList<>()).add(file);
+            }
+        }
+
+        long totalBytes = 0;
+        Map<String, Long> sizes = new HashMap<>();
+        for (Map.Entry<String, List<File>> release : releases.entrySet()) {
+            long size = 0;
+            for (File file : release.getValue()) {
+                size += file.isDirectory() ? FileUtils.sizeOfDirectory(file) : file.length();
+            }
+            sizes.put(release.getKey(), size);
+            totalBytes += size;
+        }
+
+        List<String> versions = new ArrayList<>(releases.keySet());
+        // releases not in the index (e.g. from before the index existed) count as accessed when last modified
+        versions.sort(Comparator.comparingLong(version -> lastAccess(index, version, releases.get(version))));
+
+        for (String version : versions) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (version.equals(keepVersion)) {
+                continue;
+            }
+            if (delete(version, releases.get(version))) {
+                totalBytes -= sizes.get(version);
+                index.remove(version);
+                System.out.printf("Removed RDA release %s from the download cache.\n", version);
+            }
+        }
+    }
+
+    private static long lastAccess(Properties index, String version, List<File> files) {
+        String lastAccess = index.getProperty(version);
+        if (lastAccess != null) {
+            return Long.parseLong(lastAccess);
+        }
+        long lastModified = 0;
+        for (File file : files) {
+            lastModified = Math.max(lastModified, file.lastModified());
+        }
+        return lastModified;
+    }
+
+    /**
+     * @return true if the release has been deleted, false if it is in use
+     */
+    private boolean delete(String version, List<File> files) throws IOException {
+        // the lock file itself is kept, runs waiting for it must keep locking the same file
+        FileChannel channel = new RandomAccessFile(new File(folder, "RDA-" + version + ".lock"), "rw").getChannel();
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // leased within this VM
+                return false;
+            }
+            if (lock == null) {
+                return false;
+            }
+            try {
+                for (File file : files) {
+                    if (file.isDirectory()) {
+                        FileUtils.deleteDirectory(file);
+                    } else {
+                        file.delete();
+                    }
+                }
+            } finally {
+                lock.release();
+            }
+            return true;
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares two RDA releases entity by entity and writes the differences as OWL files: {@code added.owl} and
+ * {@code changed.owl} with the entities as they are defined in the new release, {@code removed.owl} with the entities
+ * as they were defined in the old one. A summary is written to {@code rda2owl-diff.json}.
+ * <p>
+ * Entities are identified by their URI (rdf:about). Every entity is reduced to a hash of its type and its annotation
+ * lines (trimmed, sorted and without duplicates, so the order of the annotations does not matter, and with the
+ * namespace prefixes replaced by the namespace URIs, so renaming a prefix does not change anything). The keys of both
+ * releases are sorted by URI and merge-joined in a single pass; only the URIs and hashes are held in memory, not the
+ * annotations. The entities that differ are then read again from the files that contain them and written to the
+ * delta files. An entity defined in several files is written once, with the union of the annotations of its
+ * definitions.
+ */
+class ReleaseDiff {
+
+    static final String REPORT_FILE_NAME = "rda2owl-diff.json";
+
+    private static final String[] NO_PATHS = new String[0];
+
+    // a prefix of an element or attribute name
+    private static final Pattern PREFIX_PATTERN = Pattern.compile("(?<=[<\\s/])([A-Za-z_][\\w.-]*):(?=[A-Za-z_])");
+
+    /**
+     * The hash of an entity, sortable by URI.
+     */
+    private static class EntityKey {
+        private final String uri;
+        private final String sourcePath;
+        // other files defining an entity with the same URI (e.g. datatype.xml and object.xml), rarely used
+        private String[] otherPaths = NO_PATHS;
+        private long hash;
+
+        private EntityKey(String uri, String sourcePath, long hash) {
+            this.uri = uri;
+            this.sourcePath = sourcePath;
+            this.hash = hash;
+        }
+    }
+
+    private static class FileChanges {
+        private int added;
+        private int removed;
+        private int changed;
+    }
+
+    private final String oldLabel;
+    private final String newLabel;
+
+    // the namespaces of both releases, declared in all delta files
+    private final Map<String, String> namespaces = new LinkedHashMap<>();
+
+    private final Set<String> added = new HashSet<>();
+    private final Set<String> removed = new HashSet<>();
+    private final Set<String> changed = new HashSet<>();
+    // the number of definitions of the entities to write that are defined in several files
+    private final Map<String, Integer> definitions = new HashMap<>();
+    private int unchanged;
+    private int oldEntities;
+    private int newEntities;
+    // changes by the path of the file defining the entity (in the new release, in the old one for removed entities)
+    private final Map<String, FileChanges> fileChanges = new TreeMap<>();
+
+    /**
+     * @param oldLabel a name for the old release, e.g. its version
+     * @param newLabel a name for the new release
+     */
+    ReleaseDiff(String oldLabel, String newLabel) {
+        this.oldLabel = oldLabel;
+        this.newLabel = newLabel;
+    }
+
+    /**
+     * Compares the releases and writes the delta files and the summary into the given folder.
+     */
+    void diff(RdaInput oldInput, RdaInput newInput, File outputFolder) throws IOException {
+        long start = System.nanoTime();
+
+        List<EntityKey> oldKeys = keys(oldInput.source());
+        List<EntityKey> newKeys = keys(newInput.source());
+        oldEntities = oldKeys.size();
+        newEntities = newKeys.size();
+
+        // the files the entities to write are defined in
+        Set<String> oldPaths = new HashSet<>();
+        Set<String> newPaths = new HashSet<>();
+
+        int i = 0;
+        int j = 0;
+        while (i < oldKeys.size() || j < newKeys.size()) {
+            EntityKey oldKey = i < oldKeys.size() ? oldKeys.get(i) : null;
+            EntityKey newKey = j < newKeys.size() ? newKeys.get(j) : null;
+            int order = oldKey == null ? 1 : newKey == null ? -1 : oldKey.uri.compareTo(newKey.uri);
+            if (order < 0) {
+                removed.add(oldKey.uri);
+                addPaths(oldPaths, oldKey);
+                countDefinitions(oldKey);
+                fileChanges(oldKey).removed++;
+                i++;
+            } else if (order > 0) {
+                added.add(newKey.uri);
+                addPaths(newPaths, newKey);
+                countDefinitions(newKey);
+                fileChanges(newKey).added++;
+                j++;
+            } else {
+                if (oldKey.hash != newKey.hash) {
+                    changed.add(newKey.uri);
+                    addPaths(newPaths, newKey);
+                    countDefinitions(newKey);
+                    fileChanges(newKey).changed++;
+                } else {
+                    unchanged++;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        outputFolder.mkdirs();
+        String comment = "RDA " + oldLabel + " compared to " + newLabel + ": ";
+        OwlEntityWriter addedOut = null;
+        OwlEntityWriter changedOut = null;
+        OwlEntityWriter removedOut = null;
+        try {
+            addedOut = new OwlEntityWriter(new File(outputFolder, "added.owl"), namespaces, header(comment + "entities added"));
+            changedOut = new OwlEntityWriter(new File(outputFolder, "changed.owl"), namespaces, header(comment + "entities changed, as defined in " + newLabel));
+            removedOut = new OwlEntityWriter(new File(outputFolder, "removed.owl"), namespaces, header(comment + "entities removed, as defined in " + oldLabel));
+
+            // definitions of entities defined in several files, until all of them have been read
+            Map<String, List<RdaEntity>> pending = new HashMap<>();
+
+            RdaSource newSource = newInput.source();
+            for (SourceFile file : RdaConverter.files(newSource)) {
+                if (newPaths.contains(file.path())) {
+                    EntityReader reader = new EntityReader(file, RdaConverter.propertyTypes(newSource, file));
+                    try {
+                        while (reader.hasNext()) {
+                            RdaEntity entity = reader.next();
+                            if (added.contains(entity.uri())) {
+                                write(addedOut, entity, pending);
+                            } else if (changed.contains(entity.uri())) {
+                                write(changedOut, entity, pending);
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                }
+            }
+
+            RdaSource oldSource = oldInput.source();
+            for (SourceFile file : RdaConverter.files(oldSource)) {
+                if (oldPaths.contains(file.path())) {
+                    EntityReader reader = new EntityReader(file, RdaConverter.propertyTypes(oldSource, file));
+                    try {
+                        while (reader.hasNext()) {
+                            RdaEntity entity = reader.next();
+                            if (removed.contains(entity.uri())) {
+                                write(removedOut, entity, pending);
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                }
+            }
+
+            addedOut.finish();
+            changedOut.finish();
+            removedOut.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (OwlEntityWriter out : new OwlEntityWriter[] {addedOut, changedOut, removedOut}) {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+
+        writeReport(new File(outputFolder, REPORT_FILE_NAME), System.nanoTime() - start);
+
+        System.out.printf("%d entities added, %d removed, %d changed, %d unchanged.\n", added.size(), removed.size(), changed.size(), unchanged);
+    }
+
+    /**
+     * Reads the entities of a release.
+     * @return the keys sorted by URI, one per URI
+     */
+    private List<EntityKey> keys(RdaSource source) throws IOException {
+        List<EntityKey> keys = new ArrayList<>();
+        MessageDigest digest = BuildManifest.newDigest();
+        for (SourceFile file : RdaConverter.files(source)) {
+            EntityReader reader = new EntityReader(file, RdaConverter.propertyTypes(source, file));
+            try {
+                for (Map.Entry<String, String> namespace : reader.namespaces().entrySet()) {
+                    namespaces.putIfAbsent(namespace.getKey(), namespace.getValue());
+                }
+                while (reader.hasNext()) {
+                    RdaEntity entity = reader.next();
+                    keys.add(new EntityKey(entity.uri(), file.path(), hash(entity, reader.namespaces(), digest)));
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                reader.close();
+            }
+        }
+
+        // the files are read in a fixed order, so entities defined more than once are folded in the same order
+        keys.sort(Comparator.comparing(key -> key.uri));
+        List<EntityKey> folded = new ArrayList<>(keys.size());
+        for (EntityKey key : keys) {
+            EntityKey previous = folded.isEmpty() ? null : folded.get(folded.size() - 1);
+            if (previous != null && previous.uri.equals(key.uri)) {
+                previous.hash = previous.hash * 31 + key.hash;
+                previous.otherPaths = Arrays.copyOf(previous.otherPaths, previous.otherPaths.length + 1);
+                previous.otherPaths[previous.otherPaths.length - 1] = key.sourcePath;
+            } else {
+                folded.add(key);
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * @param namespaces the namespaces declared in the entity's file, prefix to namespace URI
+     * @return the first 64 bits of the SHA-256 of the entity's type and normalized annotation lines
+     */
+    static long hash(RdaEntity entity, Map<String, String> namespaces, MessageDigest digest) {
+        SortedSet<String> lines = new TreeSet<>();
+        for (String line : entity.lines()) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty()) {
+                lines.add(expandPrefixes(trimmed, namespaces));
+            }
+        }
+        digest.reset();
+        digest.update((entity.type() == null ? "Description" : entity.type().element()).getBytes(StandardCharsets.UTF_8));
+        for (String line : lines) {
+            digest.update((byte) '\n');
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = digest.digest();
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (bytes[i] & 0xff);
+        }
+        return hash;
+    }
+
+    /**
+     * @return the line with every declared prefix of an element or attribute name replaced by its namespace URI in
+     * braces, e.g. {@code <{http://www.w3.org/2000/01/rdf-schema#}label xml:lang="en">}
+     */
+    static String expandPrefixes(String line, Map<String, String> namespaces) {
+        Matcher matcher = PREFIX_PATTERN.matcher(line);
+        StringBuffer expanded = null;
+        while (matcher.find()) {
+            String namespace = namespaces.get(matcher.group(1));
+            if (namespace != null) {
+                if (expanded == null) {
+                    expanded = new StringBuffer(line.length() + 64);
+                }
+                matcher.appendReplacement(expanded, Matcher.quoteReplacement("{" + namespace + "}"));
+            }
+        }
+        if (expanded == null) {
+            return line;
+        }
+        matcher.appendTail(expanded);
+        return expanded.toString();
+    }
+
+    private void countDefinitions(EntityKey key) {
+        if (key.otherPaths.length > 0) {
+            definitions.put(key.uri, key.otherPaths.length + 1);
+        }
+    }
+
+    /**
+     * Writes the entity, or, if it is defined in several files, holds it back until all of its definitions have been
+     * read and writes them merged.
+     */
+    private void write(OwlEntityWriter out, RdaEntity entity, Map<String, List<RdaEntity>> pending) throws IOException {
+        Integer count = definitions.get(entity.uri());
+        if (count == null) {
+            out.write(entity);
+            return;
+        }
+        List<RdaEntity> entities = pending.computeIfAbsent(entity.uri(), uri -> new ArrayList<>());
+        entities.add(entity);
+        if (entities.size() == count) {
+            pending.remove(entity.uri());
+            out.write(merge(entities));
+        }
+    }
+
+    /**
+     * Merges the definitions of an entity like {@link PropertyMerger}: the last known type (the files are read in the
+     * order of the conversion, so an object or datatype definition wins) and the union of the annotations.
+     */
+    private static RdaEntity merge(List<RdaEntity> entities) {
+        RDA2OWL.TYPE type = null;
+        Set<String> lines = new LinkedHashSet<>();
+        for (RdaEntity entity : entities) {
+            if (entity.type() != null) {
+                type = entity.type();
+            }
+            lines.addAll(entity.lines());
+        }
+        RdaEntity first = entities.get(0);
+        return new RdaEntity(first.uri(), type, new ArrayList<>(lines), first.ontologyURI(), first.sourcePath());
+    }
+
+    private static void addPaths(Set<String> paths, EntityKey key) {
+        paths.add(key.sourcePath);
+        Collections.addAll(paths, key.otherPaths);
+    }
+
+    private FileChanges fileChanges(EntityKey key) {
+        return fileChanges.computeIfAbsent(key.sourcePath, path -> new FileChanges());
+    }
+
+    private static String header(String comment) {
+        // the delta ontologies are identified by the location they are loaded from
+        return "<owl:Ontology rdf:about=\"\">\n"
+                + "    <rdfs:comment>" + comment.replace("&", "&amp;").replace("<", "&lt;") + "</rdfs:comment>\n"
+                + "</owl:Ontology>\n";
+    }
+
+    /**
+     * Writes the summary as JSON:
+     * <pre>
+     * {"old": ..., "new": ..., "millis": ..., "oldEntities": ..., "newEntities": ...,
+     *  "added": ..., "removed": ..., "changed": ..., "unchanged": ...,
+     *  "files": [{"path": ..., "added": ..., "removed": ..., "changed": ...}, ...]}
+     * </pre>
+     */
+    private void writeReport(File reportFile, long nanos) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"old\": ").append(RunMetrics.string(oldLabel)).append(",\n");
+        json.append("  \"new\": ").append(RunMetrics.string(newLabel)).append(",\n");
+        json.append("  \"millis\": ").append(RunMetrics.millis(nanos)).append(",\n");
+        json.append("  \"oldEntities\": ").append(oldEntities).append(",\n");
+        json.append("  \"newEntities\": ").append(newEntities).append(",\n");
+        json.append("  \"added\": ").append(added.size()).append(",\n");
+        json.append("  \"removed\": ").append(removed.size()).append(",\n");
+        json.append("  \"changed\": ").append(changed.size()).append(",\n");
+        json.append("  \"unchanged\": ").append(unchanged).append(",\n");
+        json.append("  \"files\": [");
+        String separator = "\n";
+        for (Map.Entry<String, FileChanges> file : fileChanges.entrySet()) {
+            json.append(separator).append("    {\"path\": ").append(RunMetrics.string(file.getKey()))
+                    .append(", \"added\": ").append(file.getValue().added)
+                    .append(", \"removed\": ").append(file.getValue().removed)
+                    .append(", \"changed\": ").append(file.getValue().changed).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8);
+        try {
+            out.write(json.toString());
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+}
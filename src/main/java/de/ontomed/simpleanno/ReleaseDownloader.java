@@ -0,0 +1,430 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Determines the latest RDA release and downloads release zips into a cache folder.
+ *
+ * <ul>
+ *     <li>The version probe and the archive download are conditional requests (ETag / Last-Modified), so unchanged
+ *     resources are not transferred again.</li>
+ *     <li>A download is written to {@code <zip>.part} first and renamed atomically when complete. An interrupted
+ *     download is resumed with a Range request on the next run.</li>
+ *     <li>The SHA-256 of every completed download is stored next to it and checked before a cached zip is reused.</li>
+ * </ul>
+ *
+ * The base URL is configurable, so the downloader can be pointed at a local stand-in for GitHub. The HTTP client is
+ * only set up when the first request is made, runs that find their release in the cache never do.
+ */
+class ReleaseDownloader {
+
+    static final String DEFAULT_BASE_URL = "https://github.com/RDARegistry/RDA-Vocabularies";
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("\\<a href=\"[^\"]*?/archive/(?:refs/tags/)?v([^\"]*?)\\.zip\"");
+
+    private static final String LATEST_RELEASE_FILE = "latest-release.properties";
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_SHA256 = "sha256";
+    private static final String KEY_LENGTH = "length";
+
+    // created on first use
+    private CloseableHttpClient httpClient;
+    private final String baseUrl;
+    private final File cacheFolder;
+
+    // response body bytes received, for the run report
+    private long bytesTransferred;
+
+    ReleaseDownloader(String baseUrl, File cacheFolder) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.cacheFolder = cacheFolder;
+    }
+
+    private synchronized CloseableHttpClient httpClient() {
+        if (httpClient == null) {
+            httpClient = HttpClients.custom()
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setCookieSpec(CookieSpecs.STANDARD).build())
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Requests {@code <base>/releases/latest}, which redirects to the actual latest release page. The release number
+     * can then be found in the html source. If the page has not changed since the last probe, the version found back
+     * then is returned.
+     * @return the latest version or null if it cannot be found on the page
+     */
+    String latestVersion() throws IOException {
+        File stateFile = new File(cacheFolder, LATEST_RELEASE_FILE);
+        Properties state = loadProperties(stateFile);
+
+        HttpGet httpget = new HttpGet(baseUrl + "/releases/latest");
+        if (state.getProperty(KEY_VERSION) != null) {
+            addConditionalHeaders(httpget, state);
+        }
+
+        CloseableHttpResponse response = httpClient().execute(httpget);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(response.getEntity());
+                return state.getProperty(KEY_VERSION);
+            }
+            if (status < 200 || status >= 300) {
+                throw new ClientProtocolException("Unexpected response status: " + status);
+            }
+
+            HttpEntity entity = response.getEntity();
+            String responseBody = "";
+            if (entity != null) {
+                byte[] body = EntityUtils.toByteArray(entity);
+                bytesTransferred += body.length;
+                Charset charset = ContentType.getOrDefault(entity).getCharset();
+                responseBody = new String(body, charset != null ? charset : StandardCharsets.ISO_8859_1);
+            }
+
+            Matcher versionMatcher = VERSION_PATTERN.matcher(responseBody);
+            if (!versionMatcher.find()) {
+                return null;
+            }
+
+            Properties newState = new Properties();
+            newState.setProperty(KEY_VERSION, versionMatcher.group(1));
+            storeValidators(response, newState);
+            storeProperties(newState, stateFile);
+
+            return versionMatcher.group(1);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * @return the location of the zip of the given version in the cache folder (whether it exists or not)
+     */
+    File zipFile(String version) {
+        return new File(cacheFolder, "RDA-" + version + ".zip");
+    }
+
+    /**
+     * @return the number of response body bytes received by this downloader so far
+     */
+    long bytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * @return true if the zip of the given version is in the cache and has the SHA-256 recorded when it was downloaded
+     */
+    boolean isCached(String version) throws IOException {
+        File zipFile = zipFile(version);
+        Properties metadata = loadProperties(metadataFile(zipFile));
+        String sha256 = metadata.getProperty(KEY_SHA256);
+        return zipFile.isFile() && sha256 != null && sha256.equals(BuildManifest.sha256(zipFile));
+    }
+
+    /**
+     * Reads the zip while it is being downloaded.
+     */
+    @FunctionalInterface
+    interface StreamConsumer {
+        /**
+         * @param in the complete zip, i.e. including an already downloaded part when a download is resumed. Whatever
+         *           is not read here is read by the downloader afterwards, the stream must not be closed. The length
+         *           and the SHA-256 of the zip are only checked after this method has returned, so nothing read here
+         *           is to be published before {@link #download(String, StreamConsumer)} has returned.
+         */
+        void accept(InputStream in) throws IOException;
+    }
+
+    /**
+     * Makes sure a verified copy of the zip of the given version is in the cache folder, downloading (or resuming the
+     * download of) it if necessary.
+     * @return the zip file
+     */
+    File download(String version) throws IOException {
+        download(version, null);
+        return zipFile(version);
+    }
+
+    /**
+     * Like {@link #download(String)}, but passes the zip to the given consumer while it is being downloaded.
+     * @param consumer reads the zip while it is being downloaded, may be null
+     * @return true if the zip has been downloaded and passed to the consumer, false if the cached zip is up to date
+     */
+    boolean download(String version, StreamConsumer consumer) throws IOException {
+        return download(version, consumer, isCached(version));
+    }
+
+    /**
+     * Like {@link #download(String, StreamConsumer)}, for a caller that has checked the cache already, so the zip is
+     * not hashed again.
+     * @param cached the result of {@link #isCached(String)}
+     */
+    boolean download(String version, StreamConsumer consumer, boolean cached) throws IOException {
+        cacheFolder.mkdirs();
+
+        File zipFile = zipFile(version);
+        File metadataFile = metadataFile(zipFile);
+        File partFile = new File(cacheFolder, zipFile.getName() + ".part");
+        File partMetadataFile = metadataFile(partFile);
+
+        Properties metadata = loadProperties(metadataFile);
+        if (!cached && zipFile.exists()) {
+            System.out.printf("Cached file %s is incomplete or corrupt, downloading it again.\n", zipFile.getAbsolutePath());
+            zipFile.delete();
+            metadataFile.delete();
+        }
+
+        HttpGet httpget = new HttpGet(baseUrl + "/archive/v" + version + ".zip");
+
+        Properties partMetadata = loadProperties(partMetadataFile);
+        long resumeFrom = 0;
+        if (cached) {
+            // only transfer the archive again if it has changed on the server
+            addConditionalHeaders(httpget, metadata);
+        } else if (partFile.isFile() && partFile.length() > 0 && partMetadata.getProperty(KEY_ETAG) != null) {
+            // resume, but only if the archive on the server is still the one we have started to download
+            resumeFrom = partFile.length();
+            httpget.addHeader("Range", "bytes=" + resumeFrom + "-");
+            httpget.addHeader("If-Range", partMetadata.getProperty(KEY_ETAG));
+        }
+
+        CloseableHttpResponse response = httpClient().execute(httpget);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+
+            if (cached && status == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(entity);
+                return false;
+            }
+            if (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                // the part file is not a prefix of the current archive, start from scratch next time
+                EntityUtils.consume(entity);
+                partFile.delete();
+                partMetadataFile.delete();
+                throw new IOException("Server rejected resuming the download, please try again.");
+            }
+            if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT) {
+                EntityUtils.consume(entity);
+                throw new ClientProtocolException("Unexpected response status: " + status);
+            }
+            if (entity == null) {
+                throw new ClientProtocolException("Empty response");
+            }
+
+            boolean append = status == HttpStatus.SC_PARTIAL_CONTENT && resumeFrom > 0;
+            if (append) {
+                System.out.printf("Resuming download at %d bytes.\n", resumeFrom);
+            } else {
+                resumeFrom = 0;
+            }
+
+            Properties newMetadata = new Properties();
+            storeValidators(response, newMetadata);
+            if (!append) {
+                storeProperties(newMetadata, partMetadataFile);
+            }
+
+            MessageDigest digest = BuildManifest.newDigest();
+            if (append) {
+                BuildManifest.update(digest, new FileInputStream(partFile));
+            }
+
+            long expectedLength = entity.getContentLength() < 0 ? -1 : resumeFrom + entity.getContentLength();
+
+            OutputStream out = new FileOutputStream(partFile, append);
+            RecordingInputStream in = new RecordingInputStream(entity.getContent(), out, digest);
+            try {
+                if (consumer != null) {
+                    // the part file is read completely before the first byte of the response is appended to it
+                    // the sequence closes each stream it has read to its end, the response is read on below
+                    consumer.accept(append ? new SequenceInputStream(new FileInputStream(partFile), new FilterInputStream(in) {
+                        @Override
+                        public void close() {
+                        }
+                    }) : in);
+                }
+                byte[] buffer = new byte[1 << 16];
+                while (in.read(buffer) != -1) {
+                    // recorded by the stream
+                }
+            } finally {
+                bytesTransferred += in.recorded;
+                IOUtils.closeQuietly(out);
+                IOUtils.closeQuietly(in);
+            }
+
+            if (expectedLength >= 0 && partFile.length() != expectedLength) {
+                throw new IOException("Incomplete download, got " + partFile.length() + " of " + expectedLength + " bytes.");
+            }
+
+            if (append) {
+                // a 206 response may lack the validators, the ones of the original response are still valid
+                newMetadata = partMetadata;
+            }
+            newMetadata.setProperty(KEY_SHA256, BuildManifest.toHex(digest.digest()));
+            newMetadata.setProperty(KEY_LENGTH, Long.toString(partFile.length()));
+
+            // the metadata goes first, a zip without matching metadata is never reused
+            storeProperties(newMetadata, metadataFile);
+            move(partFile, zipFile);
+            partMetadataFile.delete();
+
+            return true;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Writes everything that is read from the wrapped stream to the part file and the digest.
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private final OutputStream out;
+        private final MessageDigest digest;
+        private long recorded;
+
+        RecordingInputStream(InputStream in, OutputStream out, MessageDigest digest) {
+            super(in);
+            this.out = out;
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                out.write(b);
+                digest.update((byte) b);
+                recorded++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                out.write(b, off, read);
+                digest.update(b, off, read);
+                recorded += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must be recorded as well
+            byte[] buffer = new byte[(int) Math.min(n, 1 << 13)];
+            int read = read(buffer, 0, buffer.length);
+            return read < 0 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+    }
+
+    private static File metadataFile(File file) {
+        return new File(file.getParentFile(), file.getName() + ".properties");
+    }
+
+    private static void addConditionalHeaders(HttpGet httpget, Properties validators) {
+        if (validators.getProperty(KEY_ETAG) != null) {
+            httpget.addHeader("If-None-Match", validators.getProperty(KEY_ETAG));
+        }
+        if (validators.getProperty(KEY_LAST_MODIFIED) != null) {
+            httpget.addHeader("If-Modified-Since", validators.getProperty(KEY_LAST_MODIFIED));
+        }
+    }
+
+    private static void storeValidators(CloseableHttpResponse response, Properties properties) {
+        Header etag = response.getFirstHeader("ETag");
+        if (etag != null) {
+            properties.setProperty(KEY_ETAG, etag.getValue());
+        }
+        Header lastModified = response.getFirstHeader("Last-Modified");
+        if (lastModified != null) {
+            properties.setProperty(KEY_LAST_MODIFIED, lastModified.getValue());
+        }
+    }
+
+    static Properties loadProperties(File file) {
+        Properties properties = new Properties();
+        if (file.isFile()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                properties.load(in);
+            } catch (IOException e) {
+                properties.clear();
+            } finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Writes the properties to a temporary file and renames it, so the file is either complete or not there.
+     */
+    static void storeProperties(Properties properties, File file) throws IOException {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(tmpFile);
+        try {
+            properties.store(out, null);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        move(tmpFile, file);
+    }
+
+    static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package de.ontomed.simpleanno;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which files of a release are converted, and which of them are converted together. Every way of reading a release
+ * (extracted, from the zip, while it is being downloaded) follows these rules, so they all convert the same files.
+ * <p>
+ * The xml files directly in {@code Elements} and {@code termList} are converted. An {@code Elements/<name>.xml} whose
+ * folder {@code Elements/<name>} holds both {@code datatype.xml} and {@code object.xml} is converted together with them
+ * as a property triple. No other file below {@code Elements/<name>} is converted, not even one of the two companions
+ * without the other, and neither are the files of deeper folders.
+ */
+final class ReleaseLayout {
+
+    static final String ELEMENTS = "Elements";
+    static final String TERM_LIST = "termList";
+
+    private static final String DATATYPE = "datatype.xml";
+    private static final String OBJECT = "object.xml";
+
+    private ReleaseLayout() {
+    }
+
+    /**
+     * @param path a path relative to the {@code xml} folder
+     * @return true if the file is converted, by itself or as the main file of a property triple
+     */
+    static boolean isMainFile(String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 && path.indexOf('/', slash + 1) < 0 && path.endsWith(".xml")
+                && (path.startsWith(ELEMENTS + "/") || path.startsWith(TERM_LIST + "/"));
+    }
+
+    /**
+     * @return the index of the given file in its property triple: 0 for {@code Elements/<name>.xml}, 1 for
+     * {@code Elements/<name>/datatype.xml}, 2 for {@code Elements/<name>/object.xml}, -1 if it is not part of one
+     */
+    static int tripleIndex(String path) {
+        if (isMainFile(path)) {
+            return path.startsWith(ELEMENTS + "/") ? 0 : -1;
+        }
+        String[] segments = path.split("/");
+        if (segments.length != 3 || !segments[0].equals(ELEMENTS)) {
+            return -1;
+        }
+        switch (segments[2]) {
+            case DATATYPE: return 1;
+            case OBJECT: return 2;
+            default: return -1;
+        }
+    }
+
+    /**
+     * @return the name of the property triple the given file is part of, e.g. {@code w} for
+     * {@code Elements/w/object.xml} (see {@link #tripleIndex(String)})
+     */
+    static String tripleName(String path) {
+        String[] segments = path.split("/");
+        return segments.length == 2 ? segments[1].substring(0, segments[1].length() - 4) : segments[1];
+    }
+
+    /**
+     * @return the paths of the files of the given property triple, in the order of {@link #tripleIndex(String)}
+     */
+    static String[] triplePaths(String tripleName) {
+        return new String[] {ELEMENTS + "/" + tripleName + ".xml", ELEMENTS + "/" + tripleName + "/" + DATATYPE, ELEMENTS + "/" + tripleName + "/" + OBJECT};
+    }
+
+    /**
+     * @return the files to convert, each either a property triple ({@code <name>.xml}, {@code datatype.xml},
+     * {@code object.xml}) or a single file followed by two nulls, in the order of their paths
+     */
+    static List<SourceFile[]> conversions(RdaSource source) throws IOException {
+        List<SourceFile[]> conversions = new ArrayList<>();
+        for (SourceFile file : source.list(ELEMENTS)) {
+            String[] paths = triplePaths(tripleName(file.path()));
+            SourceFile datatypeFile = source.find(paths[1]);
+            SourceFile objectFile = source.find(paths[2]);
+            if (datatypeFile != null && objectFile != null) {
+                conversions.add(new SourceFile[] {file, datatypeFile, objectFile});
+            } else {
+                conversions.add(new SourceFile[] {file, null, null});
+            }
+        }
+        for (SourceFile file : source.list(TERM_LIST)) {
+            conversions.add(new SourceFile[] {file, null, null});
+        }
+        return conversions;
+    }
+}
@@ -0,0 +1,383 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarStyle;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects timings and throughput of a conversion run: the wall time and bytes of each stage (version probe,
+ * download, extraction, writing the main ontology and catalog, ...), and for each converted file its time, size,
+ * number of lines and number of entities by {@link TYPE}. At the end of the run the numbers are written as a JSON
+ * report, see {@link #writeReport(File)}.
+ * <p>
+ * Every stage is also recorded as a {@link StageEvent} flight recorder event if the VM supports JFR, and the
+ * conversion progress can be shown as a progress bar on the console.
+ */
+class RunMetrics {
+
+    static final String REPORT_FILE_NAME = "rda2owl-report.json";
+
+    private static final boolean JFR_AVAILABLE = jfrAvailable();
+
+    private static final TYPE[] TYPES = TYPE.values();
+
+    /**
+     * A running stage, see {@link #start(String)}.
+     */
+    class Stage {
+        private final String name;
+        private final String file;
+        private final long start = System.nanoTime();
+        private final Object event;
+        private long nanos = -1;
+
+        private Stage(String name, String file) {
+            this.name = name;
+            this.file = file;
+            this.event = enabled && JFR_AVAILABLE ? StageEvent.begin(name, file) : null;
+        }
+
+        private long stop() {
+            if (nanos < 0) {
+                nanos = System.nanoTime() - start;
+                if (event != null) {
+                    StageEvent.end(event);
+                }
+            }
+            return nanos;
+        }
+
+        private void commit(long bytes, long lines) {
+            stop();
+            if (event != null) {
+                StageEvent.commit(event, bytes, lines);
+            }
+        }
+
+        /**
+         * Ends the stage.
+         * @param bytes the number of bytes processed by the stage, e.g. downloaded or written
+         */
+        void end(long bytes) {
+            commit(bytes, 0);
+            if (enabled) {
+                stages.add(new StageMetrics(name, nanos, bytes));
+            }
+        }
+    }
+
+    private static class StageMetrics {
+        private final String name;
+        private final long nanos;
+        private final long bytes;
+
+        private StageMetrics(String name, long nanos, long bytes) {
+            this.name = name;
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class FileMetrics {
+        private final String path;
+        private final String outputPath;
+        private final boolean reused;
+        private long nanos;
+        private long inputBytes;
+        private long outputBytes;
+        private long lines;
+        private final long[] entities = new long[TYPES.length];
+        // entities without a known rdf:type, written as rdf:Description
+        private long untypedEntities;
+
+        private FileMetrics(String path, String outputPath, boolean reused) {
+            this.path = path;
+            this.outputPath = outputPath;
+            this.reused = reused;
+        }
+    }
+
+    private final boolean enabled;
+    private final Instant started = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Object> properties = new LinkedHashMap<>();
+    private final List<StageMetrics> stages = Collections.synchronizedList(new ArrayList<>());
+    private final ConcurrentSkipListMap<String, FileMetrics> files = new ConcurrentSkipListMap<>();
+
+    private boolean showProgress;
+    private ProgressBar progressBar;
+    private final AtomicLong expectedBytes = new AtomicLong();
+
+    RunMetrics() {
+        this(true);
+    }
+
+    private RunMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return metrics that measure and record nothing, for conversions whose numbers are of no interest
+     */
+    static RunMetrics disabled() {
+        return new RunMetrics(false);
+    }
+
+    private static boolean jfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Adds a property of the run to the report, e.g. the RDA version or the engine.
+     */
+    synchronized void put(String name, Object value) {
+        properties.put(name, value);
+    }
+
+    /**
+     * Adds the startup time of the VM to the report: the milliseconds from the start of the VM to the creation of
+     * these metrics (at the start of {@code main}), and whether a class data sharing archive has been given.
+     */
+    void putStartup() {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        put("jvmStartupMillis", started.toEpochMilli() - runtime.getStartTime());
+        boolean classDataSharing = false;
+        for (String argument : runtime.getInputArguments()) {
+            if (argument.startsWith("-XX:SharedArchiveFile=") || argument.equals("-XX:+AutoCreateSharedArchive")) {
+                classDataSharing = true;
+            }
+        }
+        put("classDataSharing", classDataSharing);
+    }
+
+    /**
+     * Adds the numbers of a string pool to the report: the pooled strings, the strings looked up and the share of
+     * them that were pooled already (and are therefore kept in memory once).
+     */
+    void putInterner(Interner interner) {
+        long lookups = interner.lookups();
+        put("internedStrings", interner.size());
+        put("internLookups", lookups);
+        put("internHits", interner.hits());
+        put("internHitRate", lookups > 0 ? Math.round(interner.hits() * 1000.0 / lookups) / 1000.0 : 0.0);
+    }
+
+    /**
+     * Shows the progress of the file conversions as a progress bar on the console.
+     */
+    void showProgress() {
+        showProgress = enabled;
+    }
+
+    Stage start(String name) {
+        return new Stage(name, null);
+    }
+
+    /**
+     * Announces input files that are going to be converted, to size the progress bar.
+     */
+    synchronized void expect(long inputBytes) {
+        if (!showProgress) {
+            return;
+        }
+        long expected = expectedBytes.addAndGet(Math.max(inputBytes, 0));
+        if (progressBar == null) {
+            progressBar = new ProgressBar("Converting", expected, 500, System.err, ProgressBarStyle.ASCII).start();
+        } else {
+            progressBar.maxHint(expected);
+        }
+    }
+
+    /**
+     * Starts the conversion of a single file, to be ended with {@link #fileDone}.
+     */
+    Stage startFile(SourceFile inputFile) {
+        return new Stage("file", inputFile.path());
+    }
+
+    /**
+     * Ends the conversion of a single file and records its numbers.
+     * @param inputFiles the files the output has been converted from, the first one names it
+     * @param outputPath the path of the output file relative to the output folder
+     * @param counts the lines and entities counted by the engine, null if the output of the previous run has been
+     *               reused
+     */
+    void fileDone(Stage stage, List<SourceFile> inputFiles, File outputFile, String outputPath, ConversionCounts counts) {
+        long nanos = stage.stop();
+        if (!enabled) {
+            return;
+        }
+
+        String inputPath = inputFiles.get(0).path();
+        FileMetrics metrics = new FileMetrics(inputPath, outputPath, counts == null);
+        metrics.nanos = nanos;
+        for (SourceFile inputFile : inputFiles) {
+            metrics.inputBytes += Math.max(inputFile.size(), 0);
+        }
+        metrics.outputBytes = outputFile.length();
+        // the numbers of reused files are not known, they did not change since the previous run
+        if (counts != null) {
+            metrics.lines = counts.lines();
+            for (TYPE type : TYPES) {
+                metrics.entities[type.ordinal()] = counts.entities(type);
+            }
+            metrics.untypedEntities = counts.untypedEntities();
+        }
+        files.put(metrics.path, metrics);
+        stage.commit(metrics.inputBytes, metrics.lines);
+
+        synchronized (this) {
+            if (progressBar != null) {
+                progressBar.stepBy(metrics.inputBytes);
+                progressBar.setExtraMessage(inputPath);
+            }
+        }
+    }
+
+    /**
+     * Stops the progress bar, if any.
+     */
+    synchronized void stopProgress() {
+        if (progressBar != null) {
+            progressBar.stop();
+            progressBar = null;
+        }
+    }
+
+    /**
+     * Writes the report. All times are wall times in milliseconds, throughputs are per second of the time spent
+     * converting the files (i.e. summed over all workers).
+     * <pre>
+     * {
+     *   "started": "...", "wallMillis": ..., &lt;properties&gt;,
+     *   "stages": [{"stage": "download", "millis": ..., "bytes": ...}, ...],
+     *   "files": [{"path": "Elements/w.xml", "output": "Elements/w.owl", "reused": false, "millis": ...,
+     *              "inputBytes": ..., "outputBytes": ..., "lines": ..., "linesPerSecond": ..., "bytesPerSecond": ...,
+     *              "entities": {"Class": ..., ..., "untyped": ...}}, ...],
+     *   "totals": {"files": ..., "reusedFiles": ..., "millis": ..., ... same as for a file}
+     * }
+     * </pre>
+     */
+    void writeReport(File reportFile) throws IOException {
+        FileMetrics totals = new FileMetrics(null, null, false);
+        int reusedFiles = 0;
+        for (FileMetrics file : files.values()) {
+            totals.nanos += file.nanos;
+            totals.inputBytes += file.inputBytes;
+            totals.outputBytes += file.outputBytes;
+            totals.lines += file.lines;
+            for (int i = 0; i < TYPES.length; i++) {
+                totals.entities[i] += file.entities[i];
+            }
+            totals.untypedEntities += file.untypedEntities;
+            if (file.reused) {
+                reusedFiles++;
+            }
+        }
+
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"started\": ").append(string(started.toString())).append(",\n");
+        json.append("  \"wallMillis\": ").append(millis(System.nanoTime() - startNanos)).append(",\n");
+        synchronized (this) {
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                Object value = property.getValue();
+                json.append("  ").append(string(property.getKey())).append(": ")
+                        .append(value instanceof Number || value instanceof Boolean ? value.toString() : string(String.valueOf(value))).append(",\n");
+            }
+        }
+
+        json.append("  \"stages\": [");
+        String separator = "\n";
+        synchronized (stages) {
+            for (StageMetrics stage : stages) {
+                json.append(separator).append("    {\"stage\": ").append(string(stage.name))
+                        .append(", \"millis\": ").append(millis(stage.nanos))
+                        .append(", \"bytes\": ").append(stage.bytes).append('}');
+                separator = ",\n";
+            }
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"files\": [");
+        separator = "\n";
+        for (FileMetrics file : files.values()) {
+            json.append(separator).append("    {\"path\": ").append(string(file.path))
+                    .append(", \"output\": ").append(string(file.outputPath))
+                    .append(", \"reused\": ").append(file.reused).append(", ");
+            appendNumbers(json, file);
+            json.append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"totals\": {\"files\": ").append(files.size()).append(", \"reusedFiles\": ").append(reusedFiles).append(", ");
+        appendNumbers(json, totals);
+        json.append("}\n}\n");
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8);
+        try {
+            out.write(json.toString());
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static void appendNumbers(StringBuilder json, FileMetrics file) {
+        double seconds = file.nanos / 1e9;
+        json.append("\"millis\": ").append(millis(file.nanos))
+                .append(", \"inputBytes\": ").append(file.inputBytes)
+                .append(", \"outputBytes\": ").append(file.outputBytes)
+                .append(", \"lines\": ").append(file.lines)
+                .append(", \"linesPerSecond\": ").append(seconds > 0 ? Math.round(file.lines / seconds) : 0)
+                .append(", \"bytesPerSecond\": ").append(seconds > 0 ? Math.round(file.inputBytes / seconds) : 0)
+                .append(", \"entities\": {");
+        for (TYPE type : TYPES) {
+            json.append(string(type.element())).append(": ").append(file.entities[type.ordinal()]).append(", ");
+        }
+        json.append("\"untyped\": ").append(file.untypedEntities).append('}');
+    }
+
+    static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    static String string(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < ' ') {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        return out.append('"').toString();
+    }
+}
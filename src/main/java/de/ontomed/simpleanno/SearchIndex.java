@@ -0,0 +1,285 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Looks up RDA entities by the words of their labels ({@code rdfs:label}, {@code skos:prefLabel}) and definitions
+ * ({@code skos:definition}), using the index written next to the OWL files ({@code rda2owl-search.idx}, see
+ * {@code --search-index}). The index file is memory mapped, the ontologies are not read.
+ * <p>
+ * Words are sequences of letters and digits and are matched case insensitively. The layout of the file (all numbers
+ * big endian, strings as offset and length into the UTF-8 string block):
+ * <pre>
+ * "RDAI" version ontologies languages entities terms postings stringBytes
+ * string block
+ * ontologies: (offset length)*           ontology URIs, sorted
+ * languages:  (offset length)*           language tags, sorted, "" for literals without one
+ * entities:   (offset length type ontology)*   sorted by URI, type is the TYPE ordinal or -1
+ * terms:      (offset length firstPosting postingCount)*   sorted by UTF-8 bytes
+ * postings:   (entity language:short field:byte 0:byte)*   sorted by entity
+ * </pre>
+ * Instances can be used from several threads at the same time.
+ */
+public final class SearchIndex {
+
+    public static final String FILE_NAME = "rda2owl-search.idx";
+
+    static final byte[] MAGIC = {'R', 'D', 'A', 'I'};
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 8 + 6 * 4;
+    private static final int REF_BYTES = 8;
+    private static final int ENTITY_BYTES = 16;
+    private static final int TERM_BYTES = 16;
+    private static final int POSTING_BYTES = 8;
+
+    /**
+     * The annotation a word has been found in.
+     */
+    public enum Field {
+        LABEL, PREF_LABEL, DEFINITION
+    }
+
+    /**
+     * An entity with a label or definition containing the searched word.
+     */
+    public static final class Hit {
+        private final String term;
+        private final String uri;
+        private final TYPE type;
+        private final String ontologyURI;
+        private final Field field;
+        private final String language;
+
+        private Hit(String term, String uri, TYPE type, String ontologyURI, Field field, String language) {
+            this.term = term;
+            this.uri = uri;
+            this.type = type;
+            this.ontologyURI = ontologyURI;
+            this.field = field;
+            this.language = language;
+        }
+
+        /**
+         * @return the indexed word that matched (case folded)
+         */
+        public String term() {
+            return term;
+        }
+
+        public String uri() {
+            return uri;
+        }
+
+        /**
+         * @return the OWL entity type, null for entities kept as rdf:Description
+         */
+        public TYPE type() {
+            return type;
+        }
+
+        /**
+         * @return the URI of the ontology the entity is defined in, may be empty
+         */
+        public String ontologyURI() {
+            return ontologyURI;
+        }
+
+        public Field field() {
+            return field;
+        }
+
+        /**
+         * @return the language tag of the label or definition (lower case), empty if it has none
+         */
+        public String language() {
+            return language;
+        }
+
+        @Override
+        public String toString() {
+            return term + " -> " + uri + " (" + (type == null ? "Description" : type.element()) + ", " + field + (language.isEmpty() ? "" : "@" + language) + ")";
+        }
+    }
+
+    private final ByteBuffer data;
+    private final int ontologies;
+    private final int entities;
+    private final int terms;
+    private final int stringsStart;
+    private final int ontologiesStart;
+    private final int languagesStart;
+    private final int entitiesStart;
+    private final int termsStart;
+    private final int postingsStart;
+
+    private SearchIndex(ByteBuffer data) throws IOException {
+        this.data = data;
+        byte[] magic = new byte[MAGIC.length];
+        for (int i = 0; i < magic.length && i < data.capacity(); i++) {
+            magic[i] = data.get(i);
+        }
+        if (data.capacity() < HEADER_BYTES || !Arrays.equals(magic, MAGIC) || data.getInt(4) != VERSION) {
+            throw new IOException("Not a search index of this version");
+        }
+        ontologies = data.getInt(8);
+        int languages = data.getInt(12);
+        entities = data.getInt(16);
+        terms = data.getInt(20);
+        int postings = data.getInt(24);
+        int stringBytes = data.getInt(28);
+
+        stringsStart = HEADER_BYTES;
+        ontologiesStart = stringsStart + stringBytes;
+        languagesStart = ontologiesStart + ontologies * REF_BYTES;
+        entitiesStart = languagesStart + languages * REF_BYTES;
+        termsStart = entitiesStart + entities * ENTITY_BYTES;
+        postingsStart = termsStart + terms * TERM_BYTES;
+        if (postingsStart + (long) postings * POSTING_BYTES != data.capacity()) {
+            throw new IOException("Search index is truncated or corrupt");
+        }
+    }
+
+    /**
+     * Maps the given index file into memory.
+     * @param file the index file, or the output folder containing it
+     */
+    public static SearchIndex open(File file) throws IOException {
+        if (file.isDirectory()) {
+            file = new File(file, FILE_NAME);
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the channel has been closed
+            return new SearchIndex(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+        } finally {
+            in.close();
+        }
+    }
+
+    public int entityCount() {
+        return entities;
+    }
+
+    public int termCount() {
+        return terms;
+    }
+
+    /**
+     * @param word a single word, matched case insensitively
+     * @return the entities whose labels or definitions contain the word, ordered by URI
+     */
+    public List<Hit> lookup(String word) {
+        byte[] term = SearchIndexBuilder.fold(word).getBytes(StandardCharsets.UTF_8);
+        int index = lowerBound(term);
+        if (index == terms || compareTerm(index, term, false) != 0) {
+            return Collections.emptyList();
+        }
+        List<Hit> hits = new ArrayList<>();
+        addHits(index, hits, Integer.MAX_VALUE);
+        return hits;
+    }
+
+    /**
+     * @param prefix the start of a word, matched case insensitively
+     * @param maxHits the maximum number of hits to return
+     * @return the entities whose labels or definitions contain a word starting with the prefix, ordered by word and
+     * then by URI
+     */
+    public List<Hit> prefix(String prefix, int maxHits) {
+        byte[] term = SearchIndexBuilder.fold(prefix).getBytes(StandardCharsets.UTF_8);
+        List<Hit> hits = new ArrayList<>();
+        for (int index = lowerBound(term); index < terms && hits.size() < maxHits && compareTerm(index, term, true) == 0; index++) {
+            addHits(index, hits, maxHits);
+        }
+        return hits;
+    }
+
+    /**
+     * @return the index of the first term that is not smaller than the given one
+     */
+    private int lowerBound(byte[] term) {
+        int low = 0;
+        int high = terms;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTerm(middle, term, false) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the term with the given index to the given bytes, like {@link #compare}.
+     * @param prefix true to compare only the first {@code bytes.length} bytes of the term
+     */
+    private int compareTerm(int index, byte[] bytes, boolean prefix) {
+        int entry = termsStart + index * TERM_BYTES;
+        int offset = stringsStart + data.getInt(entry);
+        int length = data.getInt(entry + 4);
+        int common = Math.min(length, bytes.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (data.get(offset + i) & 0xff) - (bytes[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return prefix && length >= bytes.length ? 0 : length - bytes.length;
+    }
+
+    private void addHits(int termIndex, List<Hit> hits, int maxHits) {
+        int entry = termsStart + termIndex * TERM_BYTES;
+        String term = string(entry);
+        int first = data.getInt(entry + 8);
+        int count = data.getInt(entry + 12);
+        for (int i = 0; i < count && hits.size() < maxHits; i++) {
+            int posting = postingsStart + (first + i) * POSTING_BYTES;
+            int entity = entitiesStart + data.getInt(posting) * ENTITY_BYTES;
+            String language = string(languagesStart + (data.getShort(posting + 4) & 0xffff) * REF_BYTES);
+            Field field = Field.values()[data.get(posting + 6)];
+            int type = data.getInt(entity + 8);
+            String ontologyURI = string(ontologiesStart + data.getInt(entity + 12) * REF_BYTES);
+            hits.add(new Hit(term, string(entity), type < 0 ? null : TYPE.values()[type], ontologyURI, field, language));
+        }
+    }
+
+    /**
+     * @return the string referenced at the given position
+     */
+    private String string(int ref) {
+        int offset = stringsStart + data.getInt(ref);
+        byte[] bytes = new byte[data.getInt(ref + 4)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares UTF-8 encoded terms byte by byte (unsigned), which sorts them like their code points.
+     */
+    static int compare(byte[] a, byte[] b) {
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return a.length - b.length;
+    }
+}
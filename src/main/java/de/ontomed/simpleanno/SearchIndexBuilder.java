@@ -0,0 +1,304 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects the labels and definitions of the entities of a conversion and writes them as a {@link SearchIndex}.
+ * Entities can be added from several threads at the same time.
+ */
+class SearchIndexBuilder {
+
+    private static final String NS_RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+    private static final String NS_SKOS = "http://www.w3.org/2004/02/skos/core#";
+
+    // a literal property element on a single line, e.g. <rdfs:label xml:lang="en">title</rdfs:label>
+    private static final Pattern LITERAL_PATTERN = Pattern.compile("<([\\w.-]+):(label|prefLabel|definition)((?:\\s+[\\w:.-]+\\s*=\\s*\"[^\"]*\")*)\\s*>([^<]*)</\\1:\\2\\s*>");
+    private static final Pattern LANGUAGE_PATTERN = Pattern.compile("xml:lang\\s*=\\s*\"([^\"]*)\"");
+    private static final Pattern ENTITY_PATTERN = Pattern.compile("&(#x[0-9a-fA-F]+|#[0-9]+|amp|lt|gt|quot|apos);");
+
+    private static class Entity {
+        private final String uri;
+        private final TYPE type;
+        private final String ontologyURI;
+
+        private Entity(String uri, TYPE type, String ontologyURI) {
+            this.uri = uri;
+            this.type = type;
+            this.ontologyURI = ontologyURI;
+        }
+    }
+
+    /**
+     * The postings of a term: entity id, field and language id packed into a long (see {@link #posting}).
+     */
+    private static class Postings {
+        private long[] values = new long[2];
+        private int size;
+
+        private void add(long posting) {
+            // the same word may occur several times in a definition
+            if (size > 0 && values[size - 1] == posting) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = posting;
+        }
+    }
+
+    private final List<Entity> entities = new ArrayList<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<String, Integer> languages = new HashMap<>();
+
+    /**
+     * Adds the entities of an output ontology and closes them.
+     */
+    void add(OntologyEntities ontology) throws IOException {
+        try {
+            String ontologyURI = ontology.ontologyURI();
+            Map<String, String> namespaces = ontology.namespaces();
+            while (ontology.hasNext()) {
+                add(ontology.next(), ontologyURI, namespaces);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            ontology.close();
+        }
+    }
+
+    private void add(RdaEntity entity, String ontologyURI, Map<String, String> namespaces) {
+        // tokenized outside of the lock
+        List<String> tokens = new ArrayList<>();
+        List<SearchIndex.Field> fields = new ArrayList<>();
+        List<String> tokenLanguages = new ArrayList<>();
+        for (String line : entity.lines()) {
+            Matcher matcher = LITERAL_PATTERN.matcher(line);
+            if (!matcher.find()) {
+                continue;
+            }
+            SearchIndex.Field field = field(namespaces.get(matcher.group(1)), matcher.group(2));
+            if (field == null) {
+                continue;
+            }
+            Matcher language = LANGUAGE_PATTERN.matcher(matcher.group(3));
+            String lang = language.find() ? language.group(1).toLowerCase(Locale.ROOT) : "";
+            for (String token : tokenize(unescape(matcher.group(4)))) {
+                tokens.add(token);
+                fields.add(field);
+                tokenLanguages.add(lang);
+            }
+        }
+
+        synchronized (this) {
+            int entityId = entities.size();
+            entities.add(new Entity(entity.uri(), entity.type(), ontologyURI));
+            for (int i = 0; i < tokens.size(); i++) {
+                int languageId = languages.computeIfAbsent(tokenLanguages.get(i), lang -> languages.size());
+                postings.computeIfAbsent(tokens.get(i), term -> new Postings()).add(posting(entityId, fields.get(i).ordinal(), languageId));
+            }
+        }
+    }
+
+    private static long posting(int entityId, int field, int languageId) {
+        return ((long) entityId << 32) | (field << 16) | languageId;
+    }
+
+    private static SearchIndex.Field field(String namespace, String localName) {
+        if (NS_RDFS.equals(namespace) && localName.equals("label")) {
+            return SearchIndex.Field.LABEL;
+        } else if (NS_SKOS.equals(namespace) && localName.equals("prefLabel")) {
+            return SearchIndex.Field.PREF_LABEL;
+        } else if (NS_SKOS.equals(namespace) && localName.equals("definition")) {
+            return SearchIndex.Field.DEFINITION;
+        }
+        return null;
+    }
+
+    /**
+     * Splits the given text into case folded words (sequences of letters and digits).
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(fold(text.substring(start, i)));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    static String fold(String token) {
+        return token.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Replaces the predefined XML entities and character references.
+     */
+    static String unescape(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+        Matcher matcher = ENTITY_PATTERN.matcher(text);
+        StringBuffer out = new StringBuffer(text.length());
+        while (matcher.find()) {
+            String entity = matcher.group(1);
+            String replacement;
+            switch (entity) {
+                case "amp": replacement = "&"; break;
+                case "lt": replacement = "<"; break;
+                case "gt": replacement = ">"; break;
+                case "quot": replacement = "\""; break;
+                case "apos": replacement = "'"; break;
+                default:
+                    int codePoint = entity.startsWith("#x") ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+                    replacement = new String(Character.toChars(codePoint));
+            }
+            matcher.appendReplacement(out, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    /**
+     * Writes the index in the layout described in {@link SearchIndex}.
+     */
+    synchronized void write(File indexFile) throws IOException {
+        if (languages.size() > 0xffff) {
+            throw new IOException("Too many languages for the search index: " + languages.size());
+        }
+
+        // the entities have been added in the order the files have been converted in, which depends on the number
+        // of threads; sorted, the index is the same for every run
+        Integer[] order = new Integer[entities.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer id) -> entities.get(id).uri).thenComparing(id -> String.valueOf(entities.get(id).ontologyURI)));
+        int[] entityIds = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            entityIds[order[i]] = i;
+        }
+
+        String[] languageNames = languages.keySet().toArray(new String[0]);
+        Arrays.sort(languageNames);
+        int[] languageIds = new int[languageNames.length];
+        for (int i = 0; i < languageNames.length; i++) {
+            languageIds[languages.get(languageNames[i])] = i;
+        }
+
+        SortedSet<String> ontologyNames = new TreeSet<>();
+        for (Entity entity : entities) {
+            ontologyNames.add(entity.ontologyURI == null ? "" : entity.ontologyURI);
+        }
+        Map<String, Integer> ontologyIds = new HashMap<>();
+        for (String ontology : ontologyNames) {
+            ontologyIds.put(ontology, ontologyIds.size());
+        }
+
+        // sorted by UTF-8 bytes, the order the index is searched in
+        byte[][] terms = new byte[postings.size()][];
+        int t = 0;
+        for (String term : postings.keySet()) {
+            terms[t++] = term.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(terms, SearchIndex::compare);
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        Map<String, int[]> stringRefs = new HashMap<>();
+        ByteArrayOutputStream tables = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(tables);
+
+        for (String ontology : ontologyNames) {
+            writeRef(out, string(ontology, strings, stringRefs));
+        }
+        for (String language : languageNames) {
+            writeRef(out, string(language, strings, stringRefs));
+        }
+        for (Integer id : order) {
+            Entity entity = entities.get(id);
+            writeRef(out, string(entity.uri, strings, stringRefs));
+            out.writeInt(entity.type == null ? -1 : entity.type.ordinal());
+            out.writeInt(ontologyIds.get(entity.ontologyURI == null ? "" : entity.ontologyURI));
+        }
+
+        List<long[]> termPostings = new ArrayList<>(terms.length);
+        int postingCount = 0;
+        for (byte[] term : terms) {
+            String value = new String(term, StandardCharsets.UTF_8);
+            Postings termValues = postings.get(value);
+            long[] remapped = new long[termValues.size];
+            for (int i = 0; i < termValues.size; i++) {
+                long posting = termValues.values[i];
+                remapped[i] = posting(entityIds[(int) (posting >>> 32)], (int) (posting >>> 16) & 0xffff, languageIds[(int) posting & 0xffff]);
+            }
+            Arrays.sort(remapped);
+            int distinct = 0;
+            for (int i = 0; i < remapped.length; i++) {
+                if (distinct == 0 || remapped[i] != remapped[distinct - 1]) {
+                    remapped[distinct++] = remapped[i];
+                }
+            }
+            remapped = Arrays.copyOf(remapped, distinct);
+            termPostings.add(remapped);
+
+            writeRef(out, string(value, strings, stringRefs));
+            out.writeInt(postingCount);
+            out.writeInt(remapped.length);
+            postingCount += remapped.length;
+        }
+        for (long[] remapped : termPostings) {
+            for (long posting : remapped) {
+                out.writeInt((int) (posting >>> 32));
+                out.writeShort((int) posting & 0xffff);
+                out.writeByte((int) (posting >>> 16) & 0xff);
+                out.writeByte(0);
+            }
+        }
+        out.flush();
+
+        DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            file.write(SearchIndex.MAGIC);
+            file.writeInt(SearchIndex.VERSION);
+            file.writeInt(ontologyNames.size());
+            file.writeInt(languageNames.length);
+            file.writeInt(entities.size());
+            file.writeInt(terms.length);
+            file.writeInt(postingCount);
+            file.writeInt(strings.size());
+            strings.writeTo(file);
+            tables.writeTo(file);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static int[] string(String value, ByteArrayOutputStream strings, Map<String, int[]> stringRefs) throws IOException {
+        int[] ref = stringRefs.get(value);
+        if (ref == null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ref = new int[] {strings.size(), bytes.length};
+            strings.write(bytes);
+            stringRefs.put(value, ref);
+        }
+        return ref;
+    }
+
+    private static void writeRef(DataOutputStream out, int[] ref) throws IOException {
+        out.writeInt(ref[0]);
+        out.writeInt(ref[1]);
+    }
+}
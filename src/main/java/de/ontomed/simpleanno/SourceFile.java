@@ -0,0 +1,69 @@
+package de.ontomed.simpleanno;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input file of the RDA release, addressed by its path relative to the release's {@code xml} folder
+ * (e.g. {@code Elements/w/datatype.xml}), independent of whether it lives in an extracted folder or in the release zip.
+ */
+abstract class SourceFile {
+
+    private final String path;
+
+    SourceFile(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the path relative to the {@code xml} folder, using '/' as separator
+     */
+    String path() {
+        return path;
+    }
+
+    /**
+     * @return the file name, e.g. {@code datatype.xml}
+     */
+    String name() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return the name of the folder containing this file, e.g. {@code w} for {@code Elements/w/datatype.xml}
+     */
+    String parentName() {
+        int end = path.lastIndexOf('/');
+        if (end < 0) {
+            return "";
+        }
+        return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    /**
+     * @return the name of the folder two levels up, e.g. {@code Elements} for {@code Elements/w/datatype.xml}
+     */
+    String grandParentName() {
+        int end = path.lastIndexOf('/');
+        if (end < 0) {
+            return "";
+        }
+        end = path.lastIndexOf('/', end - 1);
+        if (end < 0) {
+            return "";
+        }
+        return path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    /**
+     * @return the uncompressed size in bytes, or -1 if unknown
+     */
+    abstract long size();
+
+    abstract InputStream open() throws IOException;
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,62 @@
+package de.ontomed.simpleanno;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a stage of a conversion run (version probe, download, extraction, a single file, ...).
+ * Recorded with e.g. {@code java -XX:StartFlightRecording=filename=rda2owl.jfr -jar rda2owl.jar}.
+ * <p>
+ * Only referenced through {@link RunMetrics}, which checks that the running VM has the {@code jdk.jfr} API before this
+ * class is loaded.
+ */
+@Name("de.ontomed.simpleanno.Stage")
+@Label("RDA2OWL Stage")
+@Category("RDA2OWL")
+@Description("A stage of an RDA to OWL conversion run")
+@StackTrace(false)
+class StageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("File")
+    @Description("The input file, for the conversion of a single file")
+    String file;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Lines")
+    long lines;
+
+    /**
+     * @return the started event, typed as Object so that callers do not depend on the jdk.jfr API
+     */
+    static Object begin(String stage, String file) {
+        StageEvent event = new StageEvent();
+        event.stage = stage;
+        event.file = file;
+        event.begin();
+        return event;
+    }
+
+    static void end(Object event) {
+        ((StageEvent) event).end();
+    }
+
+    static void commit(Object event, long bytes, long lines) {
+        StageEvent stageEvent = (StageEvent) event;
+        if (stageEvent.shouldCommit()) {
+            stageEvent.bytes = bytes;
+            stageEvent.lines = lines;
+            stageEvent.commit();
+        }
+    }
+}
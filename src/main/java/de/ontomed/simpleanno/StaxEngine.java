@@ -0,0 +1,462 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.stream.*;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import static de.ontomed.simpleanno.RDA2OWL.NS_OWL;
+
+/**
+ * Conversion engine based on a StAX pull parser. In contrast to the {@link LineEngine} it does not depend on the line
+ * layout or attribute order of the input. The rdf:Description elements are rewritten as events.
+ *
+ * <p>Events are written out as soon as possible. Only the events of an entity are held back until its end, because
+ * the name of its start element depends on its type, which is the last known rdf:type of the entity like in the line
+ * engine. So memory use depends on the size of an entity, never on the size of the file.</p>
+ */
+class StaxEngine implements ConversionEngine {
+
+    static final String NS_RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    static final String NS_SKOS = "http://www.w3.org/2004/02/skos/core#";
+
+    // the factories are not guaranteed to be thread safe
+    static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+
+    private static final ThreadLocal<XMLOutputFactory> OUTPUT_FACTORY = ThreadLocal.withInitial(XMLOutputFactory::newInstance);
+
+    @Override
+    public String name() {
+        return "stax";
+    }
+
+    @Override
+    public String convert(SourceFile inputFile, File outputFile, PropertyTypes propertyTypes, ConversionCounts counts) throws IOException {
+        ConversionCounts.LineFeedInputStream in = new ConversionCounts.LineFeedInputStream(new BufferedInputStream(inputFile.open()), counts);
+        Writer out = new AsyncFileWriter(outputFile);
+        XMLStreamReader reader = null;
+        XMLStreamWriter writer = null;
+        try {
+            reader = INPUT_FACTORY.get().createXMLStreamReader(in);
+            writer = OUTPUT_FACTORY.get().createXMLStreamWriter(out);
+            String ontologyURI = new Conversion(reader, writer, propertyTypes, counts, inputFile.parentName().equals("termList")).run();
+            writer.flush();
+            in.finish();
+            // waits for the file to be written, write errors are reported here
+            out.close();
+            return ontologyURI;
+        } catch (XMLStreamException e) {
+            throw new IOException("Error converting " + inputFile.path() + ": " + e.getMessage(), e);
+        } finally {
+            // after a failure, errors while closing must not hide the one that caused it
+            closeQuietly(reader);
+            closeQuietly(writer);
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+            }
+        }
+    }
+
+    private static void closeQuietly(XMLStreamWriter writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (XMLStreamException ignored) {
+            }
+        }
+    }
+
+    /**
+     * A parsing event that has been read but not yet written. Instances are recycled.
+     */
+    private static final class Event {
+        int kind;
+        boolean whitespace;
+        String prefix;
+        String localName;
+        String namespaceURI;
+        String text;
+        String target;
+        // quadruples of prefix, namespace URI, local name, value
+        final ArrayList<String> attributes = new ArrayList<>();
+        // pairs of prefix, namespace URI
+        final ArrayList<String> namespaces = new ArrayList<>();
+
+        void setName(String prefix, String localName, String namespaceURI) {
+            this.prefix = prefix == null ? "" : prefix;
+            this.localName = localName;
+            this.namespaceURI = namespaceURI == null ? "" : namespaceURI;
+        }
+
+        void addAttribute(String prefix, String namespaceURI, String localName, String value) {
+            attributes.add(prefix == null ? "" : prefix);
+            attributes.add(namespaceURI == null ? "" : namespaceURI);
+            attributes.add(localName);
+            attributes.add(value);
+        }
+    }
+
+    /**
+     * State of a single file conversion.
+     */
+    private static final class Conversion {
+
+        private final XMLStreamReader reader;
+        private final XMLStreamWriter writer;
+        private final PropertyTypes propertyTypes;
+        private final ConversionCounts counts;
+        private final boolean termList;
+
+        private final ArrayDeque<Event> queue = new ArrayDeque<>();
+        private final ArrayDeque<Event> free = new ArrayDeque<>();
+
+        private String owlPrefix = "owl";
+        private String ontologyURI;
+        private boolean headerDone;
+        private boolean insideHeader;
+
+        // while true, the events of the current entity are held back until its end, when its type is known
+        private boolean holding;
+        private boolean insideEntity;
+        private Event entityStart;
+        private String entityURI;
+        private String entityPrefix;
+        private String entityLocalName;
+        private String entityNamespaceURI;
+        // the type the current entity is written with, null while it is an rdf:Description
+        private TYPE entityType;
+
+        // > 0 while skipping an rdf:type element
+        private int skipDepth;
+
+        Conversion(XMLStreamReader reader, XMLStreamWriter writer, PropertyTypes propertyTypes, ConversionCounts counts, boolean termList) {
+            this.reader = reader;
+            this.writer = writer;
+            this.propertyTypes = propertyTypes;
+            this.counts = counts;
+            this.termList = termList;
+        }
+
+        String run() throws XMLStreamException {
+            int depth = 0;
+
+            writer.writeStartDocument("UTF-8", reader.getVersion() == null ? "1.0" : reader.getVersion());
+            writer.writeCharacters("\n");
+
+            while (reader.hasNext()) {
+                int kind = reader.next();
+                switch (kind) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        if (skipDepth > 0) {
+                            skipDepth++;
+                        } else if (depth == 1) {
+                            handleRoot();
+                        } else if (depth == 2) {
+                            handleTopLevelElement();
+                        } else if (depth == 3 && insideEntity && isRdf("type") && reader.getAttributeValue(NS_RDF, "resource") != null) {
+                            handleType(reader.getAttributeValue(NS_RDF, "resource"));
+                        } else {
+                            enqueue(copyStartElement());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (skipDepth > 0) {
+                            skipDepth--;
+                        } else if (depth == 2 && insideHeader) {
+                            insideHeader = false;
+                            enqueue(endElement(owlPrefix, "Ontology", NS_OWL));
+                        } else if (depth == 2 && insideEntity) {
+                            insideEntity = false;
+                            holding = false;
+                            entityStart = null;
+                            counts.entity(entityType);
+                            enqueue(endElement(entityPrefix, entityLocalName, entityNamespaceURI));
+                        } else {
+                            enqueue(endElement(reader.getPrefix(), reader.getLocalName(), reader.getNamespaceURI()));
+                        }
+                        depth--;
+                        if (depth == 0) {
+                            enqueue(characters("\n"));
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (skipDepth == 0) {
+                            Event event = characters(reader.getText());
+                            event.whitespace = reader.isWhiteSpace();
+                            enqueue(event);
+                        }
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        if (skipDepth == 0) {
+                            Event event = obtain(kind);
+                            event.text = reader.getText();
+                            enqueue(event);
+                            if (depth == 0) {
+                                enqueue(characters("\n"));
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (skipDepth == 0) {
+                            Event event = obtain(kind);
+                            event.target = reader.getPITarget();
+                            event.text = reader.getPIData();
+                            enqueue(event);
+                            if (depth == 0) {
+                                enqueue(characters("\n"));
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.DTD:
+                        Event event = obtain(kind);
+                        event.text = reader.getText();
+                        enqueue(event);
+                        enqueue(characters("\n"));
+                        break;
+                    default:
+                        break;
+                }
+
+                if (!holding) {
+                    drain(false);
+                }
+            }
+
+            drain(true);
+            writer.writeEndDocument();
+            writer.flush();
+
+            return ontologyURI;
+        }
+
+        private void handleRoot() {
+            Event root = copyStartElement();
+
+            String declaredOwlPrefix = null;
+            for (int i = 0; i < root.namespaces.size(); i += 2) {
+                if (NS_OWL.equals(root.namespaces.get(i + 1))) {
+                    declaredOwlPrefix = root.namespaces.get(i);
+                }
+            }
+            if (declaredOwlPrefix == null || declaredOwlPrefix.isEmpty()) {
+                root.namespaces.add("owl");
+                root.namespaces.add(NS_OWL);
+            } else {
+                owlPrefix = declaredOwlPrefix;
+            }
+
+            enqueue(root);
+        }
+
+        private void handleTopLevelElement() {
+            String about = reader.getAttributeValue(NS_RDF, "about");
+
+            if (!headerDone && !termList && about != null && isRdf("Description")) {
+                // the first rdf:Description becomes the owl:Ontology declaration
+                headerDone = true;
+                insideHeader = true;
+                ontologyURI = about;
+                enqueue(ontologyElement(about));
+            } else if (!headerDone && termList && about != null && isElement(NS_SKOS, "ConceptScheme")) {
+                // the concept scheme is kept, the ontology declaration is added in front of it
+                headerDone = true;
+                ontologyURI = about;
+                Event last = queue.peekLast();
+                String indentation = last != null && last.whitespace ? last.text : "\n";
+                enqueue(ontologyElement(about));
+                enqueue(endElement(owlPrefix, "Ontology", NS_OWL));
+                enqueue(characters(indentation));
+                enqueue(copyStartElement());
+            } else if (headerDone && about != null && isRdf("Description")) {
+                insideEntity = true;
+                holding = true;
+                entityURI = about;
+                entityType = null;
+                entityStart = copyStartElement();
+                entityPrefix = entityStart.prefix;
+                entityLocalName = entityStart.localName;
+                entityNamespaceURI = entityStart.namespaceURI;
+                enqueue(entityStart);
+            } else {
+                enqueue(copyStartElement());
+            }
+        }
+
+        private void handleType(String typeURI) {
+            // rdf:type elements are dropped, together with the indentation in front of them
+            skipDepth = 1;
+            Event last = queue.peekLast();
+            if (last != null && last.kind == XMLStreamConstants.CHARACTERS && last.whitespace) {
+                recycle(queue.pollLast());
+            }
+
+            TYPE type = TYPE.forTypeURI(typeURI, propertyTypes.typeOf(entityURI));
+            if (type != null && holding) {
+                // rename the rdf:Description start element, its attributes are kept; a later known type renames it
+                // again, the last one wins like in the line engine
+                entityStart.setName(owlPrefix, type.element(), NS_OWL);
+
+                entityPrefix = owlPrefix;
+                entityLocalName = type.element();
+                entityNamespaceURI = NS_OWL;
+                entityType = type;
+            }
+        }
+
+        private boolean isRdf(String localName) {
+            return isElement(NS_RDF, localName);
+        }
+
+        private boolean isElement(String namespaceURI, String localName) {
+            return namespaceURI.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+        }
+
+        private Event obtain(int kind) {
+            Event event = free.pollFirst();
+            if (event == null) {
+                event = new Event();
+            }
+            event.kind = kind;
+            event.whitespace = false;
+            return event;
+        }
+
+        private void recycle(Event event) {
+            event.attributes.clear();
+            event.namespaces.clear();
+            event.text = null;
+            event.target = null;
+            free.addFirst(event);
+        }
+
+        private Event copyStartElement() {
+            Event event = obtain(XMLStreamConstants.START_ELEMENT);
+            event.setName(reader.getPrefix(), reader.getLocalName(), reader.getNamespaceURI());
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = reader.getNamespacePrefix(i);
+                event.namespaces.add(prefix == null ? "" : prefix);
+                event.namespaces.add(reader.getNamespaceURI(i));
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                event.addAttribute(reader.getAttributePrefix(i), reader.getAttributeNamespace(i), reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+            return event;
+        }
+
+        private Event ontologyElement(String about) {
+            Event event = obtain(XMLStreamConstants.START_ELEMENT);
+            event.setName(owlPrefix, "Ontology", NS_OWL);
+            String rdfPrefix = reader.getNamespaceContext().getPrefix(NS_RDF);
+            event.addAttribute(rdfPrefix, NS_RDF, "about", about);
+            return event;
+        }
+
+        private Event endElement(String prefix, String localName, String namespaceURI) {
+            Event event = obtain(XMLStreamConstants.END_ELEMENT);
+            event.setName(prefix, localName, namespaceURI);
+            return event;
+        }
+
+        private Event characters(String text) {
+            Event event = obtain(XMLStreamConstants.CHARACTERS);
+            event.text = text;
+            return event;
+        }
+
+        private void enqueue(Event event) {
+            queue.addLast(event);
+        }
+
+        /**
+         * Writes the queued events. Unless {@code all} is set, a trailing start element is kept back (it may turn out
+         * to be an empty element) as well as trailing whitespace (it may precede an rdf:type element to be dropped).
+         */
+        private void drain(boolean all) throws XMLStreamException {
+            while (!queue.isEmpty()) {
+                Event event = queue.pollFirst();
+                Event next = queue.peekFirst();
+
+                if (next == null && !all && (event.kind == XMLStreamConstants.START_ELEMENT || event.whitespace)) {
+                    queue.addFirst(event);
+                    return;
+                }
+
+                switch (event.kind) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (next != null && next.kind == XMLStreamConstants.END_ELEMENT) {
+                            writeStartElement(event, true);
+                            recycle(queue.pollFirst());
+                        } else {
+                            writeStartElement(event, false);
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        writer.writeEndElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                        writer.writeCharacters(event.text);
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        writer.writeComment(event.text);
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (event.text == null || event.text.isEmpty()) {
+                            writer.writeProcessingInstruction(event.target);
+                        } else {
+                            writer.writeProcessingInstruction(event.target, event.text);
+                        }
+                        break;
+                    case XMLStreamConstants.DTD:
+                        writer.writeDTD(event.text);
+                        break;
+                    default:
+                        break;
+                }
+
+                recycle(event);
+            }
+        }
+
+        private void writeStartElement(Event event, boolean empty) throws XMLStreamException {
+            if (empty) {
+                writer.writeEmptyElement(event.prefix, event.localName, event.namespaceURI);
+            } else {
+                writer.writeStartElement(event.prefix, event.localName, event.namespaceURI);
+            }
+            for (int i = 0; i < event.namespaces.size(); i += 2) {
+                if (event.namespaces.get(i).isEmpty()) {
+                    writer.writeDefaultNamespace(event.namespaces.get(i + 1));
+                } else {
+                    writer.writeNamespace(event.namespaces.get(i), event.namespaces.get(i + 1));
+                }
+            }
+            for (int i = 0; i < event.attributes.size(); i += 4) {
+                if (event.attributes.get(i).isEmpty()) {
+                    writer.writeAttribute(event.attributes.get(i + 2), event.attributes.get(i + 3));
+                } else {
+                    writer.writeAttribute(event.attributes.get(i), event.attributes.get(i + 1), event.attributes.get(i + 2), event.attributes.get(i + 3));
+                }
+            }
+        }
+    }
+}
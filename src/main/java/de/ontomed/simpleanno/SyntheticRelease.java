@@ -0,0 +1,291 @@
+package de.ontomed.simpleanno;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates a synthetic, RDA shaped release: property element sets with their {@code datatype.xml} and
+ * {@code object.xml} companions, class element sets and SKOS term lists, laid out like the files of the real release.
+ * The output only depends on the seed and the configured sizes, so it can be used to measure the converter without
+ * network access.
+ */
+class SyntheticRelease {
+
+    private static final String[] LANGUAGES = {"en", "de", "fr", "es", "it"};
+
+    private static final String[] WORDS = {"work", "expression", "manifestation", "item", "agent", "person", "family",
+            "corporate", "body", "nomen", "place", "timespan", "title", "date", "extent", "carrier", "content", "media",
+            "note", "relationship", "identifier", "statement", "\u00e9dition", "gr\u00f6\u00dfe", "designation", "part"};
+
+    private static final String NAMESPACES = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<rdf:RDF\n" +
+            "    xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n" +
+            "    xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"\n" +
+            "    xmlns:skos=\"http://www.w3.org/2004/02/skos/core#\"\n" +
+            "    xmlns:dc=\"http://purl.org/dc/elements/1.1/\"\n" +
+            "    xmlns:dct=\"http://purl.org/dc/terms/\"\n" +
+            "    xmlns:reg=\"http://metadataregistry.org/uri/profile/regap/\"\n" +
+            "    xmlns:rdakit=\"http://metadataregistry.org/uri/profile/rdakit/\">\n" +
+            "\n";
+
+    private final long seed;
+    private int propertySets = 4;
+    private int propertiesPerSet = 400;
+    private int classSets = 1;
+    private int classesPerSet = 20;
+    private int termLists = 20;
+    private int conceptsPerTermList = 60;
+    private int annotationsPerEntity = 6;
+
+    SyntheticRelease(long seed) {
+        this.seed = seed;
+    }
+
+    SyntheticRelease propertySets(int propertySets, int propertiesPerSet) {
+        this.propertySets = propertySets;
+        this.propertiesPerSet = propertiesPerSet;
+        return this;
+    }
+
+    SyntheticRelease classSets(int classSets, int classesPerSet) {
+        this.classSets = classSets;
+        this.classesPerSet = classesPerSet;
+        return this;
+    }
+
+    SyntheticRelease termLists(int termLists, int conceptsPerTermList) {
+        this.termLists = termLists;
+        this.conceptsPerTermList = conceptsPerTermList;
+        return this;
+    }
+
+    /**
+     * @param annotationsPerEntity the number of annotation lines (labels, definitions, notes, ...) per entity
+     */
+    SyntheticRelease annotationsPerEntity(int annotationsPerEntity) {
+        this.annotationsPerEntity = annotationsPerEntity;
+        return this;
+    }
+
+    /**
+     * Writes the {@code Elements} and {@code termList} folders to the given {@code xml} folder.
+     */
+    void writeTree(File xmlFolder) throws IOException {
+        for (String path : paths()) {
+            File file = new File(xmlFolder, path);
+            file.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content(path));
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a release zip with the same layout as the ones downloaded from GitHub, i.e. with all files below
+     * {@code RDA-Vocabularies-<version>/xml/}.
+     */
+    void writeZip(File zipFile, String version) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+        try {
+            String prefix = "RDA-Vocabularies-" + version + "/";
+            out.putNextEntry(new ZipEntry(prefix + "README.md"));
+            out.write(("Synthetic RDA release " + version + "\n").getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            for (String path : paths()) {
+                out.putNextEntry(new ZipEntry(prefix + "xml/" + path));
+                out.write(content(path));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the paths of all files of the release, relative to the {@code xml} folder
+     */
+    String[] paths() {
+        String[] paths = new String[3 * propertySets + classSets + termLists];
+        int i = 0;
+        for (int set = 0; set < propertySets; set++) {
+            paths[i++] = "Elements/" + propertySetName(set) + ".xml";
+            paths[i++] = "Elements/" + propertySetName(set) + "/datatype.xml";
+            paths[i++] = "Elements/" + propertySetName(set) + "/object.xml";
+        }
+        for (int set = 0; set < classSets; set++) {
+            paths[i++] = "Elements/" + classSetName(set) + ".xml";
+        }
+        for (int list = 0; list < termLists; list++) {
+            paths[i++] = "termList/" + termListName(list) + ".xml";
+        }
+        return paths;
+    }
+
+    /**
+     * @param path a path as returned by {@link #paths()}
+     * @return the file content
+     */
+    byte[] content(String path) {
+        String[] segments = path.split("/");
+        String content;
+        if (segments[0].equals("termList")) {
+            content = termList(segments[1].substring(0, segments[1].length() - 4));
+        } else if (segments.length == 3) {
+            content = propertySet(segments[1], segments[2].substring(0, segments[2].length() - 4));
+        } else {
+            String name = segments[1].substring(0, segments[1].length() - 4);
+            content = name.startsWith("c") ? classSet(name) : propertySet(name, null);
+        }
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String propertySetName(int set) {
+        return set == 0 ? "w" : "p" + set;
+    }
+
+    private static String classSetName(int set) {
+        return set == 0 ? "c" : "c" + set;
+    }
+
+    private static String termListName(int list) {
+        return "RDATerms" + (1000 + list);
+    }
+
+    private Random random(String name) {
+        return new Random(seed * 31 + name.hashCode());
+    }
+
+    private String propertySet(String name, String variant) {
+        // the random generator only depends on the set, so the three files define the same properties
+        Random random = random(name);
+        String baseURI = "http://rdaregistry.info/Elements/" + name + "/";
+        String namespace = variant == null ? baseURI : baseURI + variant + "/";
+
+        StringBuilder out = new StringBuilder(NAMESPACES);
+        header(out, namespace, "RDA " + name + " properties" + (variant == null ? "" : " (" + variant + ")"));
+
+        for (int i = 0; i < propertiesPerSet; i++) {
+            boolean objectProperty = random.nextInt(10) < 7;
+            String annotations = annotations(random, i);
+            int superProperty = i > 0 && random.nextInt(3) == 0 ? random.nextInt(i) : -1;
+            if ("object".equals(variant) && !objectProperty) {
+                // only "real" datatype properties have no counterpart in object.xml
+                continue;
+            }
+            String uri = namespace + "P" + (10001 + i);
+            out.append("  <rdf:Description rdf:about=\"").append(uri).append("\">\n");
+            out.append("    <rdf:type rdf:resource=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#Property\"/>\n");
+            out.append(annotations);
+            if (variant != null) {
+                out.append("    <rdfs:subPropertyOf rdf:resource=\"").append(baseURI).append("P").append(10001 + i).append("\"/>\n");
+            } else if (superProperty >= 0) {
+                out.append("    <rdfs:subPropertyOf rdf:resource=\"").append(baseURI).append("P").append(10001 + superProperty).append("\"/>\n");
+            }
+            out.append("  </rdf:Description>\n");
+        }
+
+        out.append("</rdf:RDF>\n");
+        return out.toString();
+    }
+
+    private String classSet(String name) {
+        Random random = random(name);
+        String namespace = "http://rdaregistry.info/Elements/" + name + "/";
+
+        StringBuilder out = new StringBuilder(NAMESPACES);
+        header(out, namespace, "RDA " + name + " classes");
+
+        for (int i = 0; i < classesPerSet; i++) {
+            out.append("  <rdf:Description rdf:about=\"").append(namespace).append("C").append(10001 + i).append("\">\n");
+            out.append("    <rdf:type rdf:resource=\"http://www.w3.org/2002/07/owl#Class\"/>\n");
+            out.append(annotations(random, i));
+            if (i > 0 && random.nextInt(2) == 0) {
+                out.append("    <rdfs:subClassOf rdf:resource=\"").append(namespace).append("C").append(10001 + random.nextInt(i)).append("\"/>\n");
+            }
+            out.append("  </rdf:Description>\n");
+        }
+
+        out.append("</rdf:RDF>\n");
+        return out.toString();
+    }
+
+    private String termList(String name) {
+        Random random = random(name);
+        String schemeURI = "http://rdaregistry.info/termList/" + name;
+
+        StringBuilder out = new StringBuilder(NAMESPACES);
+        out.append("  <skos:ConceptScheme rdf:about=\"").append(schemeURI).append("\">\n");
+        out.append("    <dc:title xml:lang=\"en\">").append(name).append("</dc:title>\n");
+        out.append("    <reg:status rdf:resource=\"http://metadataregistry.org/uri/RegStatus/1001\"/>\n");
+        out.append("  </skos:ConceptScheme>\n");
+
+        for (int i = 0; i < conceptsPerTermList; i++) {
+            out.append("  <rdf:Description rdf:about=\"").append(schemeURI).append("/").append(1001 + i).append("\">\n");
+            out.append("    <rdf:type rdf:resource=\"http://www.w3.org/2004/02/skos/core#Concept\"/>\n");
+            out.append("    <skos:inScheme rdf:resource=\"").append(schemeURI).append("\"/>\n");
+            for (int a = 0; a < annotationsPerEntity; a++) {
+                String language = LANGUAGES[a % LANGUAGES.length];
+                String element = a < LANGUAGES.length ? "skos:prefLabel" : (a % 2 == 0 ? "skos:definition" : "skos:scopeNote");
+                out.append("    <").append(element).append(" xml:lang=\"").append(language).append("\">")
+                        .append(words(random, element.equals("skos:prefLabel") ? 2 : 12)).append("</").append(element).append(">\n");
+            }
+            if (i > 0 && random.nextInt(2) == 0) {
+                out.append("    <skos:broader rdf:resource=\"").append(schemeURI).append("/").append(1001 + random.nextInt(i)).append("\"/>\n");
+            }
+            out.append("  </rdf:Description>\n");
+        }
+
+        out.append("</rdf:RDF>\n");
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String namespace, String title) {
+        out.append("  <rdf:Description rdf:about=\"").append(namespace).append("\">\n");
+        out.append("    <dc:title xml:lang=\"en\">").append(title).append("</dc:title>\n");
+        out.append("    <dct:description xml:lang=\"en\">Synthetic element set for benchmarking</dct:description>\n");
+        out.append("  </rdf:Description>\n");
+    }
+
+    private String annotations(Random random, int index) {
+        StringBuilder out = new StringBuilder();
+        for (int a = 0; a < annotationsPerEntity; a++) {
+            String language = LANGUAGES[(a / 4) % LANGUAGES.length];
+            switch (a % 4) {
+                case 0:
+                    out.append("    <rdfs:label xml:lang=\"").append(language).append("\">").append(words(random, 3)).append("</rdfs:label>\n");
+                    break;
+                case 1:
+                    out.append("    <skos:definition xml:lang=\"").append(language).append("\">").append(words(random, 20)).append("</skos:definition>\n");
+                    break;
+                case 2:
+                    out.append("    <rdakit:toolkitLabel xml:lang=\"").append(language).append("\">").append(words(random, 3)).append("</rdakit:toolkitLabel>\n");
+                    break;
+                default:
+                    out.append("    <reg:status rdf:resource=\"http://metadataregistry.org/uri/RegStatus/100").append(1 + index % 2).append("\"/>\n");
+                    break;
+            }
+        }
+        return out.toString();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        // some definitions contain markup characters
+        if (count > 10 && random.nextInt(4) == 0) {
+            words.append(" &amp; &lt;note&gt;");
+        }
+        return words.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package de.ontomed.simpleanno;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static de.ontomed.simpleanno.StaxEngine.NS_RDF;
+
+/**
+ * Turns a written OWL file into N-Triples statements. The file is parsed once, as one document, so the statements
+ * are exactly the ones of the file: entities have their OWL type as element name, the ontology header is a node
+ * element like any other.
+ * <p>
+ * Only the subset of RDF/XML written by the engines is supported: node elements with an rdf:about, containing
+ * property elements that either have an rdf:resource or a (language tagged or typed) literal. Anything else is
+ * skipped.
+ */
+class TripleExtractor {
+
+    private static final String RDF_TYPE = "<" + NS_RDF + "type>";
+    private static final String NS_XML = "http://www.w3.org/XML/1998/namespace";
+
+    private TripleExtractor() {
+    }
+
+    /**
+     * Adds the statements of the given OWL file to the sorter.
+     */
+    static void extract(File owlFile, TripleSorter triples) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(owlFile), 1 << 16);
+        try {
+            XMLStreamReader reader = StaxEngine.INPUT_FACTORY.get().createXMLStreamReader(in);
+            try {
+                parseNodes(reader, triples);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to extract statements from " + owlFile + ": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void parseNodes(XMLStreamReader reader, TripleSorter triples) throws XMLStreamException, IOException {
+        int depth = 0;
+        String subject = null;
+        String predicate = null;
+        String language = null;
+        String datatype = null;
+        StringBuilder text = new StringBuilder();
+        // > 0 while skipping an element we do not support
+        int skipDepth = 0;
+
+        while (reader.hasNext()) {
+            int kind = reader.next();
+            if (kind == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (skipDepth > 0) {
+                    skipDepth++;
+                } else if (depth == 1) {
+                    // rdf:RDF
+                    continue;
+                } else if (depth == 2) {
+                    String about = reader.getAttributeValue(NS_RDF, "about");
+                    if (about == null) {
+                        skipDepth = 1;
+                        continue;
+                    }
+                    subject = iri(about);
+                    if (!isRdf(reader, "Description")) {
+                        triples.add(subject + " " + RDF_TYPE + " " + iri(reader.getNamespaceURI() + reader.getLocalName()) + " .");
+                    }
+                } else if (depth == 3) {
+                    predicate = iri(reader.getNamespaceURI() + reader.getLocalName());
+                    String resource = reader.getAttributeValue(NS_RDF, "resource");
+                    if (resource != null) {
+                        triples.add(subject + " " + predicate + " " + iri(resource) + " .");
+                        predicate = null;
+                        skipDepth = 1;
+                    } else {
+                        language = reader.getAttributeValue(NS_XML, "lang");
+                        datatype = reader.getAttributeValue(NS_RDF, "datatype");
+                        text.setLength(0);
+                    }
+                } else {
+                    // nested node elements or XML literals, not used in the RDA files
+                    predicate = null;
+                    skipDepth = 1;
+                }
+            } else if (kind == XMLStreamConstants.END_ELEMENT) {
+                if (skipDepth > 0) {
+                    skipDepth--;
+                } else if (depth == 3 && predicate != null) {
+                    triples.add(subject + " " + predicate + " " + literal(text.toString(), language, datatype) + " .");
+                    predicate = null;
+                }
+                depth--;
+            } else if ((kind == XMLStreamConstants.CHARACTERS || kind == XMLStreamConstants.CDATA) && depth == 3 && skipDepth == 0) {
+                text.append(reader.getText());
+            }
+        }
+    }
+
+    private static boolean isRdf(XMLStreamReader reader, String localName) {
+        return NS_RDF.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+    }
+
+    static String iri(String iri) {
+        StringBuilder out = new StringBuilder(iri.length() + 2).append('<');
+        for (int i = 0; i < iri.length(); i++) {
+            char c = iri.charAt(i);
+            if (c <= ' ' || c == '<' || c == '>' || c == '"' || c == '{' || c == '}' || c == '|' || c == '^' || c == '`' || c == '\\') {
+                out.append(String.format("\\u%04X", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('>').toString();
+    }
+
+    static String literal(String value, String language, String datatype) {
+        StringBuilder out = new StringBuilder(value.length() + 16).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default: out.append(c); break;
+            }
+        }
+        out.append('"');
+        if (language != null && !language.isEmpty()) {
+            out.append('@').append(language);
+        } else if (datatype != null) {
+            out.append("^^").append(iri(datatype));
+        }
+        return out.toString();
+    }
+}
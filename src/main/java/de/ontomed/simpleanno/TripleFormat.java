@@ -0,0 +1,210 @@
+package de.ontomed.simpleanno;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Load optimized output formats, written in addition to the OWL (RDF/XML) files.
+ */
+enum TripleFormat {
+
+    /**
+     * Sorted N-Triples, UTF-8 encoded.
+     */
+    NT("nt", ".nt"),
+
+    /**
+     * Sorted N-Triples, gzip compressed.
+     */
+    NT_GZ("nt.gz", ".nt.gz"),
+
+    /**
+     * A dictionary of all terms (IRIs and literals in N-Triples syntax, sorted) followed by the statements as
+     * triples of dictionary indexes. See {@link #writeBinary} for the layout.
+     */
+    BINARY("bin", ".rdfb");
+
+    private static final byte[] BINARY_MAGIC = {'R', 'D', 'F', 'B'};
+    private static final int BINARY_VERSION = 1;
+
+    private final String name;
+    private final String extension;
+
+    TripleFormat(String name, String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    /**
+     * @return the name used to select the format on the command line
+     */
+    String formatName() {
+        return name;
+    }
+
+    /**
+     * @return the file name extension, including the leading dot
+     */
+    String extension() {
+        return extension;
+    }
+
+    static TripleFormat forName(String name) {
+        for (TripleFormat format : values()) {
+            if (format.name.equals(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format \"" + name + "\", expected one of: nt, nt.gz, bin");
+    }
+
+    /**
+     * @param names a comma separated list of format names, may be empty
+     */
+    static EnumSet<TripleFormat> forNames(String names) {
+        EnumSet<TripleFormat> formats = EnumSet.noneOf(TripleFormat.class);
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                formats.add(forName(name.trim()));
+            }
+        }
+        return formats;
+    }
+
+    /**
+     * @return the file next to the given OWL file in which this format is written
+     */
+    File outputFile(File owlFile) {
+        String name = owlFile.getName();
+        return new File(owlFile.getParentFile(), name.substring(0, name.length() - ".owl".length()) + extension);
+    }
+
+    /**
+     * @param triples the statements, written sorted and without duplicates
+     */
+    void write(TripleSorter triples, File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try {
+            switch (this) {
+                case NT:
+                    writeNTriples(triples, out);
+                    break;
+                case NT_GZ:
+                    GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16);
+                    writeNTriples(triples, gzip);
+                    gzip.finish();
+                    break;
+                case BINARY:
+                    writeBinary(triples, new DataOutputStream(out));
+                    break;
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeNTriples(TripleSorter triples, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        triples.forEach(triple -> {
+            writer.write(triple);
+            writer.write('\n');
+        });
+        writer.flush();
+    }
+
+    /**
+     * Layout (big endian): the magic bytes {@code RDFB}, the version (int), the number of terms (int), the terms
+     * (each as int length and UTF-8 bytes of its N-Triples form, sorted), the number of statements (int) and the
+     * statements (subject, predicate and object index, each as unsigned LEB128 varint).
+     * <p>
+     * The statements are read twice: once to collect the dictionary, which is held in memory, and once to write them.
+     */
+    private static void writeBinary(TripleSorter triples, DataOutputStream out) throws IOException {
+        TreeMap<String, Integer> dictionary = new TreeMap<>();
+        int[] count = new int[1];
+        triples.forEach(triple -> {
+            for (String term : split(triple)) {
+                dictionary.put(term, 0);
+            }
+            count[0]++;
+        });
+
+        out.write(BINARY_MAGIC);
+        out.writeInt(BINARY_VERSION);
+        out.writeInt(dictionary.size());
+        int index = 0;
+        for (Map.Entry<String, Integer> term : dictionary.entrySet()) {
+            term.setValue(index++);
+            byte[] bytes = term.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        out.writeInt(count[0]);
+        triples.forEach(triple -> {
+            for (String term : split(triple)) {
+                writeVarInt(out, dictionary.get(term));
+            }
+        });
+        out.flush();
+    }
+
+    /**
+     * Reads a file written in the binary format.
+     * @return the N-Triples statements, in the order they have been written
+     */
+    static List<String> readBinary(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        byte[] magic = new byte[BINARY_MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, BINARY_MAGIC) || data.readInt() != BINARY_VERSION) {
+            throw new IOException("Not a binary triple file of version " + BINARY_VERSION);
+        }
+
+        String[] terms = new String[data.readInt()];
+        for (int i = 0; i < terms.length; i++) {
+            byte[] bytes = new byte[data.readInt()];
+            data.readFully(bytes);
+            terms[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int count = data.readInt();
+        List<String> triples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            triples.add(terms[readVarInt(data)] + " " + terms[readVarInt(data)] + " " + terms[readVarInt(data)] + " .");
+        }
+        return triples;
+    }
+
+    /**
+     * Splits an N-Triples statement into subject, predicate and object. Subject and predicate are IRIs, which
+     * never contain spaces in N-Triples.
+     */
+    private static String[] split(String triple) {
+        int first = triple.indexOf(' ');
+        int second = triple.indexOf(' ', first + 1);
+        return new String[] {triple.substring(0, first), triple.substring(first + 1, second), triple.substring(second + 1, triple.length() - 2)};
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,167 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts N-Triples statements and drops duplicates without holding all of them in memory. The statements are
+ * collected up to a ceiling of chars; when it is reached they are sorted and written to a temporary file as one run.
+ * Reading the statements merges the runs with the ones still in memory, so nothing is written to disk as long as
+ * the statements of a file stay below the ceiling.
+ * <p>
+ * Statements are one line each, N-Triples escapes line breaks in literals. An instance is used by one thread only.
+ */
+class TripleSorter implements Closeable {
+
+    /**
+     * The chars of statements held in memory by default, about 8 MB of text.
+     */
+    static final int DEFAULT_MAX_CHARS = 4 * 1024 * 1024;
+
+    @FunctionalInterface
+    interface TripleConsumer {
+        void accept(String triple) throws IOException;
+    }
+
+    private final int maxChars;
+
+    private final List<String> buffer = new ArrayList<>();
+    private long bufferedChars;
+    // the sorted runs written so far
+    private final List<File> runs = new ArrayList<>();
+
+    /**
+     * @param maxChars the most chars of statements held in memory
+     */
+    TripleSorter(int maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    void add(String triple) throws IOException {
+        buffer.add(triple);
+        bufferedChars += triple.length();
+        if (bufferedChars >= maxChars) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        sortBuffer();
+        File run = File.createTempFile("rda2owl-triples", ".tmp");
+        runs.add(run);
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), StandardCharsets.UTF_8), 1 << 16);
+        try {
+            for (String triple : buffer) {
+                out.write(triple);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        buffer.clear();
+        bufferedChars = 0;
+    }
+
+    private void sortBuffer() {
+        buffer.sort(null);
+        int distinct = 0;
+        for (int i = 0; i < buffer.size(); i++) {
+            if (distinct == 0 || !buffer.get(i).equals(buffer.get(distinct - 1))) {
+                buffer.set(distinct++, buffer.get(i));
+            }
+        }
+        buffer.subList(distinct, buffer.size()).clear();
+    }
+
+    /**
+     * Passes all statements added so far to the given consumer, sorted and without duplicates. Can be called
+     * several times, e.g. once per output format.
+     */
+    void forEach(TripleConsumer consumer) throws IOException {
+        sortBuffer();
+        if (runs.isEmpty()) {
+            for (String triple : buffer) {
+                consumer.accept(triple);
+            }
+            return;
+        }
+
+        PriorityQueue<Run> queue = new PriorityQueue<>(runs.size() + 1, (a, b) -> a.current.compareTo(b.current));
+        List<Run> open = new ArrayList<>(runs.size() + 1);
+        try {
+            open.add(new Run(buffer.iterator()));
+            for (File run : runs) {
+                open.add(new Run(new BufferedReader(new InputStreamReader(new FileInputStream(run), StandardCharsets.UTF_8), 1 << 16)));
+            }
+            for (Run run : open) {
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+
+            String previous = null;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                if (!run.current.equals(previous)) {
+                    previous = run.current;
+                    consumer.accept(previous);
+                }
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (Run run : open) {
+                IOUtils.closeQuietly(run.reader);
+            }
+        }
+    }
+
+    /**
+     * Deletes the runs written to disk.
+     */
+    @Override
+    public void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        buffer.clear();
+        bufferedChars = 0;
+    }
+
+    /**
+     * A sorted sequence of statements, either read from a run file or from the ones in memory.
+     */
+    private static final class Run {
+
+        private final BufferedReader reader;
+        private final Iterator<String> lines;
+        private String current;
+
+        Run(BufferedReader reader) {
+            this.reader = reader;
+            this.lines = null;
+        }
+
+        Run(Iterator<String> lines) {
+            this.reader = null;
+            this.lines = lines;
+        }
+
+        boolean advance() throws IOException {
+            if (reader != null) {
+                current = reader.readLine();
+            } else {
+                current = lines.hasNext() ? lines.next() : null;
+            }
+            return current != null;
+        }
+    }
+}
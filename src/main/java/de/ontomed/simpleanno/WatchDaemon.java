@@ -0,0 +1,205 @@
+package de.ontomed.simpleanno;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps running, polls for new RDA releases and serves the converted ontologies over HTTP (see {@link OntologyServer}).
+ * <p>
+ * Every release is converted in the background into a staging folder, which is renamed to
+ * {@code release-<version>-<timestamp>} when the conversion has finished. Only then the server is switched over to it,
+ * and the switch is recorded in {@code current-release.properties}, so a restarted daemon serves it right away.
+ * Clients therefore never see a release that is still being written. A release with files that could not be converted
+ * (or, with {@code --verify}, that did not pass the verification) is never switched to: its staging folder is deleted
+ * and the current release stays in place until the next poll. The previous release is kept (requests that
+ * started before the switch may still read from it), older ones are deleted.
+ */
+class WatchDaemon {
+
+    private static final String CURRENT_RELEASE_FILE = "current-release.properties";
+    private static final String RELEASE_FOLDER_PREFIX = "release-";
+    private static final String STAGING_FOLDER_PREFIX = ".staging-";
+
+    private static class Release {
+        private final String version;
+        private final File folder;
+
+        private Release(String version, File folder) {
+            this.version = version;
+            this.folder = folder;
+        }
+    }
+
+    private final ReleaseDownloader downloader;
+    private final ReleaseCache cache;
+    private final File rootFolder;
+    private final ConversionEngine engine;
+    private final OutputFormats outputFormats;
+    private final int workers;
+
+    private final AtomicReference<Release> current = new AtomicReference<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "rda2owl-watch"));
+    private OntologyServer server;
+
+    /**
+     * @param downloader used for all polls, so its HTTP client and connections stay warm
+     * @param cache the download cache the downloader writes to
+     * @param rootFolder the folder holding the release folders
+     * @param workers the number of conversion workers, 0 means one per available processor
+     */
+    WatchDaemon(ReleaseDownloader downloader, ReleaseCache cache, File rootFolder, ConversionEngine engine, OutputFormats outputFormats, int workers) {
+        this.downloader = downloader;
+        this.cache = cache;
+        this.rootFolder = rootFolder;
+        this.engine = engine;
+        this.outputFormats = outputFormats;
+        this.workers = workers;
+    }
+
+    /**
+     * Starts serving the last converted release (if any) and polling. Returns immediately, the daemon keeps the VM
+     * alive until it is stopped.
+     * @param pollMinutes the time between the end of a poll (and conversion) and the start of the next one
+     * @param cacheBytes the maximum number of bytes the server keeps in memory
+     */
+    void start(InetSocketAddress address, long pollMinutes, long cacheBytes) throws IOException {
+        rootFolder.mkdirs();
+
+        Properties state = ReleaseDownloader.loadProperties(new File(rootFolder, CURRENT_RELEASE_FILE));
+        String version = state.getProperty("version");
+        String folderName = state.getProperty("folder");
+        if (version != null && folderName != null && new File(rootFolder, folderName).isDirectory()) {
+            current.set(new Release(version, new File(rootFolder, folderName)));
+            System.out.printf("Serving previously converted RDA release %s\n", version);
+        }
+
+        server = new OntologyServer(address, () -> {
+            Release release = current.get();
+            return release == null ? null : release.folder;
+        }, cacheBytes, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        server.start();
+        System.out.printf("Listening on http://%s:%d/\n", address.getHostString(), server.port());
+
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollMinutes, TimeUnit.MINUTES);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "rda2owl-shutdown"));
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private void poll() {
+        try {
+            String version = downloader.latestVersion();
+            if (version == null) {
+                System.out.println("Could not detect latest RDA release version, will try again later.");
+                return;
+            }
+
+            ReleaseCache.Lease lease = cache.lease(version, false);
+            try {
+                // true if the zip has been downloaded, i.e. it is new or changed on the server; while another run
+                // reads the cached zip it is used as it is
+                boolean downloaded = lease.exclusive() && downloader.download(version, null);
+                lease.share();
+                Release release = current.get();
+                if (release != null && release.version.equals(version) && !downloaded) {
+                    return;
+                }
+
+                System.out.printf("Converting RDA release %s in the background...\n", version);
+                convert(version);
+            } finally {
+                lease.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            // keep serving the current release and try again at the next poll
+            System.out.println("Error updating the RDA release, will try again later.");
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void convert(String version) throws IOException {
+        File staging = new File(rootFolder, STAGING_FOLDER_PREFIX + version);
+        if (staging.exists()) {
+            FileUtils.deleteDirectory(staging);
+        }
+        staging.mkdirs();
+
+        RunMetrics metrics = new RunMetrics();
+        metrics.put("converterVersion", RDA2OWL.CONVERTER_VERSION);
+        metrics.put("rdaVersion", version);
+        metrics.put("engine", engine.name());
+        metrics.put("threads", workers);
+        metrics.put("daemon", true);
+
+        boolean converted = false;
+        try {
+            RdaSource source = new ZipSource(downloader.zipFile(version), null);
+            try {
+                // throws if any file could not be converted or the output did not pass the verification
+                RDA2OWL.convert(source, staging, engine, outputFormats, workers, true, metrics);
+            } finally {
+                source.close();
+            }
+            metrics.writeReport(new File(staging, RunMetrics.REPORT_FILE_NAME));
+            converted = true;
+        } finally {
+            if (!converted) {
+                deleteStaging(staging);
+            }
+        }
+
+        File folder = new File(rootFolder, RELEASE_FOLDER_PREFIX + version + "-" + System.currentTimeMillis());
+        ReleaseDownloader.move(staging, folder);
+
+        Release release = new Release(version, folder);
+        Properties state = new Properties();
+        state.setProperty("version", version);
+        state.setProperty("folder", folder.getName());
+        ReleaseDownloader.storeProperties(state, new File(rootFolder, CURRENT_RELEASE_FILE));
+
+        Release previous = current.getAndSet(release);
+        System.out.printf("Now serving RDA release %s from %s\n", version, folder.getAbsolutePath());
+
+        deleteOldReleases(release, previous);
+    }
+
+    private static void deleteStaging(File staging) {
+        try {
+            FileUtils.deleteDirectory(staging);
+        } catch (IOException e) {
+            System.out.printf("Unable to delete staging folder %s\n", staging.getAbsolutePath());
+        }
+    }
+
+    private void deleteOldReleases(Release release, Release previous) {
+        File[] folders = rootFolder.listFiles();
+        if (folders == null) {
+            return;
+        }
+        for (File folder : folders) {
+            boolean old = folder.getName().startsWith(RELEASE_FOLDER_PREFIX) || folder.getName().startsWith(STAGING_FOLDER_PREFIX);
+            boolean inUse = folder.equals(release.folder) || (previous != null && folder.equals(previous.folder));
+            if (folder.isDirectory() && old && !inUse) {
+                try {
+                    FileUtils.deleteDirectory(folder);
+                } catch (IOException e) {
+                    System.out.printf("Unable to delete old release folder %s\n", folder.getAbsolutePath());
+                }
+            }
+        }
+    }
+}
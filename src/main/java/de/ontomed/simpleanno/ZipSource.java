@@ -0,0 +1,119 @@
+package de.ontomed.simpleanno;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the RDA files straight from the entries of the release zip, without extracting anything to disk.
+ */
+class ZipSource implements RdaSource {
+
+    private final File file;
+    private final ZipFile zip;
+
+    // xml entries keyed by their path relative to the xml folder
+    private final TreeMap<String, ZipEntry> entries = new TreeMap<>();
+
+    /**
+     * @param file the release zip
+     * @param xmlPrefix the entry path of the xml folder including the trailing '/',
+     *                  e.g. {@code RDA-Vocabularies-2.3.2/xml/}, or null to detect it
+     */
+    ZipSource(File file, String xmlPrefix) throws IOException {
+        this.file = file;
+        this.zip = new ZipFile(file);
+
+        Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+        while (xmlPrefix == null && zipEntries.hasMoreElements()) {
+            xmlPrefix = xmlPrefix(zipEntries.nextElement().getName());
+        }
+        if (xmlPrefix == null) {
+            zip.close();
+            throw new IOException("No RDA xml folder found in " + file.getAbsolutePath());
+        }
+
+        zipEntries = zip.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry entry = zipEntries.nextElement();
+            String name = entry.getName();
+            if (!entry.isDirectory() && name.startsWith(xmlPrefix) && name.endsWith(".xml")) {
+                entries.put(name.substring(xmlPrefix.length()), entry);
+            }
+        }
+    }
+
+    /**
+     * @param entryName the name of a zip entry
+     * @return the path of the xml folder including the trailing '/' if the entry is an RDA file, e.g.
+     * {@code RDA-Vocabularies-2.3.2/xml/} for {@code RDA-Vocabularies-2.3.2/xml/Elements/w.xml}, otherwise null
+     */
+    static String xmlPrefix(String entryName) {
+        for (String folder : new String[] {"xml/Elements/", "xml/termList/"}) {
+            int index = entryName.indexOf(folder);
+            if (index == 0 || (index > 0 && entryName.charAt(index - 1) == '/')) {
+                return entryName.substring(0, index + 4);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<SourceFile> list(String folder) {
+        String prefix = folder + "/";
+        List<SourceFile> result = new ArrayList<>();
+        // the tree map is sorted by path, so all entries of the folder are in one contiguous range
+        for (String path : entries.tailMap(prefix).keySet()) {
+            if (!path.startsWith(prefix)) {
+                break;
+            }
+            if (path.indexOf('/', prefix.length()) < 0) {
+                result.add(new Entry(path, entries.get(path)));
+            }
+        }
+        return result.isEmpty() ? Collections.<SourceFile>emptyList() : result;
+    }
+
+    @Override
+    public SourceFile find(String path) {
+        ZipEntry entry = entries.get(path);
+        return entry == null ? null : new Entry(path, entry);
+    }
+
+    @Override
+    public String location() {
+        return file.getAbsolutePath();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    private class Entry extends SourceFile {
+
+        private final ZipEntry entry;
+
+        Entry(String path, ZipEntry entry) {
+            super(path);
+            this.entry = entry;
+        }
+
+        @Override
+        long size() {
+            return entry.getSize();
+        }
+
+        @Override
+        InputStream open() throws IOException {
+            return zip.getInputStream(entry);
+        }
+    }
+}
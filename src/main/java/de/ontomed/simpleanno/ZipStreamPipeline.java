@@ -0,0 +1,329 @@
+package de.ontomed.simpleanno;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Converts the RDA files while the release zip is still being read, e.g. from the body of the download response.
+ * Every entry that is converted (see {@link ReleaseLayout}) is inflated into memory as soon as it arrives and handed to
+ * the conversion workers through a bounded queue. The inflated entries held at the same time (waiting for their
+ * companions, queued or being converted) are limited by a number of bytes: if the workers fall behind, reading blocks
+ * until enough of them have been converted. The limit is only exceeded by the entry read last, so in the worst case
+ * the limit plus the largest entry of the release is held in memory.
+ * <p>
+ * Property files are converted as a triple ({@code <name>.xml}, {@code <name>/datatype.xml}, {@code <name>/object.xml}),
+ * so a triple is only handed on once all three files have arrived. A {@code <name>.xml} without both companions is
+ * handed on by itself as soon as the stream has passed the place where they would be, or at the end of the stream; a
+ * single companion is not converted. This relies on the entries being ordered by path (as in the GitHub archives), a
+ * companion arriving after its {@code <name>.xml} has been handed on fails the conversion. The files converted are
+ * therefore the same as when the release is read from a {@link RdaSource}.
+ */
+class ZipStreamPipeline {
+
+    /**
+     * The default limit of the inflated bytes held in memory.
+     */
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /**
+     * Creates the conversion task for a file or a property file triple.
+     */
+    @FunctionalInterface
+    interface TaskFactory {
+        /**
+         * @param main the file, or {@code <name>.xml} of a property triple, never null
+         * @param datatypeFile {@code <name>/datatype.xml} of a property triple or null
+         * @param objectFile {@code <name>/object.xml} of a property triple or null
+         */
+        ConversionTask create(SourceFile main, SourceFile datatypeFile, SourceFile objectFile);
+    }
+
+    /**
+     * A task handed to the workers, with the inflated bytes it holds.
+     */
+    private static final class Job {
+        private final ConversionTask task;
+        private final long bytes;
+
+        private Job(ConversionTask task, long bytes) {
+            this.task = task;
+            this.bytes = bytes;
+        }
+    }
+
+    // marks the end of the stream for the workers
+    private static final Job END = new Job(new ConversionTask("", 0, () -> { }), 0);
+
+    private final String xmlPrefix;
+    private final int workers;
+    private final TaskFactory taskFactory;
+    private final long maxBytes;
+
+    private final BlockingQueue<Job> queue;
+    // all tasks handed to the workers, only added to by the reading thread
+    private final List<ConversionTask> submitted = new ArrayList<>();
+
+    // files of property triples that have not been handed on yet, keyed by the name of the triple
+    private final Map<String, SourceFile[]> pendingTriples = new TreeMap<>();
+    // the names of the triples whose <name>.xml has been handed on, only accessed by the reading thread
+    private final Set<String> handedOn = new HashSet<>();
+
+    // the inflated bytes held and the tasks that have not finished yet, guarded by itself
+    private final Object held = new Object();
+    private long heldBytes;
+    private int unfinishedTasks;
+
+    /**
+     * @param xmlPrefix the entry path of the xml folder including the trailing '/',
+     *                  e.g. {@code RDA-Vocabularies-2.3.2/xml/}
+     * @param workers the number of worker threads, 0 means one per available processor
+     * @param taskFactory creates the conversion tasks
+     */
+    ZipStreamPipeline(String xmlPrefix, int workers, TaskFactory taskFactory) {
+        this(xmlPrefix, workers, taskFactory, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes the inflated bytes held in memory before reading blocks, see above
+     * @see #ZipStreamPipeline(String, int, TaskFactory)
+     */
+    ZipStreamPipeline(String xmlPrefix, int workers, TaskFactory taskFactory, long maxBytes) {
+        this.xmlPrefix = xmlPrefix;
+        this.workers = workers <= 0 ? Runtime.getRuntime().availableProcessors() : workers;
+        this.taskFactory = taskFactory;
+        this.maxBytes = maxBytes;
+        // two tasks per worker are enough to keep the workers busy while the next entry is being inflated
+        this.queue = new ArrayBlockingQueue<>(2 * this.workers);
+    }
+
+    /**
+     * Reads the zip from the given stream and converts the relevant entries. Returns when the last entry has been read
+     * and all conversions have finished. The stream is not closed and is positioned behind the last entry, i.e. at the
+     * zip's central directory.
+     * @throws IOException if the zip cannot be read or any of the files could not be converted
+     */
+    void run(InputStream in) throws IOException {
+        List<Thread> threads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, "rda2owl-pipeline-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        try {
+            read(new ZipInputStream(in));
+        } finally {
+            try {
+                for (int i = 0; i < workers; i++) {
+                    queue.put(END);
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the conversion to finish", e);
+            }
+        }
+        ConversionTask.checkFailures(submitted);
+    }
+
+    private void read(ZipInputStream zip) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        ZipEntry entry;
+        // the ZipInputStream is not closed, that would close the underlying stream
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (!name.startsWith(xmlPrefix)) {
+                continue;
+            }
+            String path = name.substring(xmlPrefix.length());
+
+            releasePassedTriples(path);
+
+            int tripleIndex = ReleaseLayout.tripleIndex(path);
+            if (entry.isDirectory() || !ReleaseLayout.isMainFile(path) && tripleIndex < 0) {
+                continue;
+            }
+
+            awaitMemory();
+            ByteArrayOutputStream content = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 1 << 16);
+            int read;
+            while ((read = zip.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            hold(content.size());
+            add(new InflatedFile(path, content.toByteArray()), tripleIndex);
+        }
+
+        // triples whose companions did not arrive (completely)
+        for (Map.Entry<String, SourceFile[]> pending : pendingTriples.entrySet()) {
+            handOnIncomplete(pending.getKey(), pending.getValue());
+        }
+        pendingTriples.clear();
+    }
+
+    /**
+     * @param tripleIndex the index of the file in its property triple, -1 if it is converted by itself
+     */
+    private void add(SourceFile file, int tripleIndex) throws IOException {
+        if (tripleIndex < 0) {
+            submit(taskFactory.create(file, null, null), file.size());
+            return;
+        }
+
+        String tripleName = ReleaseLayout.tripleName(file.path());
+        if (handedOn.contains(tripleName)) {
+            throw new IOException("The entries of the release zip are not ordered by path (" + file.path()
+                    + " arrived after " + ReleaseLayout.triplePaths(tripleName)[0] + " has been converted), convert it without --pipeline");
+        }
+        SourceFile[] triple = pendingTriples.get(tripleName);
+        if (triple == null) {
+            triple = new SourceFile[3];
+            pendingTriples.put(tripleName, triple);
+        }
+        triple[tripleIndex] = file;
+
+        if (triple[0] != null && triple[1] != null && triple[2] != null) {
+            pendingTriples.remove(tripleName);
+            handedOn.add(tripleName);
+            submit(taskFactory.create(triple[0], triple[1], triple[2]), triple[0].size() + triple[1].size() + triple[2].size());
+        }
+    }
+
+    /**
+     * Hands on the {@code <name>.xml} files whose companion folder has been passed without both companions arriving.
+     */
+    private void releasePassedTriples(String path) throws IOException {
+        if (!path.startsWith(ReleaseLayout.ELEMENTS + "/")) {
+            return;
+        }
+        Iterator<Map.Entry<String, SourceFile[]>> iterator = pendingTriples.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, SourceFile[]> pending = iterator.next();
+            String folder = ReleaseLayout.ELEMENTS + "/" + pending.getKey() + "/";
+            if (pending.getValue()[0] != null && path.compareTo(folder) > 0 && !path.startsWith(folder)) {
+                iterator.remove();
+                handOnIncomplete(pending.getKey(), pending.getValue());
+            }
+        }
+    }
+
+    /**
+     * Hands on the {@code <name>.xml} of an incomplete triple by itself, a single companion is not converted.
+     */
+    private void handOnIncomplete(String tripleName, SourceFile[] triple) throws IOException {
+        for (int i = 1; i < triple.length; i++) {
+            if (triple[i] != null) {
+                release(triple[i].size());
+            }
+        }
+        if (triple[0] != null) {
+            handedOn.add(tripleName);
+            submit(taskFactory.create(triple[0], null, null), triple[0].size());
+        }
+    }
+
+    private void submit(ConversionTask task, long bytes) throws IOException {
+        submitted.add(task);
+        synchronized (held) {
+            unfinishedTasks++;
+        }
+        try {
+            queue.put(new Job(task, bytes));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the zip", e);
+        }
+    }
+
+    private void hold(long bytes) {
+        synchronized (held) {
+            heldBytes += bytes;
+        }
+    }
+
+    private void release(long bytes) {
+        synchronized (held) {
+            heldBytes -= bytes;
+            held.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks while the inflated entries held reach the limit and some of them are being converted (and will be
+     * released). Entries that are only waiting for their companions cannot be released before more entries are read.
+     */
+    private void awaitMemory() throws IOException {
+        synchronized (held) {
+            try {
+                while (heldBytes >= maxBytes && unfinishedTasks > 0) {
+                    held.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading the zip", e);
+            }
+        }
+    }
+
+    private void work() {
+        try {
+            Job job;
+            while ((job = queue.take()) != END) {
+                try {
+                    job.task.runQuietly();
+                } finally {
+                    synchronized (held) {
+                        unfinishedTasks--;
+                        heldBytes -= job.bytes;
+                        held.notifyAll();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A zip entry that has been inflated into memory.
+     */
+    static class InflatedFile extends SourceFile {
+
+        private final byte[] content;
+
+        InflatedFile(String path, byte[] content) {
+            super(path);
+            this.content = content;
+        }
+
+        byte[] content() {
+            return content;
+        }
+
+        @Override
+        long size() {
+            return content.length;
+        }
+
+        @Override
+        InputStream open() {
+            return new ByteArrayInputStream(content);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package de.ontomed.simpleanno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ConversionEngineTest {
+
+    private static final String CLASS_TYPE = "    <rdf:type rdf:resource=\"http://www.w3.org/2002/07/owl#Class\"/>\n";
+    private static final String PROPERTY_TYPE = "    <rdf:type rdf:resource=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#Property\"/>\n";
+
+    private static final Pattern ONTOLOGY_PATTERN = Pattern.compile("<owl:Ontology rdf:about=\"([^\"]*)\"");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void enginesWriteTheSameOntologies() throws IOException {
+        File xmlFolder = temporaryFolder.newFolder("xml");
+        new SyntheticRelease(1).propertySets(2, 30).classSets(1, 20).termLists(3, 20).writeTree(xmlFolder);
+        // give the first class two known types, the last one counts
+        Path classSet = new File(xmlFolder, "Elements/c.xml").toPath();
+        String classes = new String(Files.readAllBytes(classSet), StandardCharsets.UTF_8);
+        Files.write(classSet, classes.replaceFirst(Pattern.quote(CLASS_TYPE), Matcher.quoteReplacement(PROPERTY_TYPE + CLASS_TYPE)).getBytes(StandardCharsets.UTF_8));
+
+        File line = convert(xmlFolder, "line");
+        File mmap = convert(xmlFolder, "mmap");
+        File stax = convert(xmlFolder, "stax");
+
+        List<String> files = files(line);
+        assertEquals(files, files(mmap));
+        assertEquals(files, files(stax));
+        assertTrue(read(line, "Elements/c.owl").contains("<owl:Class rdf:about=\"http://rdaregistry.info/Elements/c/C10001\">"));
+
+        for (String file : files) {
+            // the manifest records the engine
+            if (file.equals(BuildManifest.FILE_NAME)) {
+                continue;
+            }
+            // mmap writes the same bytes as line
+            assertArrayEquals(file, Files.readAllBytes(new File(line, file).toPath()), Files.readAllBytes(new File(mmap, file).toPath()));
+
+            if (!file.endsWith(".owl") || file.equals("rda-all.owl")) {
+                assertEquals(file, read(line, file), read(stax, file));
+                continue;
+            }
+            // stax serializes differently (namespace declarations on one line, indentation of the added ontology
+            // declaration, empty elements without a space before "/>"), but writes the same statements and
+            // declares the same single ontology
+            assertEquals(file, statements(new File(line, file)), statements(new File(stax, file)));
+            assertEquals(file, ontologies(read(line, file)), ontologies(read(stax, file)));
+            assertEquals(file, 1, ontologies(read(stax, file)).size());
+        }
+    }
+
+    private File convert(File xmlFolder, String engine) throws IOException {
+        File outputFolder = temporaryFolder.newFolder(engine);
+        RDA2OWL.convert(new DirectorySource(xmlFolder), outputFolder, ConversionEngine.forName(engine), 2, true);
+        return outputFolder;
+    }
+
+    private static List<String> statements(File owlFile) throws IOException {
+        List<String> statements = new ArrayList<>();
+        TripleSorter sorter = new TripleSorter(TripleSorter.DEFAULT_MAX_CHARS);
+        try {
+            TripleExtractor.extract(owlFile, sorter);
+            sorter.forEach(statements::add);
+        } finally {
+            sorter.close();
+        }
+        return statements;
+    }
+
+    private static List<String> ontologies(String owl) {
+        List<String> ontologies = new ArrayList<>();
+        Matcher matcher = ONTOLOGY_PATTERN.matcher(owl);
+        while (matcher.find()) {
+            ontologies.add(matcher.group(1));
+        }
+        return ontologies;
+    }
+
+    private static String read(File folder, String file) throws IOException {
+        return new String(Files.readAllBytes(new File(folder, file).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> files(File folder) throws IOException {
+        try (Stream<Path> walk = Files.walk(folder.toPath())) {
+            return walk.filter(Files::isRegularFile)
+                    .map(path -> folder.toPath().relativize(path).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
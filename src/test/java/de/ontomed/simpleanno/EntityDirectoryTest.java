@@ -0,0 +1,41 @@
+package de.ontomed.simpleanno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EntityDirectoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readsTheElementOfEveryEntity() throws IOException {
+        File xmlFolder = temporaryFolder.newFolder("xml");
+        new SyntheticRelease(1).propertySets(2, 20).classSets(1, 20).termLists(2, 20).writeTree(xmlFolder);
+        File outputFolder = temporaryFolder.newFolder("owl");
+        RdaConverter.builder().entityDirectory(true).build().writeOwlFiles(RdaInput.directory(xmlFolder), outputFolder);
+
+        List<OwlElements.Element> elements = OwlElements.read(outputFolder);
+        EntityDirectory directory = EntityDirectory.open(outputFolder);
+        assertEquals(elements.size(), directory.entityCount());
+        for (OwlElements.Element element : elements) {
+            EntityDirectory.Entry found = null;
+            for (EntityDirectory.Entry entry : directory.lookup(element.uri)) {
+                if (entry.physicalLocation().equals(element.path)) {
+                    found = entry;
+                }
+            }
+            assertNotNull(element.uri + " in " + element.path, found);
+            assertEquals(element.text, directory.read(found));
+            assertEquals(element.name.startsWith("owl:"), found.type() != null);
+        }
+        assertTrue(directory.lookup("http://rdaregistry.info/Elements/c/C99999").isEmpty());
+    }
+}
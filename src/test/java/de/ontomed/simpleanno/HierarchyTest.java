@@ -0,0 +1,96 @@
+package de.ontomed.simpleanno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class HierarchyTest {
+
+    private static final String CLASSES = "http://rdaregistry.info/Elements/c/";
+    private static final Pattern STATEMENT_PATTERN = Pattern.compile("<(rdfs:subClassOf|rdfs:subPropertyOf|skos:broader) rdf:resource=\"([^\"]*)\"/>");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void storesTheAncestorsAndDescendantsOfEveryEntity() throws IOException {
+        File xmlFolder = temporaryFolder.newFolder("xml");
+        new SyntheticRelease(1).propertySets(2, 20).classSets(1, 20).termLists(2, 20).writeTree(xmlFolder);
+        // two classes that are subclasses of each other
+        Path classSet = new File(xmlFolder, "Elements/c.xml").toPath();
+        String classes = new String(Files.readAllBytes(classSet), StandardCharsets.UTF_8);
+        classes = subClassOf(classes, "C10001", "C10002");
+        classes = subClassOf(classes, "C10002", "C10001");
+        Files.write(classSet, classes.getBytes(StandardCharsets.UTF_8));
+        File outputFolder = temporaryFolder.newFolder("owl");
+        RdaConverter.builder().hierarchy(true).build().writeOwlFiles(RdaInput.directory(xmlFolder), outputFolder);
+
+        Map<String, Set<String>> parents = new HashMap<>();
+        Map<String, Set<String>> children = new HashMap<>();
+        for (OwlElements.Element element : OwlElements.read(outputFolder)) {
+            Matcher matcher = STATEMENT_PATTERN.matcher(element.text);
+            while (matcher.find()) {
+                parents.computeIfAbsent(element.uri, uri -> new TreeSet<>()).add(matcher.group(2));
+                children.computeIfAbsent(matcher.group(2), uri -> new TreeSet<>()).add(element.uri);
+                parents.computeIfAbsent(matcher.group(2), uri -> new TreeSet<>());
+                children.computeIfAbsent(element.uri, uri -> new TreeSet<>());
+            }
+        }
+
+        Hierarchy hierarchy = Hierarchy.open(outputFolder);
+        assertEquals(parents.size(), hierarchy.entityCount());
+        for (String uri : parents.keySet()) {
+            assertEquals(uri, new ArrayList<>(reachable(uri, parents)), hierarchy.ancestors(uri));
+            assertEquals(uri, new ArrayList<>(reachable(uri, children)), hierarchy.descendants(uri));
+            assertEquals(uri, hierarchy.uri(hierarchy.id(uri)));
+        }
+
+        // an entity is its own ancestor only in a cycle
+        assertTrue(hierarchy.isAncestor(CLASSES + "C10001", CLASSES + "C10001"));
+        assertTrue(hierarchy.isAncestor(CLASSES + "C10002", CLASSES + "C10002"));
+        assertTrue(hierarchy.ancestors(CLASSES + "C10002").contains(CLASSES + "C10001"));
+        assertTrue(hierarchy.descendants(CLASSES + "C10001").contains(CLASSES + "C10002"));
+        assertEquals(-1, hierarchy.id(CLASSES + "C99999"));
+        assertTrue(hierarchy.ancestors(CLASSES + "C99999").isEmpty());
+    }
+
+    private static String subClassOf(String classes, String subClass, String superClass) {
+        String start = "<rdf:Description rdf:about=\"" + CLASSES + subClass + "\">\n";
+        assertTrue(classes.contains(start));
+        return classes.replace(start, start + "    <rdfs:subClassOf rdf:resource=\"" + CLASSES + superClass + "\"/>\n");
+    }
+
+    /**
+     * @return the entities reachable from the given one, including itself only if it is reached again
+     */
+    private static Set<String> reachable(String uri, Map<String, Set<String>> edges) {
+        Set<String> reached = new TreeSet<>();
+        Deque<String> open = new ArrayDeque<>();
+        open.push(uri);
+        while (!open.isEmpty()) {
+            for (String next : edges.get(open.pop())) {
+                if (reached.add(next)) {
+                    open.push(next);
+                }
+            }
+        }
+        return reached;
+    }
+}
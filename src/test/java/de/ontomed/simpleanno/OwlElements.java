@@ -0,0 +1,62 @@
+package de.ontomed.simpleanno;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The elements with an rdf:about attribute (other than owl:Ontology) of the OWL files of an output folder, as the line
+ * engine writes them. The expected content of the indexes is computed from them.
+ */
+final class OwlElements {
+
+    private static final Pattern ELEMENT_PATTERN = Pattern.compile("<((?:owl|rdf|skos):\\w+) rdf:about=\"([^\"]*)\">.*?</\\1>", Pattern.DOTALL);
+
+    static final class Element {
+        // relative to the output folder, e.g. Elements/c.owl
+        final String path;
+        final String name;
+        final String uri;
+        final String text;
+
+        private Element(String path, String name, String uri, String text) {
+            this.path = path;
+            this.name = name;
+            this.uri = uri;
+            this.text = text;
+        }
+    }
+
+    private OwlElements() {
+    }
+
+    static List<Element> read(File outputFolder) throws IOException {
+        List<String> paths;
+        try (Stream<Path> walk = Files.walk(outputFolder.toPath())) {
+            paths = walk.filter(path -> path.toString().endsWith(".owl"))
+                    .map(path -> outputFolder.toPath().relativize(path).toString().replace(File.separatorChar, '/'))
+                    .filter(path -> !path.equals("rda-all.owl"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<Element> elements = new ArrayList<>();
+        for (String path : paths) {
+            String owl = new String(Files.readAllBytes(new File(outputFolder, path).toPath()), StandardCharsets.UTF_8);
+            Matcher matcher = ELEMENT_PATTERN.matcher(owl);
+            while (matcher.find()) {
+                if (!matcher.group(1).equals("owl:Ontology")) {
+                    elements.add(new Element(path, matcher.group(1), matcher.group(2), matcher.group()));
+                }
+            }
+        }
+        return elements;
+    }
+}
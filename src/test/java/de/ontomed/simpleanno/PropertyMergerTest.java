@@ -0,0 +1,96 @@
+package de.ontomed.simpleanno;
+
+import de.ontomed.simpleanno.RDA2OWL.TYPE;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class PropertyMergerTest {
+
+    private static final String NOTE = "    <skos:scopeNote xml:lang=\"en\">only in datatype.xml</skos:scopeNote>";
+    private static final Pattern ENTITY_PATTERN = Pattern.compile("<rdf:Description rdf:about=\"([^\"]*)\">\n(.*?)  </rdf:Description>", Pattern.DOTALL);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void mergesTypesAndAnnotationsOfTheThreeDefinitions() throws IOException {
+        File xmlFolder = temporaryFolder.newFolder("xml");
+        new SyntheticRelease(1).propertySets(1, 40).classSets(0, 0).termLists(0, 0).writeTree(xmlFolder);
+        String[] paths = ReleaseLayout.triplePaths("w");
+        // an annotation only the datatype definition has
+        File datatypeFile = new File(xmlFolder, paths[1]);
+        String start = "<rdf:Description rdf:about=\"http://rdaregistry.info/Elements/w/datatype/P10001\">\n";
+        String datatype = new String(Files.readAllBytes(datatypeFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(datatype.contains(start));
+        Files.write(datatypeFile.toPath(), datatype.replace(start, start + NOTE + "\n").getBytes(StandardCharsets.UTF_8));
+
+        // the union of the annotations of each property, without the statements relating the definitions
+        Map<String, Set<String>> expectedLines = new TreeMap<>();
+        Set<String> objectProperties = new HashSet<>();
+        for (String path : paths) {
+            String content = new String(Files.readAllBytes(new File(xmlFolder, path).toPath()), StandardCharsets.UTF_8);
+            Matcher matcher = ENTITY_PATTERN.matcher(content);
+            while (matcher.find()) {
+                String uri = RDA2OWL.normalizeNameSpace(matcher.group(1));
+                if (uri.endsWith("/")) {
+                    // the ontology
+                    continue;
+                }
+                Set<String> lines = expectedLines.computeIfAbsent(uri, u -> new TreeSet<>());
+                for (String line : matcher.group(2).split("\n")) {
+                    line = RDA2OWL.normalizeNameSpace(line.trim());
+                    if (!line.startsWith("<rdf:type ") && !line.contains("rdf:resource=\"" + uri + "\"")) {
+                        lines.add(line);
+                    }
+                }
+                if (path.endsWith("/object.xml")) {
+                    objectProperties.add(uri);
+                }
+            }
+        }
+        assertFalse(objectProperties.isEmpty());
+        assertTrue(objectProperties.size() < expectedLines.size());
+
+        DirectorySource source = new DirectorySource(xmlFolder);
+        PropertyMerger merger = new PropertyMerger(source.find(paths[0]), source.find(paths[1]), source.find(paths[2]), Interner.NONE, 1 << 20);
+        Map<String, Set<String>> mergedLines = new TreeMap<>();
+        Map<String, TYPE> mergedTypes = new HashMap<>();
+        try {
+            assertEquals("http://rdaregistry.info/Elements/w/", merger.ontologyURI());
+            while (merger.hasNext()) {
+                RdaEntity entity = merger.next();
+                Set<String> lines = new TreeSet<>();
+                for (String line : entity.lines()) {
+                    lines.add(line.trim());
+                }
+                assertNull(entity.uri(), mergedLines.put(entity.uri(), lines));
+                mergedTypes.put(entity.uri(), entity.type());
+            }
+        } finally {
+            merger.close();
+        }
+
+        assertEquals(expectedLines, mergedLines);
+        assertTrue(mergedLines.get("http://rdaregistry.info/Elements/w/P10001").contains(NOTE.trim()));
+        for (String uri : expectedLines.keySet()) {
+            // all properties are defined in datatype.xml, the object properties in object.xml as well
+            assertEquals(uri, objectProperties.contains(uri) ? TYPE.OBJECT_PROPERTY : TYPE.DATATYPE_PROPERTY, mergedTypes.get(uri));
+        }
+    }
+}
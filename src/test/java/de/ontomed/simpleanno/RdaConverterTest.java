@@ -0,0 +1,62 @@
+package de.ontomed.simpleanno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RdaConverterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writeOwlFilesReportsEveryFailedFile() throws IOException {
+        File xmlFolder = temporaryFolder.newFolder("xml");
+        SyntheticRelease release = new SyntheticRelease(1).propertySets(1, 10).termLists(3, 10);
+        release.writeTree(xmlFolder);
+        String[] paths = release.paths();
+        String[] broken = {paths[paths.length - 3], paths[paths.length - 1]};
+        for (String path : broken) {
+            Files.write(new File(xmlFolder, path).toPath(), "<rdf:RDF><skos:Concept".getBytes(StandardCharsets.UTF_8));
+        }
+        File outputFolder = temporaryFolder.newFolder("owl");
+
+        try {
+            RdaConverter.builder().threads(2).build().writeOwlFiles(RdaInput.directory(xmlFolder), outputFolder);
+            fail("Broken files were converted");
+        } catch (IOException e) {
+            assertEquals(2, e.getSuppressed().length);
+            for (String path : broken) {
+                assertTrue(e.getMessage(), e.getMessage().contains(new File(path).getName()));
+            }
+        }
+        assertFalse(new File(outputFolder, "rda-all.owl").exists());
+        assertFalse(new File(outputFolder, "catalog-v001.xml").exists());
+    }
+
+    @Test
+    public void verifiedFilesAreNotParsedAgainWhileUnchanged() throws IOException {
+        File xmlFolder = temporaryFolder.newFolder("xml");
+        new SyntheticRelease(1).propertySets(1, 10).termLists(2, 10).writeTree(xmlFolder);
+        File outputFolder = temporaryFolder.newFolder("owl");
+        RdaConverter converter = RdaConverter.builder().verify(true).build();
+
+        converter.writeOwlFiles(RdaInput.directory(xmlFolder), outputFolder);
+        List<String> manifest = Files.readAllLines(new File(outputFolder, BuildManifest.FILE_NAME).toPath());
+        for (String line : manifest.subList(1, manifest.size())) {
+            assertTrue(line, line.endsWith("\tverified"));
+        }
+
+        // the reused files only take part in the checks of the imports
+        converter.writeOwlFiles(RdaInput.directory(xmlFolder), outputFolder);
+        assertEquals(manifest, Files.readAllLines(new File(outputFolder, BuildManifest.FILE_NAME).toPath()));
+    }
+}
@@ -0,0 +1,106 @@
+package de.ontomed.simpleanno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class ReleaseDiffTest {
+
+    private static final String CLASSES = "http://rdaregistry.info/Elements/c/";
+    private static final Pattern ABOUT_PATTERN = Pattern.compile("rdf:about=\"([^\"]*)\"");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void countsAndWritesTheAddedChangedAndRemovedEntities() throws IOException {
+        SyntheticRelease release = new SyntheticRelease(1).propertySets(2, 20).classSets(1, 20).termLists(2, 20);
+        File oldFolder = temporaryFolder.newFolder("old");
+        File newFolder = temporaryFolder.newFolder("new");
+        release.writeTree(oldFolder);
+        release.writeTree(newFolder);
+
+        String classes = read(newFolder, "Elements/c.xml");
+        // C10003 is removed, C10005 changed and C20001 added
+        classes = classes.replaceFirst("(?s)  <rdf:Description rdf:about=\"" + CLASSES + "C10003\">.*?</rdf:Description>\n", "");
+        classes = classes.replace("rdf:about=\"" + CLASSES + "C10005\">\n", "rdf:about=\"" + CLASSES + "C10005\">\n" + note("changed"));
+        classes = classes.replace("</rdf:RDF>", "  <rdf:Description rdf:about=\"" + CLASSES + "C20001\">\n"
+                + "    <rdf:type rdf:resource=\"http://www.w3.org/2002/07/owl#Class\"/>\n" + note("added") + "  </rdf:Description>\n</rdf:RDF>");
+        // a renamed prefix changes no entity
+        classes = classes.replace("xmlns:rdfs=", "xmlns:rs=").replace("<rdfs:", "<rs:").replace("</rdfs:", "</rs:");
+        write(newFolder, "Elements/c.xml", classes);
+        // C10007 is also defined in a term list, and only that definition changes
+        for (File folder : new File[] {oldFolder, newFolder}) {
+            String terms = read(folder, "termList/RDATerms1001.xml").replace("</rdf:RDF>", "  <rdf:Description rdf:about=\""
+                    + CLASSES + "C10007\">\n" + note(folder == oldFolder ? "old" : "new") + "  </rdf:Description>\n</rdf:RDF>");
+            write(folder, "termList/RDATerms1001.xml", terms);
+        }
+
+        File outputFolder = temporaryFolder.newFolder("diff");
+        new ReleaseDiff("1.0.0", "1.1.0").diff(RdaInput.directory(oldFolder), RdaInput.directory(newFolder), outputFolder);
+
+        String report = read(outputFolder, ReleaseDiff.REPORT_FILE_NAME);
+        int oldEntities = number(report, "oldEntities");
+        assertEquals(oldEntities, number(report, "newEntities"));
+        assertEquals(1, number(report, "added"));
+        assertEquals(1, number(report, "removed"));
+        assertEquals(2, number(report, "changed"));
+        assertEquals(oldEntities - 3, number(report, "unchanged"));
+
+        assertEquals(Collections.singletonList(CLASSES + "C20001"), abouts(read(outputFolder, "added.owl")));
+        assertEquals(Collections.singletonList(CLASSES + "C10003"), abouts(read(outputFolder, "removed.owl")));
+        // both definitions of C10007 merged into one
+        String changed = read(outputFolder, "changed.owl");
+        List<String> changedURIs = abouts(changed);
+        Collections.sort(changedURIs);
+        assertEquals(Arrays.asList(CLASSES + "C10005", CLASSES + "C10007"), changedURIs);
+        assertTrue(changed.contains(note("new").trim()));
+        assertTrue(changed.contains(note("changed").trim()));
+        assertFalse(changed.contains(note("old").trim()));
+    }
+
+    private static String note(String text) {
+        return "    <skos:scopeNote xml:lang=\"en\">" + text + "</skos:scopeNote>\n";
+    }
+
+    /**
+     * @return the URIs of the entities of a delta file, without the ontology
+     */
+    private static List<String> abouts(String owl) {
+        List<String> uris = new ArrayList<>();
+        Matcher matcher = ABOUT_PATTERN.matcher(owl);
+        while (matcher.find()) {
+            if (!matcher.group(1).isEmpty()) {
+                uris.add(matcher.group(1));
+            }
+        }
+        return uris;
+    }
+
+    private static int number(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\": (\\d+)").matcher(json);
+        assertTrue(name, matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static String read(File folder, String path) throws IOException {
+        return new String(Files.readAllBytes(new File(folder, path).toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File folder, String path, String content) throws IOException {
+        Files.write(new File(folder, path).toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
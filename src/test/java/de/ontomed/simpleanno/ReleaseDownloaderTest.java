@@ -0,0 +1,206 @@
+package de.ontomed.simpleanno;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link ReleaseDownloader} against a local stand-in for GitHub, which serves one release page and one
+ * archive with an ETag and answers conditional and Range requests.
+ */
+public class ReleaseDownloaderTest {
+
+    private static final String VERSION = "1.2.3";
+    private static final String ETAG = "\"archive-1\"";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    private byte[] archive;
+    // the request headers of interest, one line per request
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    // if > 0, the next archive response is cut off after that many bytes
+    private volatile int truncateAt;
+
+    @Before
+    public void startServer() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (int i = 0; i < 200000; i++) {
+            content.write(i * 31 + (i >> 8));
+        }
+        archive = content.toByteArray();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/RDA-Vocabularies/releases/latest", this::handleReleasePage);
+        server.createContext("/RDA-Vocabularies/archive/v" + VERSION + ".zip", this::handleArchive);
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort() + "/RDA-Vocabularies";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void handleReleasePage(HttpExchange exchange) throws IOException {
+        requests.add("page If-None-Match=" + exchange.getRequestHeaders().getFirst("If-None-Match"));
+        exchange.getResponseHeaders().set("ETag", "\"page-1\"");
+        if ("\"page-1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = ("<html><a href=\"/RDA-Vocabularies/archive/refs/tags/v" + VERSION + ".zip\">zip</a></html>").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private void handleArchive(HttpExchange exchange) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        requests.add("archive If-None-Match=" + ifNoneMatch + " Range=" + range);
+
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        if (ETAG.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        int from = 0;
+        if (range != null && ETAG.equals(ifRange)) {
+            from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (archive.length - 1) + "/" + archive.length);
+            exchange.sendResponseHeaders(206, archive.length - from);
+        } else {
+            exchange.sendResponseHeaders(200, archive.length);
+        }
+
+        OutputStream out = exchange.getResponseBody();
+        int end = archive.length;
+        if (truncateAt > 0) {
+            end = truncateAt;
+            truncateAt = 0;
+        }
+        try {
+            out.write(archive, from, end - from);
+            out.flush();
+        } finally {
+            // closing a response that is shorter than announced drops the connection
+            exchange.close();
+        }
+    }
+
+    private ReleaseDownloader downloader() {
+        return new ReleaseDownloader(baseUrl, temporaryFolder.getRoot());
+    }
+
+    @Test
+    public void versionProbeIsConditional() throws IOException {
+        assertEquals(VERSION, downloader().latestVersion());
+        // a new downloader, the validators come from the cache folder
+        ReleaseDownloader downloader = downloader();
+        assertEquals(VERSION, downloader.latestVersion());
+        assertEquals(0, downloader.bytesTransferred());
+        assertEquals(Collections.singletonList("page If-None-Match=\"page-1\""), requests.subList(1, 2));
+    }
+
+    @Test
+    public void unchangedArchiveIsNotTransferredAgain() throws IOException {
+        ReleaseDownloader downloader = downloader();
+        assertTrue(downloader.download(VERSION, null));
+        assertArrayEquals(archive, Files.readAllBytes(downloader.zipFile(VERSION).toPath()));
+        assertTrue(downloader.isCached(VERSION));
+
+        downloader = downloader();
+        assertFalse(downloader.download(VERSION, null));
+        assertEquals(0, downloader.bytesTransferred());
+        assertEquals("archive If-None-Match=" + ETAG + " Range=null", requests.get(1));
+    }
+
+    @Test
+    public void interruptedDownloadIsResumed() throws IOException {
+        truncateAt = 70000;
+        try {
+            downloader().download(VERSION, null);
+            fail("the truncated response has not been noticed");
+        } catch (IOException expected) {
+        }
+        File zipFile = downloader().zipFile(VERSION);
+        assertFalse(zipFile.exists());
+        assertFalse(downloader().isCached(VERSION));
+
+        ReleaseDownloader downloader = downloader();
+        assertTrue(downloader.download(VERSION, null));
+        assertEquals("archive If-None-Match=null Range=bytes=70000-", requests.get(1));
+        assertEquals(archive.length - 70000, downloader.bytesTransferred());
+        assertArrayEquals(archive, Files.readAllBytes(zipFile.toPath()));
+        assertTrue(downloader.isCached(VERSION));
+    }
+
+    @Test
+    public void resumedDownloadIsPassedToTheConsumerCompletely() throws IOException {
+        truncateAt = 50000;
+        try {
+            downloader().download(VERSION, null);
+            fail("the truncated response has not been noticed");
+        } catch (IOException expected) {
+        }
+
+        ByteArrayOutputStream consumed = new ByteArrayOutputStream();
+        assertTrue(downloader().download(VERSION, in -> {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                consumed.write(buffer, 0, read);
+            }
+        }));
+        assertArrayEquals(archive, consumed.toByteArray());
+    }
+
+    @Test
+    public void corruptCachedArchiveIsDownloadedAgain() throws IOException {
+        ReleaseDownloader downloader = downloader();
+        assertTrue(downloader.download(VERSION, null));
+        File zipFile = downloader.zipFile(VERSION);
+        RandomAccessFile file = new RandomAccessFile(zipFile, "rw");
+        try {
+            file.seek(1000);
+            file.write(~archive[1000]);
+        } finally {
+            file.close();
+        }
+        assertFalse(downloader.isCached(VERSION));
+
+        // the validators of the corrupt copy are not sent, the whole archive is transferred again
+        downloader = downloader();
+        assertTrue(downloader.download(VERSION, null));
+        assertEquals("archive If-None-Match=null Range=null", requests.get(1));
+        assertEquals(archive.length, downloader.bytesTransferred());
+        assertArrayEquals(archive, Files.readAllBytes(zipFile.toPath()));
+        assertTrue(downloader.isCached(VERSION));
+    }
+}
@@ -0,0 +1,99 @@
+package de.ontomed.simpleanno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private static final Pattern LITERAL_PATTERN = Pattern.compile("<(rdfs:label|skos:prefLabel|skos:definition) xml:lang=\"[^\"]*\">([^<]*)</");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void findsTheEntitiesOfEveryWord() throws IOException {
+        File outputFolder = convert();
+        Map<String, Set<String>> expected = words(outputFolder);
+        SearchIndex index = SearchIndex.open(outputFolder);
+
+        assertEquals(expected.size(), index.termCount());
+        for (Map.Entry<String, Set<String>> word : expected.entrySet()) {
+            assertEquals(word.getKey(), word.getValue(), uris(index.lookup(word.getKey())));
+        }
+        // case insensitive
+        String word = expected.keySet().iterator().next();
+        assertEquals(expected.get(word), uris(index.lookup(word.toUpperCase())));
+        assertTrue(index.lookup("xyzzy").isEmpty());
+    }
+
+    @Test
+    public void findsTheEntitiesOfTheWordsWithAPrefix() throws IOException {
+        File outputFolder = convert();
+        Map<String, Set<String>> expected = words(outputFolder);
+        SearchIndex index = SearchIndex.open(outputFolder);
+
+        String prefix = expected.keySet().iterator().next().substring(0, 2);
+        Set<String> prefixed = new HashSet<>();
+        for (Map.Entry<String, Set<String>> word : expected.entrySet()) {
+            if (word.getKey().startsWith(prefix)) {
+                prefixed.addAll(word.getValue());
+            }
+        }
+        List<SearchIndex.Hit> hits = index.prefix(prefix, Integer.MAX_VALUE);
+        for (SearchIndex.Hit hit : hits) {
+            assertTrue(hit.term(), hit.term().startsWith(prefix));
+        }
+        assertEquals(prefixed, uris(hits));
+        assertEquals(3, index.prefix(prefix, 3).size());
+        assertTrue(index.prefix("xyzzy", 10).isEmpty());
+    }
+
+    private File convert() throws IOException {
+        File xmlFolder = temporaryFolder.newFolder("xml");
+        new SyntheticRelease(1).propertySets(2, 20).classSets(1, 20).termLists(2, 20).writeTree(xmlFolder);
+        File outputFolder = temporaryFolder.newFolder("owl");
+        RdaConverter.builder().searchIndex(true).build().writeOwlFiles(RdaInput.directory(xmlFolder), outputFolder);
+        return outputFolder;
+    }
+
+    /**
+     * @return the URIs of the entities by the words of their labels and definitions
+     */
+    private static Map<String, Set<String>> words(File outputFolder) throws IOException {
+        Map<String, Set<String>> words = new TreeMap<>();
+        for (OwlElements.Element element : OwlElements.read(outputFolder)) {
+            Matcher matcher = LITERAL_PATTERN.matcher(element.text);
+            while (matcher.find()) {
+                // the predefined entities are no words
+                String text = matcher.group(2).replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+                for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+                    if (!word.isEmpty()) {
+                        words.computeIfAbsent(SearchIndexBuilder.fold(word), w -> new HashSet<>()).add(element.uri);
+                    }
+                }
+            }
+        }
+        return words;
+    }
+
+    private static Set<String> uris(List<SearchIndex.Hit> hits) {
+        Set<String> uris = new HashSet<>();
+        for (SearchIndex.Hit hit : hits) {
+            uris.add(hit.uri());
+        }
+        return uris;
+    }
+}
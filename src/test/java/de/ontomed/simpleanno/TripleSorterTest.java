@@ -0,0 +1,56 @@
+package de.ontomed.simpleanno;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class TripleSorterTest {
+
+    @Test
+    public void mergesRunsWithoutDuplicates() throws IOException {
+        Random random = new Random(1);
+        TreeSet<String> expected = new TreeSet<>();
+        // a ceiling of a few statements, so most of them end up in runs on disk
+        TripleSorter sorter = new TripleSorter(500);
+        try {
+            for (int i = 0; i < 5000; i++) {
+                String triple = "<http://example.org/" + random.nextInt(1000) + "> <http://example.org/p> \"" + random.nextInt(3) + "\" .";
+                expected.add(triple);
+                sorter.add(triple);
+            }
+            assertEquals(new ArrayList<>(expected), sorted(sorter));
+            // read once per output format
+            assertEquals(new ArrayList<>(expected), sorted(sorter));
+        } finally {
+            sorter.close();
+        }
+    }
+
+    @Test
+    public void sortsInMemoryBelowTheCeiling() throws IOException {
+        TripleSorter sorter = new TripleSorter(TripleSorter.DEFAULT_MAX_CHARS);
+        try {
+            sorter.add("<b> <p> <o> .");
+            sorter.add("<a> <p> <o> .");
+            sorter.add("<b> <p> <o> .");
+            List<String> triples = sorted(sorter);
+            assertEquals(2, triples.size());
+            assertEquals("<a> <p> <o> .", triples.get(0));
+            assertEquals("<b> <p> <o> .", triples.get(1));
+        } finally {
+            sorter.close();
+        }
+    }
+
+    private static List<String> sorted(TripleSorter sorter) throws IOException {
+        List<String> triples = new ArrayList<>();
+        sorter.forEach(triples::add);
+        return triples;
+    }
+}
@@ -0,0 +1,121 @@
+package de.ontomed.simpleanno;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZipStreamPipelineTest {
+
+    private static final String PREFIX = "RDA-Vocabularies-1.0.0/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void convertsTheSameFilesAsTheZipSource() throws IOException {
+        File releaseFolder = temporaryFolder.newFolder("release");
+        File xmlFolder = new File(releaseFolder, PREFIX + "xml");
+        SyntheticRelease release = new SyntheticRelease(1).propertySets(2, 20).classSets(2, 10).termLists(3, 10);
+        release.writeTree(xmlFolder);
+        // files that are not converted: a single companion, other files of a property folder, companions without
+        // their <name>.xml and deeper folders
+        copy(xmlFolder, "Elements/p1/datatype.xml", "Elements/c/datatype.xml");
+        copy(xmlFolder, "Elements/w/object.xml", "Elements/w/extra.xml");
+        copy(xmlFolder, "Elements/p1/datatype.xml", "Elements/orphan/datatype.xml");
+        copy(xmlFolder, "Elements/p1/object.xml", "Elements/orphan/object.xml");
+        copy(xmlFolder, "termList/RDATerms1000.xml", "termList/deeper/RDATerms2000.xml");
+        File zipFile = zip(releaseFolder, temporaryFolder.newFile("RDA-1.0.0.zip"));
+
+        File zipOutput = temporaryFolder.newFolder("zip");
+        ZipSource source = new ZipSource(zipFile, null);
+        try {
+            RDA2OWL.convert(source, zipOutput, ConversionEngine.forName("line"), 2, true);
+        } finally {
+            source.close();
+        }
+
+        File pipelineOutput = temporaryFolder.newFolder("pipeline");
+        InputStream in = new FileInputStream(zipFile);
+        try {
+            RDA2OWL.convertStreaming(in, PREFIX + "xml/", pipelineOutput, ConversionEngine.forName("line"), OutputFormats.OWL_ONLY, 2, true, RunMetrics.disabled())
+                    .finishConversion(pipelineOutput, 2);
+        } finally {
+            in.close();
+        }
+
+        List<String> files = files(zipOutput);
+        assertEquals(files, files(pipelineOutput));
+        assertTrue(files.contains("Elements/c.owl"));
+        assertFalse(files.contains("Elements/c/datatype.owl"));
+        assertFalse(files.contains("Elements/orphan/object.owl"));
+        for (String file : files) {
+            assertArrayEquals(file, Files.readAllBytes(new File(zipOutput, file).toPath()), Files.readAllBytes(new File(pipelineOutput, file).toPath()));
+        }
+    }
+
+    private static void copy(File xmlFolder, String from, String to) throws IOException {
+        File target = new File(xmlFolder, to);
+        target.getParentFile().mkdirs();
+        Files.copy(new File(xmlFolder, from).toPath(), target.toPath());
+    }
+
+    /**
+     * Zips the given folder with the entries ordered by path, like the GitHub archives.
+     */
+    private static File zip(File folder, File zipFile) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(folder.toPath())) {
+            paths = walk.filter(path -> !path.equals(folder.toPath())).collect(Collectors.toList());
+        }
+        List<String> names = new ArrayList<>();
+        for (Path path : paths) {
+            String name = folder.toPath().relativize(path).toString().replace(File.separatorChar, '/');
+            names.add(Files.isDirectory(path) ? name + "/" : name);
+        }
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted);
+
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile));
+        try {
+            for (String name : sorted) {
+                out.putNextEntry(new ZipEntry(name));
+                if (!name.endsWith("/")) {
+                    out.write(Files.readAllBytes(new File(folder, name).toPath()));
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return zipFile;
+    }
+
+    /**
+     * @return the paths of the files below the given folder, sorted
+     */
+    private static List<String> files(File folder) throws IOException {
+        try (Stream<Path> walk = Files.walk(folder.toPath())) {
+            return walk.filter(Files::isRegularFile)
+                    .map(path -> folder.toPath().relativize(path).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}